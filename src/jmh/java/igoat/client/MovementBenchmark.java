@@ -0,0 +1,66 @@
+package igoat.client;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One frame of player movement like in {@code Game.update}: the player tries to move along both
+ * axes and each axis is checked against the walls separately, so it can slide along a wall.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MovementBenchmark {
+
+    private static final int DIRECTIONS = 1024;
+    private static final int SIZE = 32;
+    // movement speed times the time of a frame at 60 fps
+    private static final double STEP = 200.0 / 60;
+
+    private Map map;
+    private final double[] dxs = new double[DIRECTIONS];
+    private final double[] dys = new double[DIRECTIONS];
+    private double x = 700;
+    private double y = 1450;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        map = new Map(true);
+        Random random = new Random(42);
+        for (int i = 0; i < DIRECTIONS; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            dxs[i] = Math.cos(angle) * STEP;
+            dys[i] = Math.sin(angle) * STEP;
+        }
+    }
+
+    @Benchmark
+    public double move() {
+        // keep the direction for a few frames, like a player holding the keys
+        int i = (next++ >> 4) & (DIRECTIONS - 1);
+        double potentialX = x + dxs[i];
+        double potentialY = y + dys[i];
+        boolean canMoveX = !map.collides((int) potentialX, (int) y, SIZE, SIZE, false);
+        double newX = canMoveX ? potentialX : x;
+        boolean canMoveY = !map.collides((int) newX, (int) potentialY, SIZE, SIZE, false);
+        x = newX;
+        if (canMoveY) {
+            y = potentialY;
+        }
+        return x + y;
+    }
+}
@@ -0,0 +1,90 @@
+package igoat.server;
+
+import igoat.Role;
+import igoat.client.UDPSocket;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A lobby with a running game for the benchmarks, without the timer and the tick of a real game.
+ * Its members are registered like real clients, but UDP updates go to a {@link CountingSocket}.
+ */
+class BenchmarkLobby extends Lobby {
+
+    private final GameState gameState = new GameState(3, new int[]{1, 3, 5}, new ArrayList<>());
+    final List<ClientHandler> clients = new ArrayList<>();
+    final List<InetSocketAddress> endpoints = new ArrayList<>();
+
+    /**
+     * Creates a lobby and registers its members in the client list and for UDP.
+     *
+     * @param code    The lobby code
+     * @param members Number of members
+     * @param socket  The socket the server sends its UDP updates with
+     */
+    BenchmarkLobby(int code, int members, CountingSocket socket) {
+        super(code);
+        ClientHandler.setUpdateSocket(socket);
+        ClientHandler.lobbyList.add(this);
+        for (int i = 0; i < members; i++) {
+            // an unconnected socket, so updates are sent without a real client
+            ClientHandler client = new ClientHandler(new Socket());
+            client.nickname = "bench" + code + "_" + i;
+            Player player = new Player(800, 50, client.nickname, this);
+            player.setRole(i == 0 ? Role.GUARD : Role.GOAT);
+            player.setPositionWasSet(true);
+            client.setPlayer(player);
+            client.currentLobby = this;
+            ClientHandler.clientList.add(client);
+            addMember(client);
+
+            InetSocketAddress endpoint = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                40000 + i);
+            ByteBuffer registration = ByteBuffer.wrap(("register_udp:" + client.nickname + ":"
+                + endpoint.getPort()).getBytes(StandardCharsets.US_ASCII));
+            ClientHandler.handleDatagram(registration, endpoint);
+            clients.add(client);
+            endpoints.add(endpoint);
+        }
+    }
+
+    @Override
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    /**
+     * Removes the members from the client list and the lobby from the lobby list.
+     */
+    void close() {
+        for (ClientHandler client : clients) {
+            ClientHandler.clientList.remove(client);
+        }
+        ClientHandler.lobbyList.remove(this);
+    }
+
+    /**
+     * A UDP socket that only counts what would be sent.
+     */
+    static final class CountingSocket implements UDPSocket {
+
+        long packets;
+        long bytes;
+
+        @Override
+        public void send(DatagramPacket packet) {
+            packets++;
+            bytes += packet.getLength();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
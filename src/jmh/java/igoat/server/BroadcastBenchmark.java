@@ -0,0 +1,62 @@
+package igoat.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fan-out of a UDP update with {@link Lobby#broadcastUpdateToLobby} to every member of a lobby,
+ * sent into a stub socket, so only the work of the server is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+    /**
+     * Number of lobby members
+     */
+    @Param({"2", "4"})
+    public int members;
+
+    private BenchmarkLobby lobby;
+    private BenchmarkLobby.CountingSocket socket;
+    private ClientHandler sender;
+
+    @Setup
+    public void setup() {
+        socket = new BenchmarkLobby.CountingSocket();
+        lobby = new BenchmarkLobby(7002, members, socket);
+        sender = lobby.clients.getFirst();
+    }
+
+    @TearDown
+    public void tearDown() {
+        lobby.close();
+    }
+
+    @Benchmark
+    public long broadcastToAll() {
+        lobby.broadcastUpdateToLobby("player_position:1:700:1450", null);
+        return socket.packets;
+    }
+
+    @Benchmark
+    public long broadcastExceptSender() {
+        lobby.broadcastUpdateToLobby("player_position:1:700:1450", sender);
+        return socket.packets;
+    }
+}
@@ -0,0 +1,98 @@
+package igoat.server;
+
+import igoat.client.Map;
+import igoat.client.Player;
+import igoat.client.Wall;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The wall collision check of the server against the real {@code Map(true)}: the lookup that
+ * {@code ClientHandler.checkCollision} does through the {@link LobbyMap}, compared with the
+ * collision raster, the wall grid and a loop over all walls as the server used to do it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollisionBenchmark {
+
+    private static final int POSITIONS = 1024;
+    private static final int SIZE = 32;
+
+    /**
+     * Goats ignore the windows
+     */
+    @Param({"false", "true"})
+    public boolean ignoreWindows;
+
+    private Map map;
+    private LobbyMap lobbyMap;
+    private Wall[] walls;
+    private Wall[] windows;
+    private final int[] xs = new int[POSITIONS];
+    private final int[] ys = new int[POSITIONS];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        map = new Map(true);
+        lobbyMap = new LobbyMap(MapGeometry.shared());
+        walls = map.getCollisionWalls().toArray(new Wall[0]);
+        windows = map.getWindowCollisions().toArray(new Wall[0]);
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextInt(map.getWidth());
+            ys[i] = random.nextInt(map.getHeight());
+        }
+        // build the raster before measuring
+        map.collidesAt(0, 0, SIZE, SIZE, ignoreWindows);
+    }
+
+    @Benchmark
+    public boolean lobbyMap() {
+        int i = next++ & (POSITIONS - 1);
+        return lobbyMap.collides(xs[i], ys[i], SIZE, SIZE, ignoreWindows);
+    }
+
+    @Benchmark
+    public boolean raster() {
+        int i = next++ & (POSITIONS - 1);
+        return map.collidesAt(xs[i], ys[i], SIZE, SIZE, ignoreWindows);
+    }
+
+    @Benchmark
+    public boolean grid() {
+        int i = next++ & (POSITIONS - 1);
+        return map.collides(xs[i], ys[i], SIZE, SIZE, ignoreWindows);
+    }
+
+    @Benchmark
+    public boolean loop() {
+        int i = next++ & (POSITIONS - 1);
+        return collidesWithAny(xs[i], ys[i], walls)
+            || (!ignoreWindows && collidesWithAny(xs[i], ys[i], windows));
+    }
+
+    private static boolean collidesWithAny(int x, int y, Wall[] walls) {
+        for (Wall wall : walls) {
+            if (Player.collidesWithWall(x, y, SIZE, SIZE, wall)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package igoat.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding and reading highscores. Most random times are not good enough for the list, like in a
+ * real game; the others are journaled to the highscore files in the working directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HighscoreBenchmark {
+
+    private static final int TIMES = 1024;
+
+    private Leaderboard leaderboard;
+    private final long[] times = new long[TIMES];
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        HighscoreManager.initialize();
+        Path file = Files.createTempFile("highscores", ".txt");
+        file.toFile().deleteOnExit();
+        leaderboard = new Leaderboard(file, 10, "");
+        Random random = new Random(42);
+        for (int i = 0; i < TIMES; i++) {
+            times[i] = 60_000 + random.nextInt(600_000);
+        }
+    }
+
+    @Benchmark
+    public long leaderboardAdd() {
+        long time = times[next++ & (TIMES - 1)];
+        return leaderboard.add(new Leaderboard.Entry("bench", time, "2025-01-01 12:00"));
+    }
+
+    @Benchmark
+    public void addGuardHighscore() {
+        HighscoreManager.addGuardHighscore("bench", times[next++ & (TIMES - 1)]);
+    }
+
+    @Benchmark
+    public String highscoresMessage() {
+        return HighscoreManager.getHighscoresMessage();
+    }
+}
@@ -0,0 +1,83 @@
+package igoat.server;
+
+import igoat.UpdatePacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and routing of UDP position updates through {@link ClientHandler#handleDatagram}, from
+ * the packet to the collision check and the new position of the player.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionUpdateBenchmark {
+
+    private static final int CODE = 7001;
+    // positions on the walk of the player, inside the map
+    private static final int POSITIONS = 1024;
+
+    private BenchmarkLobby lobby;
+    private ClientHandler walker;
+    private InetSocketAddress endpoint;
+    private final ByteBuffer binary = ByteBuffer.allocateDirect(UpdatePacket.MAX_SIZE);
+    private final ByteBuffer[] text = new ByteBuffer[POSITIONS];
+    private final int[] xs = new int[POSITIONS];
+    private final int[] ys = new int[POSITIONS];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        lobby = new BenchmarkLobby(CODE, 4, new BenchmarkLobby.CountingSocket());
+        walker = lobby.clients.getFirst();
+        endpoint = lobby.endpoints.getFirst();
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = 40 + random.nextInt(1400);
+            ys[i] = 40 + random.nextInt(1500);
+            text[i] = ByteBuffer.allocateDirect(UpdatePacket.MAX_SIZE);
+            text[i].put(("position:" + walker.getNickname() + ":" + CODE + ":" + xs[i] + ":"
+                + ys[i]).getBytes(StandardCharsets.US_ASCII)).flip();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        lobby.close();
+    }
+
+    @Benchmark
+    public double binaryPosition() {
+        int i = next++ & (POSITIONS - 1);
+        UpdatePacket.writeHeader(binary, UpdatePacket.TYPE_POSITION, CODE);
+        UpdatePacket.writeEntry(binary, walker.getPlayerId(), xs[i], ys[i]);
+        binary.flip();
+        ClientHandler.handleDatagram(binary, endpoint);
+        return walker.getPlayer().getX();
+    }
+
+    @Benchmark
+    public double textPosition() {
+        ByteBuffer packet = text[next++ & (POSITIONS - 1)];
+        packet.rewind();
+        ClientHandler.handleDatagram(packet, endpoint);
+        return walker.getPlayer().getX();
+    }
+}
@@ -1,5 +1,7 @@
 package igoat;
 
+import igoat.bench.LoadGenerator;
+import igoat.bench.Replay;
 import igoat.client.GUI.SettingsWindow;
 import igoat.client.GUI.SplashScreen;
 import igoat.client.LanguageManager;
@@ -15,6 +17,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Properties;
@@ -133,15 +136,23 @@ public class Main {
             switch (args[0].toLowerCase()) {
                 case "server":
                     if (args.length < 2) {
-                        logger.warn("Usage: java -jar igoat.jar server <port>");
+                        logger.warn(
+                            "Usage: java -jar igoat.jar server <port> [nio|thread|virtual]");
                         System.exit(1);
                     }
                     try {
                         int port = Integer.parseInt(args[1]);
-                        Server.main(new String[]{String.valueOf(port)});
+                        if (args.length > 2) {
+                            Server.main(new String[]{String.valueOf(port), args[2]});
+                        } else {
+                            Server.main(new String[]{String.valueOf(port)});
+                        }
                     } catch (NumberFormatException e) {
                         logger.error("Invalid port number", e);
                         System.exit(1);
+                    } catch (IllegalArgumentException e) {
+                        logger.error("Invalid server mode", e);
+                        System.exit(1);
                     }
                     break;
 
@@ -187,9 +198,45 @@ public class Main {
                     }
                     break;
 
+                case "bench":
+                    if (args.length < 2) {
+                        logger.warn(
+                            "Usage: java -jar igoat.jar bench <port> [lobbies] [rate] [seconds]");
+                        System.exit(1);
+                    }
+                    try {
+                        LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+                    } catch (IllegalArgumentException e) {
+                        logger.error("Invalid benchmark arguments", e);
+                        System.exit(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+
+                case "replay":
+                    if (args.length < 3) {
+                        logger.warn(
+                            "Usage: java -jar igoat.jar replay <capture> <port> [speed]");
+                        System.exit(1);
+                    }
+                    try {
+                        Replay.main(Arrays.copyOfRange(args, 1, args.length));
+                    } catch (IllegalArgumentException e) {
+                        logger.error("Invalid replay arguments", e);
+                        System.exit(1);
+                    } catch (IOException e) {
+                        logger.error("Couldn't read capture", e);
+                        System.exit(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+
                 default:
                     logger.warn(
-                        "Usage: java -jar igoat.jar [server <port> | client <host> <port>]");
+                        "Usage: java -jar igoat.jar [server <port> | client <host> <port> "
+                            + "| bench <port> | replay <capture> <port>]");
                     logger.warn("       java -jar igoat.jar (for GUI mode)");
                     System.exit(1);
             }
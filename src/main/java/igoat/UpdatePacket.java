@@ -0,0 +1,299 @@
+package igoat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary format of the UDP updates shared by client and server.
+ * <p>
+ * Every packet starts with a fixed 6 byte header. What follows depends on the packet type:
+ * </p>
+ * <pre>
+ * header:   magic (1) | version (1) | type (1) | entry count (1) | lobby code (2)
+ *
+ * position: header | player id (2) | x (2) | y (2)
+ * snapshot: header | sequence (4) | baseline (4) | world flags (1) | terminals (2) | stations (1)
+ *           | entries of player id (2) | x (2) | y (2) | state (1)
+ * ack:      header | sequence (4) | player id (2)
+ * </pre>
+ * <p>
+ * All values are big endian. Lobby codes and player IDs are unsigned 16-bit values, coordinates
+ * are signed 16-bit values. A snapshot only contains the players that changed since its baseline,
+ * which is the last snapshot the client acknowledged (0 if the snapshot is complete). Terminals
+ * and stations are bit masks. The magic byte is not a printable character, so binary packets can
+ * be told apart from the text messages that are still sent over the same sockets.
+ * </p>
+ */
+public final class UpdatePacket {
+
+    /**
+     * First byte of every binary packet
+     */
+    public static final byte MAGIC = (byte) 0xA7;
+    /**
+     * Version of the packet format
+     */
+    public static final byte VERSION = 2;
+    /**
+     * Position of the sending player, sent from client to server
+     */
+    public static final byte TYPE_POSITION = 1;
+    /**
+     * Changes of the world since a baseline snapshot, sent from server to client
+     */
+    public static final byte TYPE_SNAPSHOT = 2;
+    /**
+     * Acknowledges a snapshot, sent from client to server
+     */
+    public static final byte TYPE_ACK = 3;
+
+    /**
+     * Snapshot entry state: the player is caught
+     */
+    public static final int STATE_CAUGHT = 1;
+    /**
+     * Snapshot entry state: the server corrected the position of the receiving player
+     */
+    public static final int STATE_CORRECTED = 2;
+    /**
+     * Snapshot world flag: the doors are open
+     */
+    public static final int WORLD_DOOR_OPEN = 1;
+
+    public static final int HEADER_SIZE = 6;
+    public static final int ENTRY_SIZE = 6;
+    public static final int SNAPSHOT_HEADER_SIZE = HEADER_SIZE + 12;
+    public static final int SNAPSHOT_ENTRY_SIZE = 7;
+    public static final int ACK_SIZE = HEADER_SIZE + 6;
+    public static final int MAX_ENTRIES = 64;
+    /**
+     * Size of the largest possible packet
+     */
+    public static final int MAX_SIZE = SNAPSHOT_HEADER_SIZE + MAX_ENTRIES * SNAPSHOT_ENTRY_SIZE;
+
+    private static final int TYPE_OFFSET = 2;
+    private static final int COUNT_OFFSET = 3;
+    private static final int LOBBY_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = HEADER_SIZE;
+    private static final int BASELINE_OFFSET = HEADER_SIZE + 4;
+    private static final int WORLD_OFFSET = HEADER_SIZE + 8;
+    private static final int TERMINALS_OFFSET = HEADER_SIZE + 9;
+    private static final int STATIONS_OFFSET = HEADER_SIZE + 11;
+    private static final int ACK_PLAYER_OFFSET = HEADER_SIZE + 4;
+
+    private UpdatePacket() {
+    }
+
+    /**
+     * Checks whether the received data starts like a binary update packet.
+     *
+     * @param data   The received data
+     * @param length Number of valid bytes in data
+     * @return true if the data is a binary update packet
+     */
+    public static boolean isUpdatePacket(byte[] data, int length) {
+        return length >= HEADER_SIZE && data[0] == MAGIC;
+    }
+
+    /**
+     * Checks whether a received packet starts like a binary update packet.
+     *
+     * @param buffer The received packet, starting at index 0
+     * @return true if the packet is a binary update packet
+     */
+    public static boolean isUpdatePacket(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_SIZE && buffer.get(0) == MAGIC;
+    }
+
+    /**
+     * Writes the header of a new packet at the start of the buffer and positions the buffer
+     * directly after it. The entry count starts at 0.
+     *
+     * @param buffer    The buffer to write to
+     * @param type      The packet type
+     * @param lobbyCode The lobby code
+     */
+    public static void writeHeader(ByteBuffer buffer, byte type, int lobbyCode) {
+        buffer.clear();
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(type);
+        buffer.put((byte) 0);
+        buffer.putShort((short) lobbyCode);
+    }
+
+    /**
+     * Writes the header of a new snapshot at the start of the buffer and positions the buffer
+     * directly after it.
+     *
+     * @param buffer    The buffer to write to
+     * @param lobbyCode The lobby code
+     * @param snapshot  The snapshot, only its sequence and world state are written
+     * @param baseline  Sequence of the snapshot the entries are relative to, 0 for none
+     */
+    public static void writeSnapshotHeader(ByteBuffer buffer, int lobbyCode,
+        WorldSnapshot snapshot, int baseline) {
+        writeHeader(buffer, TYPE_SNAPSHOT, lobbyCode);
+        buffer.putInt(snapshot.getSequence());
+        buffer.putInt(baseline);
+        buffer.put((byte) (snapshot.isDoorOpen() ? WORLD_DOOR_OPEN : 0));
+        buffer.putShort((short) snapshot.getTerminals());
+        buffer.put((byte) snapshot.getStations());
+    }
+
+    /**
+     * Appends a position entry to the packet in the buffer and increments its entry count.
+     *
+     * @param buffer   The buffer containing a packet header
+     * @param playerId The player ID
+     * @param x        x-coordinate, clamped to 16 bits
+     * @param y        y-coordinate, clamped to 16 bits
+     * @return false if the packet is already full
+     */
+    public static boolean writeEntry(ByteBuffer buffer, int playerId, int x, int y) {
+        int count = getCount(buffer);
+        if (count >= MAX_ENTRIES || buffer.remaining() < ENTRY_SIZE) {
+            return false;
+        }
+        buffer.putShort((short) playerId);
+        buffer.putShort(clamp(x));
+        buffer.putShort(clamp(y));
+        buffer.put(COUNT_OFFSET, (byte) (count + 1));
+        return true;
+    }
+
+    /**
+     * Appends a snapshot entry to the snapshot in the buffer and increments its entry count.
+     *
+     * @param buffer   The buffer containing a snapshot header
+     * @param playerId The player ID
+     * @param x        x-coordinate, clamped to 16 bits
+     * @param y        y-coordinate, clamped to 16 bits
+     * @param state    Combination of the STATE flags
+     * @return false if the packet is already full
+     */
+    public static boolean writeSnapshotEntry(ByteBuffer buffer, int playerId, int x, int y,
+        int state) {
+        int count = getCount(buffer);
+        if (count >= MAX_ENTRIES || buffer.remaining() < SNAPSHOT_ENTRY_SIZE) {
+            return false;
+        }
+        buffer.putShort((short) playerId);
+        buffer.putShort(clamp(x));
+        buffer.putShort(clamp(y));
+        buffer.put((byte) state);
+        buffer.put(COUNT_OFFSET, (byte) (count + 1));
+        return true;
+    }
+
+    /**
+     * Writes a complete acknowledgement packet to the buffer.
+     *
+     * @param buffer    The buffer to write to
+     * @param lobbyCode The lobby code
+     * @param playerId  ID of the acknowledging player
+     * @param sequence  Sequence of the acknowledged snapshot
+     */
+    public static void writeAck(ByteBuffer buffer, int lobbyCode, int playerId, int sequence) {
+        writeHeader(buffer, TYPE_ACK, lobbyCode);
+        buffer.putInt(sequence);
+        buffer.putShort((short) playerId);
+    }
+
+    /**
+     * Checks magic byte, version and length of a received packet. The buffer has to contain
+     * exactly one packet, starting at index 0.
+     *
+     * @param buffer The received packet
+     * @return true if the packet can be read
+     */
+    public static boolean isValid(ByteBuffer buffer) {
+        int length = buffer.limit();
+        if (length < HEADER_SIZE || buffer.get(0) != MAGIC || buffer.get(1) != VERSION) {
+            return false;
+        }
+        return switch (getType(buffer)) {
+            case TYPE_POSITION -> length >= HEADER_SIZE + getCount(buffer) * ENTRY_SIZE;
+            case TYPE_SNAPSHOT ->
+                length >= SNAPSHOT_HEADER_SIZE + getCount(buffer) * SNAPSHOT_ENTRY_SIZE;
+            case TYPE_ACK -> length >= ACK_SIZE;
+            default -> false;
+        };
+    }
+
+    public static byte getType(ByteBuffer buffer) {
+        return buffer.get(TYPE_OFFSET);
+    }
+
+    public static int getCount(ByteBuffer buffer) {
+        return buffer.get(COUNT_OFFSET) & 0xFF;
+    }
+
+    public static int getLobbyCode(ByteBuffer buffer) {
+        return buffer.getShort(LOBBY_OFFSET) & 0xFFFF;
+    }
+
+    public static int getPlayerId(ByteBuffer buffer, int entry) {
+        return buffer.getShort(entryOffset(buffer, entry)) & 0xFFFF;
+    }
+
+    public static int getX(ByteBuffer buffer, int entry) {
+        return buffer.getShort(entryOffset(buffer, entry) + 2);
+    }
+
+    public static int getY(ByteBuffer buffer, int entry) {
+        return buffer.getShort(entryOffset(buffer, entry) + 4);
+    }
+
+    public static int getState(ByteBuffer buffer, int entry) {
+        return buffer.get(entryOffset(buffer, entry) + 6) & 0xFF;
+    }
+
+    /**
+     * Gets the sequence of a snapshot or acknowledgement.
+     */
+    public static int getSequence(ByteBuffer buffer) {
+        return buffer.getInt(SEQUENCE_OFFSET);
+    }
+
+    public static int getBaseline(ByteBuffer buffer) {
+        return buffer.getInt(BASELINE_OFFSET);
+    }
+
+    public static boolean isDoorOpen(ByteBuffer buffer) {
+        return (buffer.get(WORLD_OFFSET) & WORLD_DOOR_OPEN) != 0;
+    }
+
+    public static int getTerminals(ByteBuffer buffer) {
+        return buffer.getShort(TERMINALS_OFFSET) & 0xFFFF;
+    }
+
+    public static int getStations(ByteBuffer buffer) {
+        return buffer.get(STATIONS_OFFSET) & 0xFF;
+    }
+
+    public static int getAckPlayerId(ByteBuffer buffer) {
+        return buffer.getShort(ACK_PLAYER_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Truncates a lobby code to the 16 bits sent in the header, so it can be compared with
+     * {@link #getLobbyCode(ByteBuffer)}.
+     *
+     * @param lobbyCode The full lobby code
+     * @return The lobby code as sent in a packet
+     */
+    public static int toWireLobbyCode(int lobbyCode) {
+        return lobbyCode & 0xFFFF;
+    }
+
+    private static int entryOffset(ByteBuffer buffer, int entry) {
+        if (getType(buffer) == TYPE_SNAPSHOT) {
+            return SNAPSHOT_HEADER_SIZE + entry * SNAPSHOT_ENTRY_SIZE;
+        }
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+
+    private static short clamp(int value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+}
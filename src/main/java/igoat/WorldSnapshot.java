@@ -0,0 +1,191 @@
+package igoat;
+
+/**
+ * The state of a running game at one lobby tick: position and caught state of every player as
+ * well as the active terminals, the active stations and the doors. Server and client keep a ring
+ * of these to compute and apply delta updates. Instances are reused, so the arrays are allocated
+ * only once.
+ */
+public final class WorldSnapshot {
+
+    private int sequence;
+    private int count;
+    private final int[] ids;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] states;
+    private boolean doorOpen;
+    private int terminals;
+    private int stations;
+
+    /**
+     * Creates an empty snapshot with sequence 0.
+     *
+     * @param capacity Maximum number of players
+     */
+    public WorldSnapshot(int capacity) {
+        ids = new int[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        states = new int[capacity];
+    }
+
+    /**
+     * Removes all players and resets the world state.
+     *
+     * @param sequence The new sequence of this snapshot
+     */
+    public void reset(int sequence) {
+        this.sequence = sequence;
+        count = 0;
+        doorOpen = false;
+        terminals = 0;
+        stations = 0;
+    }
+
+    /**
+     * Makes this snapshot a copy of another one.
+     *
+     * @param other    The snapshot to copy
+     * @param sequence The new sequence of this snapshot
+     */
+    public void copyFrom(WorldSnapshot other, int sequence) {
+        this.sequence = sequence;
+        count = Math.min(other.count, ids.length);
+        System.arraycopy(other.ids, 0, ids, 0, count);
+        System.arraycopy(other.xs, 0, xs, 0, count);
+        System.arraycopy(other.ys, 0, ys, 0, count);
+        System.arraycopy(other.states, 0, states, 0, count);
+        doorOpen = other.doorOpen;
+        terminals = other.terminals;
+        stations = other.stations;
+    }
+
+    /**
+     * Sets the state of a player, adding the player if it isn't part of the snapshot yet.
+     *
+     * @param id    The player ID
+     * @param x     x-coordinate
+     * @param y     y-coordinate
+     * @param state Player state, see {@link UpdatePacket#STATE_CAUGHT}
+     * @return false if the snapshot is full
+     */
+    public boolean set(int id, int x, int y, int state) {
+        int index = indexOf(id);
+        if (index < 0) {
+            if (count == ids.length) {
+                return false;
+            }
+            index = count++;
+            ids[index] = id;
+        }
+        xs[index] = x;
+        ys[index] = y;
+        states[index] = state;
+        return true;
+    }
+
+    /**
+     * Sets the world state.
+     *
+     * @param doorOpen  Whether the doors are open
+     * @param terminals Bit mask of the active terminals
+     * @param stations  Bit mask of the active stations
+     */
+    public void setWorld(boolean doorOpen, int terminals, int stations) {
+        this.doorOpen = doorOpen;
+        this.terminals = terminals;
+        this.stations = stations;
+    }
+
+    /**
+     * Finds the index of a player.
+     *
+     * @param id The player ID
+     * @return The index of the player or -1 if the player is not part of the snapshot
+     */
+    public int indexOf(int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the index of a player, checking the expected index first. Players are usually at the
+     * same index in consecutive snapshots, so this is constant time in the common case.
+     *
+     * @param id   The player ID
+     * @param hint The expected index
+     * @return The index of the player or -1 if the player is not part of the snapshot
+     */
+    public int indexOf(int id, int hint) {
+        if (hint >= 0 && hint < count && ids[hint] == id) {
+            return hint;
+        }
+        return indexOf(id);
+    }
+
+    /**
+     * Checks whether the player at the given index differs from the same player in another
+     * snapshot.
+     *
+     * @param index      Index of the player in this snapshot
+     * @param other      The snapshot to compare with, can be null
+     * @param otherIndex Index of the same player in the other snapshot, -1 if it is missing
+     * @return true if the player is missing or different in the other snapshot
+     */
+    public boolean differs(int index, WorldSnapshot other, int otherIndex) {
+        return other == null || otherIndex < 0 || other.xs[otherIndex] != xs[index]
+            || other.ys[otherIndex] != ys[index] || other.states[otherIndex] != states[index];
+    }
+
+    /**
+     * Checks whether doors, terminals and stations are the same in both snapshots.
+     *
+     * @param other The snapshot to compare with, can be null
+     * @return true if the world state is the same
+     */
+    public boolean sameWorld(WorldSnapshot other) {
+        return other != null && other.doorOpen == doorOpen && other.terminals == terminals
+            && other.stations == stations;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int getState(int index) {
+        return states[index];
+    }
+
+    public boolean isDoorOpen() {
+        return doorOpen;
+    }
+
+    public int getTerminals() {
+        return terminals;
+    }
+
+    public int getStations() {
+        return stations;
+    }
+}
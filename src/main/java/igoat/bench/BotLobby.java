@@ -0,0 +1,301 @@
+package igoat.bench;
+
+import igoat.client.Map;
+import igoat.client.PositionUpdate;
+import igoat.client.ServerHandler;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One lobby of simulated players. The bots connect with the real {@link ServerHandler}, create
+ * and join a lobby, get ready and start the game like the GUI does. Afterwards they walk around
+ * the map at random, checking their moves against the walls like {@code Game.update}, and send
+ * their positions at a fixed rate.
+ */
+final class BotLobby {
+
+    private static final Logger logger = LoggerFactory.getLogger(BotLobby.class);
+
+    /**
+     * Number of bots per lobby
+     */
+    static final int BOTS = 4;
+    private static final int SIZE = 32;
+    private static final double SPEED = 200; // px per second, like the client
+    private static final long REPLY_TIMEOUT = 5000;
+    private static final long COMMAND_INTERVAL = 1_000_000_000L;
+    // sent positions kept per bot to match them when they arrive at the other bots
+    private static final int HISTORY = 64;
+
+    /**
+     * A simulated player
+     */
+    private static final class Bot {
+
+        final ServerHandler handler;
+        final String nickname;
+        final int[] sentX = new int[HISTORY];
+        final int[] sentY = new int[HISTORY];
+        final long[] sentAt = new long[HISTORY];
+        int sent = 0;
+        double x;
+        double y;
+        double angle = ThreadLocalRandom.current().nextDouble(2 * Math.PI);
+        long nextCommand;
+        long commandSent = 0; // 0 if no command is waiting for its reply
+
+        Bot(ServerHandler handler, String nickname) {
+            this.handler = handler;
+            this.nickname = nickname;
+        }
+    }
+
+    private final int index;
+    private final Map map;
+    private final LoadGenerator.Stats stats;
+    private final Bot[] bots = new Bot[BOTS];
+    private final java.util.Map<String, Bot> byNickname = new HashMap<>();
+    private int code;
+    private long interval;
+    private long nextSend;
+    private volatile boolean streaming = false;
+
+    /**
+     * Creates a lobby of bots. Nothing is connected until {@link #start} is called.
+     *
+     * @param index Number of the lobby, used in the nicknames
+     * @param map   The map the bots walk on
+     * @param stats Where the measurements are collected
+     */
+    BotLobby(int index, Map map, LoadGenerator.Stats stats) {
+        this.index = index;
+        this.map = map;
+        this.stats = stats;
+    }
+
+    /**
+     * Connects the bots and plays the handshake until the game is running.
+     *
+     * @param host Host of the server
+     * @param port TCP port of the server
+     * @param rate Positions per second and bot
+     * @return true if the game was started
+     * @throws InterruptedException if the thread is interrupted while waiting for replies
+     */
+    boolean start(String host, int port, double rate) throws InterruptedException {
+        interval = (long) (1_000_000_000L / rate);
+        for (int i = 0; i < BOTS; i++) {
+            // the names decide the roles: one guard and three goats
+            String name = (i == 0 ? "bguard" : "bgoat") + index + (i == 0 ? "" : "_" + i);
+            long start = System.nanoTime();
+            ServerHandler handler = new ServerHandler(host, port, name);
+            if (!handler.isConnected() || await(handler, "confirm:") == null) {
+                logger.error("Bot {} could not connect", name);
+                handler.close();
+                return false;
+            }
+            stats.connect.recordSince(start);
+            bots[i] = new Bot(handler, handler.getConfirmedNickname());
+            // the spawn points of the server, they have to be sent back exactly
+            bots[i].x = i == 0 ? 800 : 700;
+            bots[i].y = i == 0 ? 50 : 1450;
+            byNickname.put(bots[i].nickname, bots[i]);
+        }
+
+        String lobby = command(bots[0], "newlobby:", "lobby:");
+        if (lobby == null) {
+            return false;
+        }
+        code = Integer.parseInt(lobby.substring("lobby:".length()).trim());
+        for (int i = 1; i < BOTS; i++) {
+            if (command(bots[i], "lobby:" + code, "lobby:") == null) {
+                return false;
+            }
+        }
+        for (Bot bot : bots) {
+            if (command(bot, "ready:", "ready_status:" + bot.nickname + ",true") == null) {
+                return false;
+            }
+        }
+        if (command(bots[0], "startgame:", "game_started") == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        for (Bot bot : bots) {
+            bot.nextCommand = now + ThreadLocalRandom.current().nextLong(COMMAND_INTERVAL);
+        }
+        return true;
+    }
+
+    /**
+     * Starts sending positions and commands.
+     */
+    void play() {
+        nextSend = System.nanoTime();
+        streaming = true;
+    }
+
+    /**
+     * Receives what the server sent and sends the next positions if they are due. Called about
+     * every ms, never concurrently.
+     */
+    void step() {
+        if (!streaming) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Bot bot : bots) {
+            receive(bot, now);
+        }
+        if (now - nextSend >= 0) {
+            // don't catch up with a burst if the step came late
+            nextSend = Math.max(nextSend + interval, now);
+            for (Bot bot : bots) {
+                send(bot, System.nanoTime());
+                move(bot);
+            }
+        }
+        for (Bot bot : bots) {
+            if (bot.commandSent == 0 && now - bot.nextCommand >= 0) {
+                bot.commandSent = System.nanoTime();
+                bot.handler.sendMessage("gethighscores:");
+            }
+        }
+    }
+
+    /**
+     * Stops sending positions and commands.
+     */
+    void stop() {
+        streaming = false;
+    }
+
+    /**
+     * Disconnects all bots.
+     */
+    void close() {
+        streaming = false;
+        for (Bot bot : bots) {
+            if (bot != null) {
+                bot.handler.sendMessage("exit");
+                bot.handler.close();
+            }
+        }
+    }
+
+    private void receive(Bot bot, long now) {
+        PositionUpdate update;
+        while ((update = bot.handler.getPosition()) != null) {
+            if (update.nickname().equals(bot.nickname)) {
+                // the server corrected the position, try another direction
+                bot.x = update.x();
+                bot.y = update.y();
+                bot.angle = ThreadLocalRandom.current().nextDouble(2 * Math.PI);
+                continue;
+            }
+            Bot sender = byNickname.get(update.nickname());
+            if (sender != null) {
+                long sentAt = findSent(sender, update.x(), update.y());
+                if (sentAt != 0) {
+                    stats.update.record(now - sentAt);
+                }
+            }
+        }
+        String message;
+        while ((message = bot.handler.getMessage()) != null) {
+            if (message.startsWith("highscores:") && bot.commandSent != 0) {
+                stats.command.recordSince(bot.commandSent);
+                bot.commandSent = 0;
+                bot.nextCommand = now + COMMAND_INTERVAL;
+            } else if (message.startsWith("gameover:")) {
+                logger.info("Game in lobby {} is over", code);
+                streaming = false;
+            }
+        }
+    }
+
+    /**
+     * Moves a bot one step in its direction. If a wall is in the way, it slides along the free
+     * axis like a player.
+     */
+    private void move(Bot bot) {
+        bot.angle += ThreadLocalRandom.current().nextGaussian() * 0.3;
+        double step = SPEED * interval / 1e9;
+        double potentialX = bot.x + Math.cos(bot.angle) * step;
+        double potentialY = bot.y + Math.sin(bot.angle) * step;
+        boolean canMoveX = !map.collides((int) potentialX, (int) bot.y, SIZE, SIZE, false);
+        double newX = canMoveX ? potentialX : bot.x;
+        boolean canMoveY = !map.collides((int) newX, (int) potentialY, SIZE, SIZE, false);
+        // bounce off the wall, so the bot doesn't keep pushing against it
+        if (!canMoveX) {
+            bot.angle = Math.PI - bot.angle;
+        }
+        if (!canMoveY) {
+            bot.angle = -bot.angle;
+        }
+        bot.x = newX;
+        if (canMoveY) {
+            bot.y = potentialY;
+        }
+    }
+
+    private void send(Bot bot, long now) {
+        int x = (int) bot.x;
+        int y = (int) bot.y;
+        bot.handler.sendPosition(code, x, y);
+        int slot = bot.sent++ % HISTORY;
+        bot.sentX[slot] = x;
+        bot.sentY[slot] = y;
+        bot.sentAt[slot] = now;
+        stats.positionsSent.increment();
+    }
+
+    /**
+     * Finds when a bot sent a position, newest first.
+     *
+     * @return The send time or 0 if the position is not in the history
+     */
+    private static long findSent(Bot bot, int x, int y) {
+        for (int i = 1; i <= Math.min(bot.sent, HISTORY); i++) {
+            int slot = (bot.sent - i) % HISTORY;
+            if (bot.sentX[slot] == x && bot.sentY[slot] == y) {
+                return bot.sentAt[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sends a command and waits for the reply, recording the round trip time.
+     *
+     * @return The reply or null if it didn't arrive in time
+     */
+    private String command(Bot bot, String command, String replyPrefix)
+        throws InterruptedException {
+        long start = System.nanoTime();
+        bot.handler.sendMessage(command);
+        String reply = await(bot.handler, replyPrefix);
+        if (reply == null) {
+            logger.error("No reply to {} for {}", command, bot.nickname);
+            return null;
+        }
+        stats.handshake.recordSince(start);
+        return reply;
+    }
+
+    private static String await(ServerHandler handler, String prefix)
+        throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+        while (System.currentTimeMillis() < deadline && handler.isConnected()) {
+            String message = handler.getMessage();
+            if (message == null) {
+                Thread.sleep(1);
+            } else if (message.startsWith(prefix)) {
+                return message;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,78 @@
+package igoat.bench;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of the load generator and summarizes them as percentiles. Every sample
+ * is kept, a run produces at most a few million of them.
+ */
+final class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count = 0;
+
+    /**
+     * Creates an empty recorder.
+     *
+     * @param name Name shown in the report
+     */
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startNanos The start time from {@link System#nanoTime()}
+     */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in ns
+     */
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /**
+     * Gets the number of samples.
+     *
+     * @return The number of samples
+     */
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Formats the percentiles of the samples in ms.
+     *
+     * @return One line with the count and the 50th, 90th, 99th and 99.9th percentile and maximum
+     */
+    String summary() {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        if (sorted.length == 0) {
+            return String.format("%-22s no samples", name);
+        }
+        Arrays.sort(sorted);
+        return String.format("%-22s n=%-8d p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f ms", name,
+            sorted.length, percentile(sorted, 0.5), percentile(sorted, 0.9),
+            percentile(sorted, 0.99), percentile(sorted, 0.999),
+            sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,156 @@
+package igoat.bench;
+
+import igoat.client.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless load generator. Starts lobbies of bots against a server on this machine, lets them
+ * play and reports the latencies seen by the bots. If the server exposes its metrics with
+ * {@code -Digoat.metricsPort}, the same property makes the generator report packet loss, CPU and
+ * heap of the server as well.
+ */
+public final class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    static final String HOST = "localhost";
+    private static final int CONNECT_THREADS = 16;
+    private static final long SETTLE_MILLIS = 500;
+
+    /**
+     * Measurements shared by all bots
+     */
+    static final class Stats {
+
+        final LatencyRecorder connect = new LatencyRecorder("connect");
+        final LatencyRecorder handshake = new LatencyRecorder("lobby commands");
+        final LatencyRecorder command = new LatencyRecorder("gethighscores rtt");
+        final LatencyRecorder update = new LatencyRecorder("udp update latency");
+        final LongAdder positionsSent = new LongAdder();
+    }
+
+    private LoadGenerator() {
+    }
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args {@code <port> [lobbies] [updates per second] [seconds]}
+     * @throws InterruptedException if the run is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            logger.warn("Usage: java -jar igoat.jar bench <port> [lobbies] [rate] [seconds]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int lobbies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        if (lobbies < 1 || rate <= 0 || seconds < 1) {
+            throw new IllegalArgumentException("lobbies, rate and seconds must be positive");
+        }
+        new LoadGenerator().run(port, lobbies, rate, seconds);
+    }
+
+    private void run(int port, int lobbies, double rate, int seconds)
+        throws InterruptedException {
+        Stats stats = new Stats();
+        Map map = new Map(true);
+        ServerMetrics metrics = ServerMetrics.fromProperty();
+        logger.info("Starting {} lobbies with {} bots each, {} positions/s for {} s", lobbies,
+            BotLobby.BOTS, rate, seconds);
+
+        List<BotLobby> running = new ArrayList<>();
+        List<BotLobby> all = new ArrayList<>();
+        ExecutorService connector = Executors.newFixedThreadPool(
+            Math.min(lobbies, CONNECT_THREADS));
+        try {
+            List<Future<Boolean>> started = new ArrayList<>();
+            for (int i = 0; i < lobbies; i++) {
+                BotLobby lobby = new BotLobby(i, map, stats);
+                all.add(lobby);
+                started.add(connector.submit(() -> lobby.start(HOST, port, rate)));
+            }
+            for (int i = 0; i < lobbies; i++) {
+                try {
+                    if (started.get(i).get()) {
+                        running.add(all.get(i));
+                    }
+                } catch (ExecutionException e) {
+                    logger.error("Lobby {} failed to start", i, e.getCause());
+                }
+            }
+            logger.info("{} of {} lobbies are playing", running.size(), lobbies);
+            if (running.isEmpty()) {
+                return;
+            }
+
+            java.util.Map<String, Double> before = metrics.scrape();
+            long wallStart = System.nanoTime();
+            double maxHeap = 0;
+            ScheduledExecutorService ticker = Executors.newScheduledThreadPool(
+                Math.min(running.size(), Runtime.getRuntime().availableProcessors()));
+            for (BotLobby lobby : running) {
+                lobby.play();
+                ticker.scheduleAtFixedRate(() -> {
+                    try {
+                        lobby.step();
+                    } catch (RuntimeException e) {
+                        logger.error("Bot lobby failed", e);
+                        lobby.stop();
+                    }
+                }, 0, 1, TimeUnit.MILLISECONDS);
+            }
+            for (int s = 1; s <= seconds; s++) {
+                Thread.sleep(1000);
+                java.util.Map<String, Double> now = metrics.scrape();
+                maxHeap = Math.max(maxHeap, now.getOrDefault("igoat_heap_used_bytes", 0.0));
+                logger.info("{} s: {} positions sent, {} updates received", s,
+                    stats.positionsSent.sum(), stats.update.count());
+            }
+            running.forEach(BotLobby::stop);
+            ticker.shutdown();
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+            // give the last updates time to arrive at the server before looking at its counters
+            Thread.sleep(SETTLE_MILLIS);
+            java.util.Map<String, Double> after = metrics.scrape();
+            long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+            report(stats, before, after, wallMillis, maxHeap);
+        } finally {
+            connector.shutdown();
+            all.forEach(BotLobby::close);
+        }
+    }
+
+    private static void report(Stats stats, java.util.Map<String, Double> before,
+        java.util.Map<String, Double> after, long wallMillis, double maxHeap) {
+        logger.info(stats.connect.summary());
+        logger.info(stats.handshake.summary());
+        logger.info(stats.command.summary());
+        logger.info(stats.update.summary());
+        long sent = stats.positionsSent.sum();
+        logger.info(String.format("%-22s %d", "positions sent", sent));
+        if (after.isEmpty()) {
+            logger.info("Server metrics not available, set -Digoat.metricsPort to the port of "
+                + "the server for loss, CPU and heap");
+            return;
+        }
+        double handled = ServerMetrics.delta(before, after, "igoat_positions_received_total");
+        double dropped = ServerMetrics.delta(before, after, "igoat_udp_packets_dropped_total");
+        double loss = sent == 0 ? 0 : Math.max(0, 1 - handled / sent);
+        logger.info(String.format("%-22s %.3f %% (%.0f handled, %.0f dropped by the server)",
+            "packet loss", loss * 100, handled, dropped));
+        ServerMetrics.logUsage(logger, before, after, wallMillis, maxHeap);
+    }
+}
@@ -0,0 +1,234 @@
+package igoat.bench;
+
+import igoat.server.ClientHandler;
+import igoat.server.TrafficCapture;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays a capture recorded with {@code -Digoat.capture} against a server on this machine. Every
+ * recorded TCP connection and UDP sender gets its own socket, and the events are sent at the
+ * recorded times, optionally faster. Pings of the server are answered by the replay, recorded
+ * pongs are skipped.
+ * <p>
+ * Player ids and lobby codes are handed out by the server in the order of the requests, so the
+ * server should be freshly started to see the same ids as the recorded one.
+ * </p>
+ */
+public final class Replay {
+
+    private static final Logger logger = LoggerFactory.getLogger(Replay.class);
+
+    private static final String REGISTRATION_PREFIX = "register_udp:";
+    private static final long PROGRESS_INTERVAL = 1_000_000_000L;
+
+    private final int port;
+    private final double speed;
+    private final InetAddress host;
+    private final Map<Integer, Connection> connections = new HashMap<>();
+    private final Map<Integer, DatagramSocket> senders = new HashMap<>();
+    private final LatencyRecorder lag = new LatencyRecorder("send lag");
+    private final LongAdder received = new LongAdder();
+    private long lines = 0;
+    private long datagrams = 0;
+    private long failed = 0;
+
+    /**
+     * A replayed TCP connection. Its reader thread counts the messages of the server and answers
+     * pings.
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+
+        Connection(int stream) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            Thread reader = new Thread(this::read, "Replay-Reader-" + stream);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized void send(String line) throws IOException {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        private void read() {
+            try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    received.increment();
+                    if ("ping".equals(line)) {
+                        send("pong");
+                    }
+                }
+            } catch (IOException e) {
+                // closed by the replay or the server
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Couldn't close replayed connection", e);
+            }
+        }
+    }
+
+    private Replay(int port, double speed) {
+        this.port = port;
+        this.speed = speed;
+        this.host = InetAddress.getLoopbackAddress();
+    }
+
+    /**
+     * Runs a replay.
+     *
+     * @param args {@code <capture file> <port> [speed]}, a speed of 2 replays twice as fast
+     * @throws IOException          if the capture can't be read
+     * @throws InterruptedException if the replay is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            logger.warn("Usage: java -jar igoat.jar replay <capture> <port> [speed]");
+            return;
+        }
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        new Replay(Integer.parseInt(args[1]), speed).run(Path.of(args[0]));
+    }
+
+    private void run(Path file) throws IOException, InterruptedException {
+        ServerMetrics metrics = ServerMetrics.fromProperty();
+        Map<String, Double> before = metrics.scrape();
+        long captured = 0;
+        long events = 0;
+        long origin = System.nanoTime();
+        long nextProgress = origin + PROGRESS_INTERVAL;
+        try (TrafficCapture.Reader reader = new TrafficCapture.Reader(file)) {
+            logger.info("Replaying capture of {} at {}x", file, speed);
+            TrafficCapture.Event event;
+            while ((event = reader.next()) != null) {
+                long due = origin + (long) (event.nanos() / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                lag.recordSince(due);
+                replay(event);
+                captured = event.nanos();
+                events++;
+                if (System.nanoTime() - nextProgress >= 0) {
+                    nextProgress += PROGRESS_INTERVAL;
+                    logger.info("{} s of the capture: {} events replayed", captured / 1_000_000_000L,
+                        events);
+                }
+            }
+        } finally {
+            connections.values().forEach(Connection::close);
+            senders.values().forEach(DatagramSocket::close);
+        }
+        long wallMillis = (System.nanoTime() - origin) / 1_000_000;
+        Map<String, Double> after = metrics.scrape();
+
+        logger.info(String.format("%-22s %d (%d lines, %d packets, %d failed)", "events", events,
+            lines, datagrams, failed));
+        logger.info(String.format("%-22s %.1f s captured, %.1f s replayed, %.0f events/s",
+            "duration", captured / 1e9, wallMillis / 1e3, events * 1000.0 / Math.max(1,
+                wallMillis)));
+        logger.info(String.format("%-22s %d", "messages received", received.sum()));
+        logger.info(lag.summary());
+        if (after.isEmpty()) {
+            logger.info("Server metrics not available, set -Digoat.metricsPort to the port of "
+                + "the server for its latencies, CPU and heap");
+            return;
+        }
+        logger.info(String.format("%-22s %.0f handled, %.0f dropped by the server",
+            "udp packets", ServerMetrics.delta(before, after, "igoat_udp_packets_received_total"),
+            ServerMetrics.delta(before, after, "igoat_udp_packets_dropped_total")));
+        // the quantiles cover the whole life of the server, which is why it should be fresh
+        logQuantiles(after, "igoat_position_update_seconds", "position update");
+        logQuantiles(after, "igoat_lobby_tick_seconds", "lobby tick");
+        ServerMetrics.logUsage(logger, before, after, wallMillis, 0);
+    }
+
+    private void replay(TrafficCapture.Event event) {
+        int stream = event.stream();
+        try {
+            switch (event.type()) {
+                case TrafficCapture.CONNECT -> connections.put(stream, new Connection(stream));
+                case TrafficCapture.LINE -> {
+                    Connection connection = connections.get(stream);
+                    String line = new String(event.payload(), StandardCharsets.UTF_8);
+                    // pongs are sent by the reader, frames are not replayed
+                    if (connection != null && !"pong".equals(line)
+                        && !line.startsWith("protocol:")) {
+                        connection.send(line);
+                        lines++;
+                    }
+                }
+                case TrafficCapture.CLOSE -> {
+                    Connection connection = connections.remove(stream);
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+                case TrafficCapture.DATAGRAM -> sendDatagram(stream, event.payload());
+                default -> logger.warn("Unknown event type {}", event.type());
+            }
+        } catch (IOException e) {
+            failed++;
+            logger.warn("Couldn't replay event of stream {}: {}", stream, e.getMessage());
+        }
+    }
+
+    private void sendDatagram(int stream, byte[] payload) throws IOException {
+        DatagramSocket socket = senders.get(stream);
+        if (socket == null) {
+            socket = new DatagramSocket();
+            senders.put(stream, socket);
+        }
+        String text = new String(payload, 0, Math.min(payload.length, REGISTRATION_PREFIX.length()),
+            StandardCharsets.UTF_8);
+        if (text.equals(REGISTRATION_PREFIX)) {
+            // register_udp:nickname:port, the server has to send to the port of the replay
+            String registration = new String(payload, StandardCharsets.UTF_8);
+            payload = (registration.substring(0, registration.lastIndexOf(':') + 1)
+                + socket.getLocalPort()).getBytes(StandardCharsets.UTF_8);
+        }
+        socket.send(new DatagramPacket(payload, payload.length, host,
+            ClientHandler.SERVER_UDP_LISTENING_PORT));
+        datagrams++;
+    }
+
+    private static void logQuantiles(Map<String, Double> values, String metric, String name) {
+        logger.info(String.format("%-22s p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f ms", name,
+            quantile(values, metric, "0.5"), quantile(values, metric, "0.9"),
+            quantile(values, metric, "0.99"), quantile(values, metric, "0.999")));
+    }
+
+    private static double quantile(Map<String, Double> values, String metric, String quantile) {
+        return values.getOrDefault(metric + "{quantile=\"" + quantile + "\"}", 0.0) * 1000;
+    }
+}
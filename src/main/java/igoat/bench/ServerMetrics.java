@@ -0,0 +1,108 @@
+package igoat.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the metrics endpoint of a server on this machine, at the port set with
+ * {@code -Digoat.metricsPort}.
+ */
+final class ServerMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerMetrics.class);
+
+    private final HttpClient client;
+    private final URI uri;
+
+    private ServerMetrics(HttpClient client, URI uri) {
+        this.client = client;
+        this.uri = uri;
+    }
+
+    /**
+     * Creates a reader for the port set with {@code -Digoat.metricsPort}.
+     *
+     * @return The reader, which returns no values if the property isn't set
+     */
+    static ServerMetrics fromProperty() {
+        int port = Integer.getInteger("igoat.metricsPort", 0);
+        if (port <= 0) {
+            return new ServerMetrics(null, null);
+        }
+        return new ServerMetrics(
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build(),
+            URI.create("http://" + LoadGenerator.HOST + ":" + port + "/metrics"));
+    }
+
+    /**
+     * Gets the current values of the server.
+     *
+     * @return The value of each series by name and labels, empty if nothing could be read
+     * @throws InterruptedException if the thread is interrupted while waiting for the server
+     */
+    Map<String, Double> scrape() throws InterruptedException {
+        Map<String, Double> values = new HashMap<>();
+        if (client == null) {
+            return values;
+        }
+        try {
+            HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(2)).build(),
+                HttpResponse.BodyHandlers.ofString());
+            for (String line : response.body().split("\n")) {
+                int space = line.lastIndexOf(' ');
+                if (line.isEmpty() || line.startsWith("#") || space < 0) {
+                    continue;
+                }
+                try {
+                    values.put(line.substring(0, space),
+                        Double.parseDouble(line.substring(space + 1)));
+                } catch (NumberFormatException e) {
+                    logger.debug("Skipping metric line {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Couldn't read server metrics from {}: {}", uri, e.getMessage());
+        }
+        return values;
+    }
+
+    /**
+     * Gets how much a counter grew between two scrapes.
+     *
+     * @param before The earlier values
+     * @param after  The later values
+     * @param name   Name and labels of the series
+     * @return The difference, 0 if the series is missing
+     */
+    static double delta(Map<String, Double> before, Map<String, Double> after, String name) {
+        return after.getOrDefault(name, 0.0) - before.getOrDefault(name, 0.0);
+    }
+
+    /**
+     * Logs the CPU and heap used by the server between two scrapes.
+     *
+     * @param target     The logger to write to
+     * @param before     The values at the start
+     * @param after      The values at the end
+     * @param wallMillis Time between the scrapes in ms
+     * @param maxHeap    Largest heap seen in between in bytes
+     */
+    static void logUsage(Logger target, Map<String, Double> before, Map<String, Double> after,
+        long wallMillis, double maxHeap) {
+        double cpu = delta(before, after, "igoat_process_cpu_milliseconds");
+        target.info(String.format("%-22s %.1f %% of one core", "server cpu",
+            cpu * 100 / Math.max(1, wallMillis)));
+        double heap = after.getOrDefault("igoat_heap_used_bytes", 0.0);
+        target.info(String.format("%-22s last=%.1f max=%.1f MB", "server heap", heap / 1e6,
+            Math.max(heap, maxHeap) / 1e6));
+    }
+}
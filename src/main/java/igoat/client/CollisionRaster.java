@@ -0,0 +1,110 @@
+package igoat.client;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Precomputed collision results for one player size. Bit (x, y) is set if a player of that size
+ * whose top left corner is at (x, y) overlaps a wall, so checking a position is a single lookup.
+ * The raster only covers the map, positions outside of it have to be checked against the walls.
+ */
+class CollisionRaster {
+
+    private final int originX;
+    private final int originY;
+    private final int columns;
+    private final int rows;
+    private final int playerWidth;
+    private final int playerHeight;
+    private final boolean ignoreWindows;
+    private final BitSet blocked;
+
+    /**
+     * Builds the raster from the current walls.
+     *
+     * @param x             x-coordinate of the covered area
+     * @param y             y-coordinate of the covered area
+     * @param width         Width of the covered area
+     * @param height        Height of the covered area
+     * @param playerWidth   Width of the player
+     * @param playerHeight  Height of the player
+     * @param ignoreWindows Whether the windows are left out
+     * @param walls         The collision walls
+     * @param windows       The windows
+     */
+    CollisionRaster(int x, int y, int width, int height, int playerWidth, int playerHeight,
+        boolean ignoreWindows, List<Wall> walls, List<Wall> windows) {
+        this.originX = x;
+        this.originY = y;
+        this.columns = width;
+        this.rows = height;
+        this.playerWidth = playerWidth;
+        this.playerHeight = playerHeight;
+        this.ignoreWindows = ignoreWindows;
+        blocked = new BitSet(width * height);
+        for (Wall wall : walls) {
+            mark(wall);
+        }
+        if (!ignoreWindows) {
+            for (Wall window : windows) {
+                mark(window);
+            }
+        }
+    }
+
+    /**
+     * Marks every position at which the player would overlap the wall, following
+     * {@link Player#collidesWithWall(double, double, double, double, Wall)}.
+     */
+    private void mark(Wall wall) {
+        int fromX = Math.max(wall.x - playerWidth + 1, originX) - originX;
+        int toX = Math.min(wall.x + wall.width, originX + columns) - originX;
+        int fromY = Math.max(wall.y - playerHeight + 1, originY) - originY;
+        int toY = Math.min(wall.y + wall.height, originY + rows) - originY;
+        if (fromX >= toX) {
+            return;
+        }
+        for (int row = fromY; row < toY; row++) {
+            blocked.set(row * columns + fromX, row * columns + toX);
+        }
+    }
+
+    /**
+     * Checks whether a position is covered by this raster.
+     *
+     * @param x x-coordinate of the player
+     * @param y y-coordinate of the player
+     * @return true if {@link #isBlocked(int, int)} can be used for the position
+     */
+    boolean covers(int x, int y) {
+        return x >= originX && x < originX + columns && y >= originY && y < originY + rows;
+    }
+
+    /**
+     * Checks whether the player overlaps a wall at a position. The position has to be
+     * {@link #covers(int, int) covered} by the raster.
+     *
+     * @param x x-coordinate of the player
+     * @param y y-coordinate of the player
+     * @return true if there is a collision
+     */
+    boolean isBlocked(int x, int y) {
+        return blocked.get((y - originY) * columns + (x - originX));
+    }
+
+    /**
+     * Checks whether this raster was built for the given player size and window setting.
+     */
+    boolean matches(int playerWidth, int playerHeight, boolean ignoreWindows) {
+        return this.playerWidth == playerWidth && this.playerHeight == playerHeight
+            && this.ignoreWindows == ignoreWindows;
+    }
+
+    /**
+     * Builds the same raster from the walls as they are now, e.g. after the doors opened.
+     */
+    CollisionRaster rebuild(List<Wall> walls, List<Wall> windows) {
+        return new CollisionRaster(originX, originY, columns, rows, playerWidth, playerHeight,
+            ignoreWindows, walls, windows);
+    }
+}
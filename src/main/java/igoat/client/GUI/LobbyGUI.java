@@ -7,6 +7,8 @@ import igoat.client.ScreenUtil;
 import igoat.client.ServerHandler;
 import igoat.client.SoundManager;
 import igoat.client.Sprite;
+import igoat.protocol.Message;
+import igoat.protocol.Opcode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -526,28 +528,16 @@ public class LobbyGUI {
                 continue;
             }
 
-            if (message.startsWith("highscores:")) {
-                String content = message.substring("highscores:".length());
-                String type = "highscores";
-                int colonIndex = message.indexOf(':');
-                type = message.substring(0, colonIndex).toLowerCase();
-                content = message.substring(colonIndex + 1);
-
-                switch (type) {
-                    case "highscores":
-                        displayEnhancedHighscores(content);
-                        break;
-                    default:
-                        break;
-                }
+            Message parsed = Message.parse(message);
+            if (parsed.opcode() == Opcode.HIGHSCORES && parsed.hasPayload()) {
+                displayEnhancedHighscores(parsed.payload());
                 continue;
             }
 
             String chatPrefix = null;
-            if (message.startsWith("chat:")) {
-                chatPrefix = "chat:";
-            } else if (message.startsWith("lobbychat:")) {
-                chatPrefix = "lobbychat:";
+            if (parsed.hasPayload()
+                && (parsed.opcode() == Opcode.CHAT || parsed.opcode() == Opcode.LOBBY_CHAT)) {
+                chatPrefix = parsed.opcode().text() + ":";
             }
 
             if (chatPrefix != null) {
@@ -610,12 +600,10 @@ public class LobbyGUI {
                 continue;
             }
 
-            String type = message.substring(0, colonIndex).toLowerCase();
             String content = message.substring(colonIndex + 1);
-            //logger.info("Parsed type: {}, content: {}", type, content);
 
-            switch (type) {
-                case "error":
+            switch (parsed.opcode()) {
+                case ERROR:
                     appendToMessageArea("Error: " + content);
                     final String codeToSpectate;
                     if (currentLobbyCode != null) {
@@ -659,10 +647,10 @@ public class LobbyGUI {
                         });
                     }
                     break;
-                case "confirm":
+                case CONFIRM:
                     appendToMessageArea("Info: " + content);
                     break;
-                case "lobby":
+                case LOBBY:
                     if (content.equals("0")) {
                         appendToMessageArea(lang.get("lobby.leftLobby"));
                         if (!isGlobalChat) {
@@ -691,7 +679,7 @@ public class LobbyGUI {
                         serverHandler.sendMessage("getlobbyplayers:");
                     }
                     break;
-                case "getlobbies":
+                case GET_LOBBIES:
                     Platform.runLater(() -> {
                         lobbyListView.getItems().clear();
                         String[] lobbies = content.split(",");
@@ -710,7 +698,7 @@ public class LobbyGUI {
                         }
                     });
                     break;
-                case "getplayers":
+                case GET_PLAYERS:
                     if (isGlobalChat) {
                         Platform.runLater(() -> {
                             String[] players = content.split(",");
@@ -718,7 +706,7 @@ public class LobbyGUI {
                         });
                     }
                     break;
-                case "getlobbyplayers":
+                case GET_LOBBY_PLAYERS:
                     if (!isGlobalChat) {
                         Platform.runLater(() -> {
                             String[] players =
@@ -746,7 +734,7 @@ public class LobbyGUI {
                         });
                     }
                     break;
-                case "ready_status":
+                case READY_STATUS:
                     String[] readyInfo = content.split(",");
                     if (readyInfo.length == 2) {
                         String playerName = readyInfo[0].trim();
@@ -764,7 +752,7 @@ public class LobbyGUI {
                         logger.error("Invalid ready_status content format: {}", content);
                     }
                     break;
-                case "game_started":
+                case GAME_STARTED:
                     appendToMessageArea(lang.get("lobby.gameStarted"));
                     Platform.runLater(() -> {
                         if (currentLobbyCode == null) {
@@ -794,10 +782,10 @@ public class LobbyGUI {
                         }
                     });
                     break;
-                case "results":
-                    processGameResults(content);
+                case RESULTS:
+                    processGameResults(content.replace("<br>", "\n"));
                     break;
-                case "highscores":
+                case HIGHSCORES:
                     Platform.runLater(() -> {
                         Stage highscoreStage = new Stage();
                         highscoreStage.setTitle(lang.get("hs.leaderboard"));
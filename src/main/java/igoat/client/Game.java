@@ -10,6 +10,8 @@ import igoat.client.GUI.LobbyGUI;
 import igoat.client.GUI.MainMenuGUI;
 import igoat.client.GUI.SettingsWindow;
 import igoat.client.GUI.SoundButton;
+import igoat.protocol.Message;
+import igoat.protocol.Opcode;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -93,8 +95,10 @@ public class Game extends Application {
     private igoat.client.Map gameMap;
     private Camera camera;
     private ServerHandler serverHandler;
+    private final ServerHandler.PositionListener positionListener = this::processPositionUpdate;
     private String playerName;
     private String lobbyCode;
+    private int lobbyCodeNumber;
     private String username;
     private final Timer timer = new Timer();
     private String time = "";
@@ -197,6 +201,7 @@ public class Game extends Application {
         this.serverHandler = handler;
         this.playerName = name;
         this.lobbyCode = code;
+        this.lobbyCodeNumber = Integer.parseInt(code);
         this.gameStarted = true;
         this.username = name;
 
@@ -463,7 +468,8 @@ public class Game extends Application {
      * @param message the message received from the server
      */
     private void processServerMessage(String message) {
-        if (message.startsWith("timer:")) {
+        Message received = Message.parse(message);
+        if (received.opcode() == Opcode.TIMER) {
             String[] parts = message.split(":");
             if (parts.length == 3) {
                 String code = parts[1];
@@ -512,205 +518,222 @@ public class Game extends Application {
             return new String[]{"System", data};
         };
 
-        if (message.startsWith("error:")) {
-            logger.warn("Received error: {}", message.substring("error:".length()));
+        if (received.opcode() == Opcode.ERROR) {
+            logger.warn("Received error: {}", received.text());
             return;
         }
 
         ChatMode mode = null;
         String prefixString = null;
-        if (message.startsWith("lobbychat:")) {
+        if (received.opcode() == Opcode.LOBBY_CHAT && received.hasPayload()) {
             mode = ChatMode.LOBBY;
             prefixString = "lobbychat:";
-        } else if (message.startsWith("chat:")) {
+        } else if (received.opcode() == Opcode.CHAT && received.hasPayload()) {
             mode = ChatMode.GLOBAL;
             prefixString = "chat:";
         } else {
-            if (message.startsWith("getlobbyplayers:")) {
-                String playersData = message.substring("getlobbyplayers:".length());
-                if (!playersData.isEmpty()) {
-                    String[] playerNames = playersData.split(",");
-                    Set<String> currentPlayers = new HashSet<>(List.of(playerNames));
-                    currentPlayers.add(this.playerName);
-
-                    Set<String> playersToRemove = new HashSet<>(otherPlayers.keySet());
-                    playersToRemove.removeAll(currentPlayers);
-                    for (String nameToRemove : playersToRemove) {
-                        removeRemotePlayer(nameToRemove);
-                        logger.info("removed player");
-                    }
+            switch (received.opcode()) {
+                case GET_LOBBY_PLAYERS -> {
+                    String playersData = received.text();
+                    if (!playersData.isEmpty()) {
+                        String[] playerNames = playersData.split(",");
+                        Set<String> currentPlayers = new HashSet<>(List.of(playerNames));
+                        currentPlayers.add(this.playerName);
+
+                        Set<String> playersToRemove = new HashSet<>(otherPlayers.keySet());
+                        playersToRemove.removeAll(currentPlayers);
+                        for (String nameToRemove : playersToRemove) {
+                            removeRemotePlayer(nameToRemove);
+                            logger.info("removed player");
+                        }
 
-                    for (String name : playerNames) {
-                        if (!name.equals(this.playerName) && !otherPlayers.containsKey(name)) {
-                            createVisualForRemotePlayer(name, 100, 100);
+                        for (String name : playerNames) {
+                            if (!name.equals(this.playerName) && !otherPlayers.containsKey(name)) {
+                                createVisualForRemotePlayer(name, 100, 100);
+                            }
                         }
                     }
                 }
-            } else if (message.equals("game_started")) {
-                handleGameStarted();
-            } else if (message.startsWith("catch:")) {
-                String caughtPlayerName = message.substring("catch:".length());
-                logger.info("{} was caught!", caughtPlayerName);
-                caughtBanner.showAnimation(caughtPlayerName + " was caught!", 2);
-
-                Platform.runLater(() -> {
-                    if (player != null && caughtPlayerName.equals(player.getUsername())) {
-                        player.setDown(true);
-                        if (player.getRole() == Role.IGOAT) {
-                            sound.igoatCatch.play();
-                        } else if (player.getRole() == Role.GOAT) {
-                            sound.goat.play();
-                        }
+                case GAME_STARTED -> {
+                    if (!received.hasPayload()) {
+                        handleGameStarted();
+                    }
+                }
+                case CATCH -> {
+                    String caughtPlayerName = received.text();
+                    logger.info("{} was caught!", caughtPlayerName);
+                    caughtBanner.showAnimation(caughtPlayerName + " was caught!", 2);
 
-                    } else {
-                        Player other = otherPlayers.get(caughtPlayerName);
-                        if (other != null) {
-                            other.setDown(true);
-                            if (other.getRole() == Role.IGOAT) {
-                                sound.igoatCatch.play(other.getX(), other.getY(), player.getX(),
-                                    player.getY(), 300);
+                    Platform.runLater(() -> {
+                        if (player != null && caughtPlayerName.equals(player.getUsername())) {
+                            player.setDown(true);
+                            if (player.getRole() == Role.IGOAT) {
+                                sound.igoatCatch.play();
                             } else if (player.getRole() == Role.GOAT) {
-                                sound.goat.play(other.getX(), other.getY(), player.getX(),
-                                    player.getY(), 300);
+                                sound.goat.play();
+                            }
+
+                        } else {
+                            Player other = otherPlayers.get(caughtPlayerName);
+                            if (other != null) {
+                                other.setDown(true);
+                                if (other.getRole() == Role.IGOAT) {
+                                    sound.igoatCatch.play(other.getX(), other.getY(), player.getX(),
+                                        player.getY(), 300);
+                                } else if (player.getRole() == Role.GOAT) {
+                                    sound.goat.play(other.getX(), other.getY(), player.getX(),
+                                        player.getY(), 300);
+                                }
                             }
                         }
-                    }
-                });
-            } else if (message.startsWith("revive:")) {
-                String revivedPlayerName = message.substring("revive:".length());
-                logger.info("{} was revived!", revivedPlayerName);
-                reviveBanner.showAnimation(
-                    String.format(lang.get("game.revive"), revivedPlayerName), 2);
+                    });
+                }
+                case REVIVE -> {
+                    String revivedPlayerName = received.text();
+                    logger.info("{} was revived!", revivedPlayerName);
+                    reviveBanner.showAnimation(
+                        String.format(lang.get("game.revive"), revivedPlayerName), 2);
 
-                Platform.runLater(() -> {
-                    if (player != null && revivedPlayerName.equals(player.getUsername())) {
-                        player.setDown(false);
-                        sound.goat.play();
-                        logger.info("exiting spectator mode");
-                        spectating = false;
-                    } else {
-                        Player other = otherPlayers.get(revivedPlayerName);
-                        if (other != null) {
-                            other.setDown(false);
-                            if (other.getRole() == Role.GOAT) {
-                                sound.goat.play(other.getX(), other.getY(), player.getX(),
-                                    player.getY(), 300);
+                    Platform.runLater(() -> {
+                        if (player != null && revivedPlayerName.equals(player.getUsername())) {
+                            player.setDown(false);
+                            sound.goat.play();
+                            logger.info("exiting spectator mode");
+                            spectating = false;
+                        } else {
+                            Player other = otherPlayers.get(revivedPlayerName);
+                            if (other != null) {
+                                other.setDown(false);
+                                if (other.getRole() == Role.GOAT) {
+                                    sound.goat.play(other.getX(), other.getY(), player.getX(),
+                                        player.getY(), 300);
+                                }
                             }
                         }
+                    });
+                }
+                case PLAYER_LEFT -> {
+                    String leftPlayer = received.text();
+                    if (!leftPlayer.equals(this.playerName)) {
+                        removeRemotePlayer(leftPlayer);
+                        logger.info("player has left");
                     }
-                });
-            } else if (message.startsWith("player_left:")) {
-                String leftPlayer = message.substring("player_left:".length());
-                if (!leftPlayer.equals(this.playerName)) {
-                    removeRemotePlayer(leftPlayer);
-                    logger.info("player has left");
                 }
-            } else if (message.startsWith("terminal:")) {
-                String[] parts = message.split(":");
-                if (parts.length == 2) {
-                    activateTerminal(Integer.parseInt(parts[1]));
+                case TERMINAL -> {
+                    String[] parts = message.split(":");
+                    if (parts.length == 2) {
+                        activateTerminal(Integer.parseInt(parts[1]));
+                    }
                 }
-            } else if (message.startsWith("activateStation:")) {
-                String[] parts = message.split(":");
-                if (parts.length == 2) {
-                    activateStation(Integer.parseInt(parts[1]));
+                case ACTIVATE_STATION -> {
+                    String[] parts = message.split(":");
+                    if (parts.length == 2) {
+                        activateStation(Integer.parseInt(parts[1]));
+                    }
                 }
-            } else if (message.startsWith("role:")) {
-                String[] parts = message.split(":");
-                if (parts.length == 3) {
-                    String playerName = parts[1];
-                    try {
-                        Role role = Role.valueOf(parts[2]);
-                        logger.info("Received role {} for player {}", role, playerName);
+                case ROLE -> {
+                    String[] parts = message.split(":");
+                    if (parts.length == 3) {
+                        String playerName = parts[1];
+                        try {
+                            Role role = Role.valueOf(parts[2]);
+                            logger.info("Received role {} for player {}", role, playerName);
+                            Platform.runLater(() -> {
+                                if (player != null && playerName.equals(player.getUsername())) {
+                                    player.setRole(role);
+                                } else {
+                                    Player other = otherPlayers.get(playerName);
+                                    if (other != null) {
+                                        other.setRole(role);
+                                    } else {
+                                        pendingRoles.put(playerName, role);
+                                        logger.warn(
+                                            "[role] Received role for unknown player {}. Storing temporarily.",
+                                            playerName);
+                                    }
+                                }
+                            });
+                        } catch (IllegalArgumentException e) {
+                            logger.error("Invalid role value in message: {}", message);
+                        }
+                    } else {
+                        logger.error("Invalid role message format: {}", message);
+                    }
+                }
+                case ROLES -> {
+                    String rolesData = received.text();
+                    if (!rolesData.isEmpty()) {
+                        String[] roleEntries = rolesData.split(",");
+                        Map<String, Role> rolesToApply = new HashMap<>();
+                        Map<String, Role> rolesToPend = new HashMap<>();
+
+                        for (String entry : roleEntries) {
+                            String[] parts = entry.split("=");
+                            if (parts.length == 2) {
+                                String playerName = parts[0];
+                                try {
+                                    Role role = Role.valueOf(parts[1]);
+                                    //logger.info("[roles] Processing role {} for player {}", role, playerName);
+                                    Platform.runLater(() -> {
+                                        if (player != null && playerName.equals(player.getUsername())) {
+                                            player.setRole(role);
+                                        } else {
+                                            Player other = otherPlayers.get(playerName);
+                                            if (other != null) {
+                                                other.setRole(role);
+                                                rolesToApply.put(playerName, role);
+                                            } else {
+                                                rolesToPend.put(playerName, role);
+                                                logger.warn(
+                                                    "[roles] Received role for unknown player {}. Storing temporarily.",
+                                                    playerName);
+                                            }
+                                        }
+                                    });
+                                } catch (IllegalArgumentException e) {
+                                    logger.error("Invalid role value in roles message entry: {}",
+                                        entry);
+                                }
+                            }
+                        }
+
                         Platform.runLater(() -> {
-                            if (player != null && playerName.equals(player.getUsername())) {
-                                player.setRole(role);
-                            } else {
+                            for (Map.Entry<String, Role> entry : rolesToApply.entrySet()) {
+                                String playerName = entry.getKey();
+                                Role role = entry.getValue();
                                 Player other = otherPlayers.get(playerName);
                                 if (other != null) {
                                     other.setRole(role);
+                                    rolesToPend.remove(playerName);
                                 } else {
                                     pendingRoles.put(playerName, role);
                                     logger.warn(
-                                        "[role] Received role for unknown player {}. Storing temporarily.",
+                                        "[roles] Received role for unknown player {}. Storing temporarily.",
                                         playerName);
                                 }
                             }
+                            pendingRoles.putAll(rolesToPend);
                         });
-                    } catch (IllegalArgumentException e) {
-                        logger.error("Invalid role value in message: {}", message);
                     }
-                } else {
-                    logger.error("Invalid role message format: {}", message);
                 }
-            } else if (message.startsWith("roles:")) {
-                String rolesData = message.substring("roles:".length());
-                if (!rolesData.isEmpty()) {
-                    String[] roleEntries = rolesData.split(",");
-                    Map<String, Role> rolesToApply = new HashMap<>();
-                    Map<String, Role> rolesToPend = new HashMap<>();
-
-                    for (String entry : roleEntries) {
-                        String[] parts = entry.split("=");
-                        if (parts.length == 2) {
-                            String playerName = parts[0];
-                            try {
-                                Role role = Role.valueOf(parts[1]);
-                                //logger.info("[roles] Processing role {} for player {}", role, playerName);
-                                Platform.runLater(() -> {
-                                    if (player != null && playerName.equals(player.getUsername())) {
-                                        player.setRole(role);
-                                    } else {
-                                        Player other = otherPlayers.get(playerName);
-                                        if (other != null) {
-                                            other.setRole(role);
-                                            rolesToApply.put(playerName, role);
-                                        } else {
-                                            rolesToPend.put(playerName, role);
-                                            logger.warn(
-                                                "[roles] Received role for unknown player {}. Storing temporarily.",
-                                                playerName);
-                                        }
-                                    }
-                                });
-                            } catch (IllegalArgumentException e) {
-                                logger.error("Invalid role value in roles message entry: {}",
-                                    entry);
-                            }
-                        }
+                case DOOR -> {
+                    if (!received.hasPayload()) {
+                        Platform.runLater(this::handleDoorsOpen);
                     }
-
-                    Platform.runLater(() -> {
-                        for (Map.Entry<String, Role> entry : rolesToApply.entrySet()) {
-                            String playerName = entry.getKey();
-                            Role role = entry.getValue();
-                            Player other = otherPlayers.get(playerName);
-                            if (other != null) {
-                                other.setRole(role);
-                                rolesToPend.remove(playerName);
-                            } else {
-                                pendingRoles.put(playerName, role);
-                                logger.warn(
-                                    "[roles] Received role for unknown player {}. Storing temporarily.",
-                                    playerName);
-                            }
-                        }
-                        pendingRoles.putAll(rolesToPend);
-                    });
                 }
-            } else if (message.equals("door")) {
-                Platform.runLater(this::handleDoorsOpen);
-                return;
-            } else if (message.startsWith("gameover:")) {
-                logger.info("received: {}", message);
-                String[] parts = message.split(":");
-                if (parts.length == 2) {
-                    endGame(parts[1].equals("true"));
+                case GAME_OVER -> {
+                    logger.info("received: {}", message);
+                    String[] parts = message.split(":");
+                    if (parts.length == 2) {
+                        endGame(parts[1].equals("true"));
+                    }
+                }
+                case READY_STATUS -> {
+                    // only shown in the lobby
+                }
+                default -> {
+                    logger.warn("Received message with unknown prefix or format: {}", message);
                 }
-            } else if (message.startsWith("ready_status:")) {
-                return;
-            } else {
-                logger.warn("Received message with unknown prefix or format: {}", message);
             }
             return;
         }
@@ -886,10 +909,7 @@ public class Game extends Application {
         Thread updateProcessor = new Thread(() -> {
             while (gameStarted && serverHandler.isConnected()) {
                 try {
-                    String update = serverHandler.getLastUpdate();
-                    if (update != null && !update.isEmpty()) {
-                        processUdpUpdate(update);
-                    }
+                    serverHandler.drainPositions(positionListener);
                     Thread.sleep(2);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -904,52 +924,32 @@ public class Game extends Application {
     }
 
     /**
-     * Processes UDP updates received from the server.
+     * Processes a position update received from the server.
      *
-     * @param update The UDP update message
+     * @param playerName The nickname of the player
+     * @param x          x-coordinate
+     * @param y          y-coordinate
      */
-    private void processUdpUpdate(String update) {
-        if (update.startsWith("player_position:")) {
-            String[] parts = update.split(":");
-            if (parts.length != 4) {
-                logger.error("Invalid position update: {}", update);
-                return;
-            }
-
-            String playerName = parts[1];
-            try {
-                int x = Integer.parseInt(parts[2]);
-                int y = Integer.parseInt(parts[3]);
-
-                String confirmedNickname = serverHandler.getConfirmedNickname();
-                if (confirmedNickname == null) {
-                    logger.error("Cannot process update - confirmed nickname is null");
-                    return;
-                }
-                if (playerName.equals(confirmedNickname)) {
-                    logger.info("Received position correction from server: {}, {}", x, y);
-                    if (player == null) {
-                        initialX = x;
-                        initialY = y;
-                    } else {
-                        Platform.runLater(() -> player.updatePosition(x, y));
-                    }
-                    return;
-                }
-                if (otherPlayers.containsKey(playerName)) {
-                    updateRemotePlayerPosition(playerName, x, y);
-                } else {
-                    createVisualForRemotePlayer(playerName, x, y);
-                }
-            } catch (NumberFormatException e) {
-                logger.error("Invalid coordinates in update: {}", update, e);
+    private void processPositionUpdate(String playerName, int x, int y) {
+        String confirmedNickname = serverHandler.getConfirmedNickname();
+        if (confirmedNickname == null) {
+            logger.error("Cannot process update - confirmed nickname is null");
+            return;
+        }
+        if (playerName.equals(confirmedNickname)) {
+            logger.info("Received position correction from server: {}, {}", x, y);
+            if (player == null) {
+                initialX = x;
+                initialY = y;
+            } else {
+                Platform.runLater(() -> player.updatePosition(x, y));
             }
-        } else if (update.startsWith("udp_ack:")) {
-            logger.info("Received UDP acknowledgment from server");
-        } else if (update.equals("door")) {
-            Platform.runLater(this::handleDoorsOpen);
+            return;
+        }
+        if (otherPlayers.containsKey(playerName)) {
+            updateRemotePlayerPosition(playerName, x, y);
         } else {
-            logger.info("Unrecognized UDP message format: {}", update);
+            createVisualForRemotePlayer(playerName, x, y);
         }
     }
 
@@ -1204,42 +1204,11 @@ public class Game extends Application {
         double potentialX = currentX + dx;
         double potentialY = currentY + dy;
 
-        boolean canMoveX = true;
-        if (dx != 0) {
-            for (Wall wall : gameMap.getCollisionWalls()) {
-                if (player.collidesWithWall((int) potentialX, (int) currentY, wall)) {
-                    canMoveX = false;
-                    break;
-                }
-            }
-        }
-
-        if (dx != 0 && player.getRole() != Role.GOAT) {
-            for (Wall wall : gameMap.getWindowCollisions()) {
-                if (player.collidesWithWall((int) potentialX, (int) currentY, wall)) {
-                    canMoveX = false;
-                    break;
-                }
-            }
-        }
-
-        boolean canMoveY = true;
-        if (dy != 0) {
-            for (Wall wall : gameMap.getCollisionWalls()) {
-                if (player.collidesWithWall((int) newX, (int) potentialY, wall)) {
-                    canMoveY = false;
-                    break;
-                }
-            }
-        }
-        if (dy != 0 && player.getRole() != Role.GOAT) {
-            for (Wall wall : gameMap.getWindowCollisions()) {
-                if (player.collidesWithWall((int) newX, (int) potentialY, wall)) {
-                    canMoveY = false;
-                    break;
-                }
-            }
-        }
+        boolean ignoreWindows = player.getRole() == Role.GOAT;
+        boolean canMoveX = dx == 0 || !gameMap.collides((int) potentialX, (int) currentY,
+            player.getWidth(), player.getHeight(), ignoreWindows);
+        boolean canMoveY = dy == 0 || !gameMap.collides((int) newX, (int) potentialY,
+            player.getWidth(), player.getHeight(), ignoreWindows);
 
         if (canMoveX) {
             newX = potentialX;
@@ -1386,15 +1355,7 @@ public class Game extends Application {
             int x = (int) player.getX();
             int y = (int) player.getY();
 
-            String confirmedNickname = serverHandler.getConfirmedNickname();
-            if (confirmedNickname == null) {
-                logger.error("Cannot send position update - confirmed nickname is null");
-                return;
-            }
-
-            String updateMessage = String.format("position:%s:%s:%d:%d", confirmedNickname,
-                lobbyCode, x, y);
-            serverHandler.sendUpdate(updateMessage);
+            serverHandler.sendPosition(lobbyCodeNumber, x, y);
         }
     }
 
@@ -7,6 +7,7 @@ import igoat.client.GUI.LobbyGUI;
 import igoat.client.GUI.MainMenuGUI;
 import igoat.client.GUI.SettingsWindow;
 import igoat.client.GUI.SoundButton;
+import igoat.protocol.Message;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -59,6 +60,7 @@ public class GameSpectator extends Application {
     private igoat.client.Map gameMap;
     private Camera camera;
     private ServerHandler serverHandler;
+    private final ServerHandler.PositionListener positionListener = this::processPositionUpdate;
     private String lobbyCode;
     private boolean gameStarted = false;
     private final LinkedHashMap<String, Player> otherPlayers = new LinkedHashMap<>();
@@ -510,121 +512,135 @@ public class GameSpectator extends Application {
      * @param message The message from the server
      */
     private void processServerMessage(String message) {
-        if (message.startsWith("error:")) {
-            String errorMsg = message.substring(6);
-            if (errorMsg.equals("server.inProgressError")) {
-                showAlert(Alert.AlertType.ERROR, translations.getString("server.inProgressError"));
-            } else {
-                showAlert(Alert.AlertType.ERROR, translations.getString(errorMsg));
+        Message parsed = Message.parse(message);
+        switch (parsed.opcode()) {
+            case ERROR -> {
+                String errorMsg = parsed.text();
+                if (errorMsg.equals("server.inProgressError")) {
+                    showAlert(Alert.AlertType.ERROR,
+                        translations.getString("server.inProgressError"));
+                } else {
+                    showAlert(Alert.AlertType.ERROR, translations.getString(errorMsg));
+                }
             }
-            return;
-        }
-        if (message.startsWith("timer:")) {
-            String[] parts = message.split(":");
-            if (parts.length == 3) {
-                String code = parts[1];
-                String msStr = parts[2];
-                if (lobbyCode != null && lobbyCode.equals(code)) {
-                    try {
-                        long ms = Long.parseLong(msStr);
-                        Platform.runLater(() -> {
-                            timer.reset(ms);
-                            time = timer.toString();
-                            timeText.setText(time);
-                        });
-                    } catch (NumberFormatException e) {
-                        logger.error("Invalid timer value: {}", msStr);
+            case TIMER -> {
+                String[] parts = message.split(":");
+                if (parts.length == 3) {
+                    String code = parts[1];
+                    String msStr = parts[2];
+                    if (lobbyCode != null && lobbyCode.equals(code)) {
+                        try {
+                            long ms = Long.parseLong(msStr);
+                            Platform.runLater(() -> {
+                                timer.reset(ms);
+                                time = timer.toString();
+                                timeText.setText(time);
+                            });
+                        } catch (NumberFormatException e) {
+                            logger.error("Invalid timer value: {}", msStr);
+                        }
                     }
                 }
             }
-            return;
-        }
-        if (message.startsWith("getlobbyplayers:")) {
-            String playersData = message.substring("getlobbyplayers:".length());
-            if (!playersData.isEmpty()) {
-                String[] playerNames = playersData.split(",");
-                Set<String> currentPlayers = Set.of(playerNames);
-                Set<String> playersToRemove = Set.copyOf(otherPlayers.keySet());
-                playersToRemove.removeAll(currentPlayers);
-                for (String nameToRemove : playersToRemove) {
-                    removeRemotePlayer(nameToRemove);
-                }
-                for (String name : playerNames) {
-                    if (!otherPlayers.containsKey(name)) {
-                        createVisualForRemotePlayer(name, 100, 100);
+            case GET_LOBBY_PLAYERS -> {
+                String playersData = parsed.text();
+                if (!playersData.isEmpty()) {
+                    String[] playerNames = playersData.split(",");
+                    Set<String> currentPlayers = Set.of(playerNames);
+                    Set<String> playersToRemove = Set.copyOf(otherPlayers.keySet());
+                    playersToRemove.removeAll(currentPlayers);
+                    for (String nameToRemove : playersToRemove) {
+                        removeRemotePlayer(nameToRemove);
+                    }
+                    for (String name : playerNames) {
+                        if (!otherPlayers.containsKey(name)) {
+                            createVisualForRemotePlayer(name, 100, 100);
+                        }
                     }
                 }
             }
-        } else if (message.startsWith("catch:")) {
-            String caughtPlayerName = message.substring("catch:".length());
-            caughtBanner.showAnimation(caughtPlayerName + " was caught!", 2);
-        } else if (message.startsWith("revive:")) {
-            String revivedPlayerName = message.substring("revive:".length());
-            reviveBanner.showAnimation(revivedPlayerName + " was freed!", 2);
-        } else if (message.startsWith("player_left:")) {
-            String leftPlayer = message.substring("player_left:".length());
-            removeRemotePlayer(leftPlayer);
-        } else if (message.startsWith("terminal:")) {
-            String[] parts = message.split(":");
-            if (parts.length == 2) {
-                activateTerminal(Integer.parseInt(parts[1]));
+            case CATCH -> {
+                String caughtPlayerName = parsed.text();
+                caughtBanner.showAnimation(caughtPlayerName + " was caught!", 2);
             }
-        } else if (message.startsWith("activateStation:")) {
-            String[] parts = message.split(":");
-            if (parts.length == 2) {
-                activateStation(Integer.parseInt(parts[1]));
+            case REVIVE -> {
+                String revivedPlayerName = parsed.text();
+                reviveBanner.showAnimation(revivedPlayerName + " was freed!", 2);
             }
-        } else if (message.startsWith("role:")) {
-            String[] parts = message.split(":");
-            if (parts.length == 3) {
-                String playerName = parts[1];
-                try {
-                    Role role = Role.valueOf(parts[2]);
-                    Platform.runLater(() -> {
-                        Player other = otherPlayers.get(playerName);
-                        if (other != null) {
-                            other.setRole(role);
-                        } else {
-                            pendingRoles.put(playerName, role);
-                        }
-                    });
-                } catch (IllegalArgumentException e) {
-                    logger.error("Invalid role value in message: {}", message);
+            case PLAYER_LEFT -> {
+                String leftPlayer = parsed.text();
+                removeRemotePlayer(leftPlayer);
+            }
+            case TERMINAL -> {
+                String[] parts = message.split(":");
+                if (parts.length == 2) {
+                    activateTerminal(Integer.parseInt(parts[1]));
                 }
             }
-        } else if (message.startsWith("roles:")) {
-            String rolesData = message.substring("roles:".length());
-            if (!rolesData.isEmpty()) {
-                String[] roleEntries = rolesData.split(",");
-                for (String entry : roleEntries) {
-                    String[] parts = entry.split("=");
-                    if (parts.length == 2) {
-                        String playerName = parts[0];
-                        try {
-                            Role role = Role.valueOf(parts[1]);
-                            Platform.runLater(() -> {
-                                Player other = otherPlayers.get(playerName);
-                                if (other != null) {
-                                    other.setRole(role);
-                                } else {
-                                    pendingRoles.put(playerName, role);
-                                }
-                            });
-                        } catch (IllegalArgumentException e) {
-                            logger.error("Invalid role value in roles message entry: {}", entry);
+            case ACTIVATE_STATION -> {
+                String[] parts = message.split(":");
+                if (parts.length == 2) {
+                    activateStation(Integer.parseInt(parts[1]));
+                }
+            }
+            case ROLE -> {
+                String[] parts = message.split(":");
+                if (parts.length == 3) {
+                    String playerName = parts[1];
+                    try {
+                        Role role = Role.valueOf(parts[2]);
+                        Platform.runLater(() -> {
+                            Player other = otherPlayers.get(playerName);
+                            if (other != null) {
+                                other.setRole(role);
+                            } else {
+                                pendingRoles.put(playerName, role);
+                            }
+                        });
+                    } catch (IllegalArgumentException e) {
+                        logger.error("Invalid role value in message: {}", message);
+                    }
+                }
+            }
+            case ROLES -> {
+                String rolesData = parsed.text();
+                if (!rolesData.isEmpty()) {
+                    String[] roleEntries = rolesData.split(",");
+                    for (String entry : roleEntries) {
+                        String[] parts = entry.split("=");
+                        if (parts.length == 2) {
+                            String playerName = parts[0];
+                            try {
+                                Role role = Role.valueOf(parts[1]);
+                                Platform.runLater(() -> {
+                                    Player other = otherPlayers.get(playerName);
+                                    if (other != null) {
+                                        other.setRole(role);
+                                    } else {
+                                        pendingRoles.put(playerName, role);
+                                    }
+                                });
+                            } catch (IllegalArgumentException e) {
+                                logger.error("Invalid role value in roles message entry: {}", entry);
+                            }
                         }
                     }
                 }
             }
-        } else if (message.equals("door")) {
-            Platform.runLater(this::handleDoorsOpen);
-        } else if (message.startsWith("gameover:")) {
-            String[] parts = message.split(":");
-            if (parts.length == 2) {
-                endGame(parts[1].equals("true"));
+            case DOOR -> {
+                if (!parsed.hasPayload()) {
+                    Platform.runLater(this::handleDoorsOpen);
+                }
+            }
+            case GAME_OVER -> {
+                String[] parts = message.split(":");
+                if (parts.length == 2) {
+                    endGame(parts[1].equals("true"));
+                }
+            }
+            default -> {
+                // other messages, e.g. ready_status, are not shown to spectators
             }
-        } else if (message.startsWith("ready_status:")) {
-            return;
         }
     }
 
@@ -724,10 +740,7 @@ public class GameSpectator extends Application {
         Thread updateProcessor = new Thread(() -> {
             while (gameStarted && serverHandler.isConnected()) {
                 try {
-                    String update = serverHandler.getLastUpdate();
-                    if (update != null && !update.isEmpty()) {
-                        processUdpUpdate(update);
-                    }
+                    serverHandler.drainPositions(positionListener);
                     Thread.sleep(2);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -742,31 +755,17 @@ public class GameSpectator extends Application {
     }
 
     /**
-     * Processes a single UDP update from the server (e.g., player position).
+     * Processes a position update of a player received from the server.
      *
-     * @param update The UDP update message
+     * @param playerName The nickname of the player
+     * @param x          x-coordinate
+     * @param y          y-coordinate
      */
-    private void processUdpUpdate(String update) {
-        if (update.startsWith("player_position:")) {
-            String[] parts = update.split(":");
-            if (parts.length != 4) {
-                logger.error("Invalid position update: {}", update);
-                return;
-            }
-            String playerName = parts[1];
-            try {
-                int x = Integer.parseInt(parts[2]);
-                int y = Integer.parseInt(parts[3]);
-                if (otherPlayers.containsKey(playerName)) {
-                    updateRemotePlayerPosition(playerName, x, y);
-                } else {
-                    createVisualForRemotePlayer(playerName, x, y);
-                }
-            } catch (NumberFormatException e) {
-                logger.error("Invalid coordinates in update: {}", update, e);
-            }
-        } else if (update.equals("door")) {
-            Platform.runLater(this::handleDoorsOpen);
+    private void processPositionUpdate(String playerName, int x, int y) {
+        if (otherPlayers.containsKey(playerName)) {
+            updateRemotePlayerPosition(playerName, x, y);
+        } else {
+            createVisualForRemotePlayer(playerName, x, y);
         }
     }
 
@@ -1,6 +1,7 @@
 package igoat.client;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import javafx.scene.image.Image;
@@ -26,12 +27,20 @@ public class Map {
 
     private static final int MAP_WIDTH = 1500;
     private static final int MAP_HEIGHT = 1600;
+    // some walls reach above the map, the grid covers them too
+    private static final int GRID_TOP = -64;
+    private static final int GRID_CELL_SIZE = 64;
+    private static final CollisionRaster[] NO_RASTERS = new CollisionRaster[0];
 
     private final List<Wall> collisionWalls;
     private final List<Terminal> terminalList;
     private final List<Wall> doorCollisions;
     private final List<Wall> windowCollisions;
     private final List<ImageView> decorItems;
+    private final WallGrid wallGrid;
+    private final WallGrid windowGrid;
+    // built on first use per player size, replaced as a whole when the walls change
+    private volatile CollisionRaster[] rasters = NO_RASTERS;
 
     private List<Rectangle> visualWalls;
     private List<Rectangle> doorVisuals;
@@ -53,6 +62,8 @@ public class Map {
         windowCollisions = new ArrayList<>();
         decorItems = new ArrayList<>();
         IgoatStationList = new ArrayList<>();
+        wallGrid = new WallGrid(0, GRID_TOP, MAP_WIDTH, MAP_HEIGHT - GRID_TOP, GRID_CELL_SIZE);
+        windowGrid = new WallGrid(0, GRID_TOP, MAP_WIDTH, MAP_HEIGHT - GRID_TOP, GRID_CELL_SIZE);
 
         if (!noVisuals) {
             visualWalls = new ArrayList<>();
@@ -209,8 +220,7 @@ public class Map {
             visualWalls.add(visualWall);
         }
 
-        Wall collisionWall = new Wall(x, y, width, height);
-        collisionWalls.add(collisionWall);
+        addCollisionWall(new Wall(x, y, width, height));
     }
 
     private void createDecor() {
@@ -231,8 +241,7 @@ public class Map {
         }
         terminalList.add(terminal);
 
-        Wall collisionWall = new Wall(x, y, width, height);
-        collisionWalls.add(collisionWall);
+        addCollisionWall(new Wall(x, y, width, height));
     }
 
     private void addIgoatStation(int x, int y, int width, int height, int id, String imagePath) {
@@ -246,8 +255,7 @@ public class Map {
             IgoatStationList.add(station);
         }
 
-        Wall collisionWall = new Wall(x, y, width, height);
-        collisionWalls.add(collisionWall);
+        addCollisionWall(new Wall(x, y, width, height));
     }
 
     /**
@@ -266,7 +274,7 @@ public class Map {
         }
 
         Wall collisionWall = new Wall(x, y, width, height);
-        collisionWalls.add(collisionWall);
+        addCollisionWall(collisionWall);
         doorCollisions.add(collisionWall);
     }
 
@@ -288,14 +296,36 @@ public class Map {
 
         Wall collisionWall = new Wall(x, y, width, height);
         windowCollisions.add(collisionWall);
+        windowGrid.add(collisionWall);
+        rasters = NO_RASTERS;
+    }
+
+    /**
+     * Adds a wall to the collision list and the grid.
+     */
+    private void addCollisionWall(Wall wall) {
+        collisionWalls.add(wall);
+        wallGrid.add(wall);
+        rasters = NO_RASTERS;
     }
 
     /**
      * Opens the doors by making them visually slightly transparent and removing their collision.
      */
     public void openDoors() {
-        collisionWalls.removeAll(doorCollisions);
-        doorCollisions.clear();
+        synchronized (this) {
+            collisionWalls.removeAll(doorCollisions);
+            for (Wall door : doorCollisions) {
+                wallGrid.remove(door);
+            }
+            doorCollisions.clear();
+
+            CollisionRaster[] rebuilt = new CollisionRaster[rasters.length];
+            for (int i = 0; i < rebuilt.length; i++) {
+                rebuilt[i] = rasters[i].rebuild(collisionWalls, windowCollisions);
+            }
+            rasters = rebuilt;
+        }
 
         if (!noVisuals) {
             for (Rectangle doorVisual : doorVisuals) {
@@ -343,6 +373,84 @@ public class Map {
         return windowCollisions;
     }
 
+    /**
+     * Checks whether a rectangle, e.g. a player at a new position, collides with a wall. Only the
+     * walls near the rectangle are tested.
+     *
+     * @param x             x-coordinate of the rectangle
+     * @param y             y-coordinate of the rectangle
+     * @param width         Width of the rectangle
+     * @param height        Height of the rectangle
+     * @param ignoreWindows Whether windows are ignored, which is the case for goats
+     * @return true if the rectangle overlaps a wall
+     */
+    public boolean collides(double x, double y, double width, double height,
+        boolean ignoreWindows) {
+        return wallGrid.intersects(x, y, width, height)
+            || (!ignoreWindows && windowGrid.intersects(x, y, width, height));
+    }
+
+    /**
+     * Checks whether a player at a position collides with a wall, like
+     * {@link #collides(double, double, double, double, boolean)}. Inside the map this is a single
+     * lookup in a raster that is computed once per player size.
+     *
+     * @param x             x-coordinate of the player
+     * @param y             y-coordinate of the player
+     * @param width         Width of the player
+     * @param height        Height of the player
+     * @param ignoreWindows Whether windows are ignored, which is the case for goats
+     * @return true if the player overlaps a wall
+     */
+    public boolean collidesAt(int x, int y, int width, int height, boolean ignoreWindows) {
+        CollisionRaster raster = getRaster(width, height, ignoreWindows);
+        if (raster.covers(x, y)) {
+            return raster.isBlocked(x, y);
+        }
+        return collides(x, y, width, height, ignoreWindows);
+    }
+
+    private CollisionRaster getRaster(int width, int height, boolean ignoreWindows) {
+        for (CollisionRaster raster : rasters) {
+            if (raster.matches(width, height, ignoreWindows)) {
+                return raster;
+            }
+        }
+        synchronized (this) {
+            CollisionRaster[] current = rasters;
+            for (CollisionRaster raster : current) {
+                if (raster.matches(width, height, ignoreWindows)) {
+                    return raster;
+                }
+            }
+            CollisionRaster raster = new CollisionRaster(0, GRID_TOP, MAP_WIDTH,
+                MAP_HEIGHT - GRID_TOP, width, height, ignoreWindows, collisionWalls,
+                windowCollisions);
+            CollisionRaster[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = raster;
+            rasters = grown;
+            return raster;
+        }
+    }
+
+    /**
+     * Collects the collision walls that overlap a rectangle.
+     *
+     * @param x              x-coordinate of the rectangle
+     * @param y              y-coordinate of the rectangle
+     * @param width          Width of the rectangle
+     * @param height         Height of the rectangle
+     * @param includeWindows Whether windows are collected too
+     * @param result         The list the walls are added to
+     */
+    public void queryWalls(double x, double y, double width, double height,
+        boolean includeWindows, List<Wall> result) {
+        wallGrid.query(x, y, width, height, result);
+        if (includeWindows) {
+            windowGrid.query(x, y, width, height, result);
+        }
+    }
+
     /**
      * Gets the width of the map.
      *
@@ -367,6 +475,8 @@ public class Map {
     public void clearWalls() {
         visualWalls.clear();
         collisionWalls.clear();
+        wallGrid.clear();
+        rasters = NO_RASTERS;
         terminalList.clear();
         IgoatStationList.clear();
     }
@@ -390,7 +500,7 @@ public class Map {
 
         Wall wall = decor.createWallIfNeeded();
         if (wall != null) {
-            collisionWalls.add(wall);
+            addCollisionWall(wall);
         }
     }
 
@@ -3,6 +3,7 @@ package igoat.client;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -12,9 +13,18 @@ public class MockUDPSocket implements UDPSocket {
 
     public final List<DatagramPacket> sentPackets = new ArrayList<>();
 
+    /**
+     * Records a copy of the packet, as the sender may reuse the packet and its buffer.
+     */
     @Override
     public void send(DatagramPacket packet) throws IOException {
-        sentPackets.add(packet);
+        DatagramPacket copy = new DatagramPacket(Arrays.copyOfRange(packet.getData(),
+            packet.getOffset(), packet.getOffset() + packet.getLength()), packet.getLength());
+        if (packet.getAddress() != null) {
+            copy.setAddress(packet.getAddress());
+            copy.setPort(packet.getPort());
+        }
+        sentPackets.add(copy);
     }
 
     @Override
@@ -0,0 +1,121 @@
+package igoat.client;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Latest received position of every player, handed from the UDP receiver to the game without
+ * locks and without allocating.
+ * <p>
+ * Every player id gets a slot that holds both coordinates packed into one int, so they are always
+ * read together. A changed slot is announced once through a single producer single consumer ring
+ * of slot numbers; further changes before the consumer gets to it only overwrite the slot. The
+ * consumer therefore always sees the newest position of every player that moved and nothing is
+ * lost, no matter how many snapshots arrive between two polls. As every slot is in the ring at
+ * most once, the ring can't overflow.
+ * </p>
+ * <p>
+ * Slots are kept across games. The server reuses the ids of players that left once it runs out of
+ * ids, then the slot of the old player is taken over and its nickname replaced. {@link #put} must
+ * not be called concurrently, {@link ServerHandler} calls it while holding its world lock.
+ * {@link #drain} and {@link #poll} must only be called by one thread at a time.
+ * </p>
+ */
+final class PositionTable {
+
+    /**
+     * Number of slots, more than the players of a snapshot
+     */
+    static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    private final AtomicIntegerArray positions = new AtomicIntegerArray(SLOTS);
+    private final String[] nicknames = new String[SLOTS];
+    // 1 while the slot is in the ring
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(SLOTS);
+    private final int[] ring = new int[SLOTS];
+    private volatile long head = 0;
+    private volatile long tail = 0;
+
+    // owned by the producer
+    private final int[] ids = new int[SLOTS];
+    private int used = 0;
+    private int replaced = 0;
+
+    /**
+     * Stores the position of a player and announces it to the consumer unless it is already
+     * announced.
+     *
+     * @param id       The id of the player
+     * @param nickname The nickname of the player
+     * @param x        x-coordinate
+     * @param y        y-coordinate
+     */
+    void put(int id, String nickname, int x, int y) {
+        int slot = slotOf(id, nickname);
+        positions.set(slot, (x << 16) | (y & 0xFFFF));
+        if (pending.get(slot) == 0) {
+            pending.set(slot, 1);
+            long t = tail;
+            ring[(int) t & MASK] = slot;
+            tail = t + 1;
+        }
+    }
+
+    /**
+     * Hands the newest position of every player that changed since the last call to the
+     * listener.
+     *
+     * @param listener Receives the positions on the calling thread
+     * @return The number of positions handed to the listener
+     */
+    int drain(ServerHandler.PositionListener listener) {
+        int count = 0;
+        while (poll(listener)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Hands the next changed position to the listener.
+     *
+     * @param listener Receives the position on the calling thread
+     * @return false if no position changed
+     */
+    boolean poll(ServerHandler.PositionListener listener) {
+        long h = head;
+        if (h == tail) {
+            return false;
+        }
+        int slot = ring[(int) h & MASK];
+        head = h + 1;
+        // cleared before reading, so a position stored meanwhile is announced again
+        pending.set(slot, 0);
+        int position = positions.get(slot);
+        listener.onPosition(nicknames[slot], position >> 16, (short) position);
+        return true;
+    }
+
+    private int slotOf(int id, String nickname) {
+        // a game has a handful of players, scanning them is faster than hashing
+        for (int slot = 0; slot < used; slot++) {
+            if (ids[slot] == id) {
+                if (!nickname.equals(nicknames[slot])) {
+                    nicknames[slot] = nickname;
+                }
+                return slot;
+            }
+        }
+        int slot;
+        if (used < SLOTS) {
+            slot = used++;
+        } else {
+            // after this many players the oldest one gives up its slot
+            slot = replaced;
+            replaced = (replaced + 1) & MASK;
+        }
+        ids[slot] = id;
+        nicknames[slot] = nickname;
+        return slot;
+    }
+}
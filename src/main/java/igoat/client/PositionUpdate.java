@@ -0,0 +1,12 @@
+package igoat.client;
+
+/**
+ * A position of another player received from the server.
+ *
+ * @param nickname The nickname of the player
+ * @param x        x-coordinate
+ * @param y        y-coordinate
+ */
+public record PositionUpdate(String nickname, int x, int y) {
+
+}
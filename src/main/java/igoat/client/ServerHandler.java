@@ -1,7 +1,18 @@
 package igoat.client;
 
+import igoat.UpdatePacket;
+import igoat.WorldSnapshot;
+import igoat.protocol.Frames;
+import igoat.protocol.Message;
+import igoat.protocol.Opcode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.DatagramPacket;
@@ -9,14 +20,17 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,11 +45,23 @@ public class ServerHandler {
     private static final int SERVER_UDP_LISTENING_PORT = 61001;
     private static final String UDP_REGISTRATION_PREFIX = "register_udp:";
     private static final String NICKNAME_CONFIRM_PREFIX = "confirm:";
+    private static final String PLAYER_ID_PREFIX = "udp_id:";
+    private static final String PLAYER_IDS_PREFIX = "playerids:";
     private static final int MAX_MSG_LENGTH = 200;
+    private static final int SNAPSHOT_HISTORY = 32;
+    /**
+     * Whether binary frames are requested from the server instead of the text protocol
+     */
+    private static final boolean FRAMING = Boolean.getBoolean("igoat.framing");
 
     protected Socket msgSocket;
     PrintWriter msgWriter;
     BufferedReader msgReader;
+    // only set if the server agreed to binary frames
+    private DataInputStream frameReader;
+    private DataOutputStream frameWriter;
+    // messages received while the protocol was negotiated
+    private final Queue<String> earlyMessages = new ConcurrentLinkedQueue<>();
 
     UDPSocket updateSocket; // abstraction for testability
 
@@ -45,15 +71,34 @@ public class ServerHandler {
 
     boolean connected = false;
     final BlockingQueue<String> messageBuffer = new LinkedBlockingQueue<>();
-    String lastUpdate = "";
     String confirmedNickname = null;
+    final PositionTable positions = new PositionTable();
+    final Map<Integer, String> playerNames = new ConcurrentHashMap<>();
+    volatile int playerId = -1;
+    private final ByteBuffer positionPacket = ByteBuffer.allocate(
+        UpdatePacket.HEADER_SIZE + UpdatePacket.ENTRY_SIZE);
+    // created on the first send, guarded by this
+    private DatagramPacket positionDatagram;
+
+    // received snapshots, guarded by worldLock
+    private final Object worldLock = new Object();
+    private final WorldSnapshot[] snapshots = new WorldSnapshot[SNAPSHOT_HISTORY];
+    private final WorldSnapshot emptySnapshot = new WorldSnapshot(0);
+    private final WorldSnapshot appliedSnapshot = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+    // game events that are currently in effect, so events received via TCP and UDP are only
+    // delivered once
+    private final Set<String> activeEvents = new HashSet<>();
+    private final ByteBuffer ackPacket = ByteBuffer.allocate(UpdatePacket.ACK_SIZE);
+    // created on the first ack, guarded by ackPacket
+    private DatagramPacket ackDatagram;
 
     private final String host;
+    private volatile InetAddress serverAddress;
     private final int port;
     private final int TIMEOUT = 5000;
 
     private final String username;
-    private long pingTimer;
+    private volatile long pingTimer;
 
     /**
      * Creates a new ServerHandler instance
@@ -68,15 +113,23 @@ public class ServerHandler {
         this.host = host;
         this.port = port;
         this.username = username;
+        initSnapshots();
     }
 
     public ServerHandler(String host, int port, String username) {
         this.host = host;
         this.port = port;
         this.username = username;
+        initSnapshots();
         reconnect();
     }
 
+    private void initSnapshots() {
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+        }
+    }
+
     /**
      * Checks whether the server is still connected
      *
@@ -98,7 +151,15 @@ public class ServerHandler {
         }
 
         try {
-            msgWriter.println(msg);
+            DataOutputStream frames = frameWriter;
+            if (frames != null) {
+                synchronized (frames) {
+                    frames.write(Frames.encode(msg));
+                    frames.flush();
+                }
+            } else {
+                msgWriter.println(msg);
+            }
         } catch (Exception e) {
             logger.error("Couldn't send message", e);
         }
@@ -127,9 +188,8 @@ public class ServerHandler {
             //logger.info("Sending {} to {}:{}", msg, host, SERVER_UDP_LISTENING_PORT)
             //logger.info("Using local port: ", updateSocket.getLocalPort());
             byte[] buffer = msg.getBytes();
-            InetAddress targetAddress = InetAddress.getByName(host);
-            DatagramPacket packet =
-                new DatagramPacket(buffer, buffer.length, targetAddress, SERVER_UDP_LISTENING_PORT);
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress(),
+                SERVER_UDP_LISTENING_PORT);
             updateSocket.send(packet);
             //logger.info("Packet sent - {} bytes", buffer.length);
         } catch (Exception e) {
@@ -138,14 +198,91 @@ public class ServerHandler {
     }
 
     /**
-     * Retrieves the latest update sent via UDP
+     * Sends the position of the local player to the server as a binary UDP packet. Does nothing
+     * until the server has assigned a player ID.
+     *
+     * @param lobbyCode The code of the current lobby
+     * @param x         x-coordinate of the player
+     * @param y         y-coordinate of the player
+     */
+    public synchronized void sendPosition(int lobbyCode, int x, int y) {
+        if (updateSocket == null || !connected) {
+            logger.error("Cannot send - socket is null or not connected");
+            return;
+        }
+        if (playerId == -1) {
+            logger.error("Cannot send position - no player id assigned");
+            return;
+        }
+
+        UpdatePacket.writeHeader(positionPacket, UpdatePacket.TYPE_POSITION,
+            UpdatePacket.toWireLobbyCode(lobbyCode));
+        UpdatePacket.writeEntry(positionPacket, playerId, x, y);
+        try {
+            if (positionDatagram == null) {
+                positionDatagram = new DatagramPacket(positionPacket.array(), 0, serverAddress(),
+                    SERVER_UDP_LISTENING_PORT);
+            }
+            positionDatagram.setLength(positionPacket.position());
+            updateSocket.send(positionDatagram);
+        } catch (Exception e) {
+            logger.error("Couldn't send position", e);
+        }
+    }
+
+    /**
+     * Gets the address of the server, which is only looked up for the first packet.
+     *
+     * @return The address of the server
+     * @throws UnknownHostException if the host can't be resolved
+     */
+    private InetAddress serverAddress() throws UnknownHostException {
+        InetAddress address = serverAddress;
+        if (address == null) {
+            address = InetAddress.getByName(host);
+            serverAddress = address;
+        }
+        return address;
+    }
+
+    /**
+     * Receives positions of players without allocating.
+     */
+    @FunctionalInterface
+    public interface PositionListener {
+
+        /**
+         * Called with the newest position of a player.
+         *
+         * @param nickname The nickname of the player
+         * @param x        x-coordinate
+         * @param y        y-coordinate
+         */
+        void onPosition(String nickname, int x, int y);
+    }
+
+    /**
+     * Hands the newest position of every player that moved since the last call to the listener.
+     * Positions received in between are combined, the newest one of each player is never lost.
+     * Must only be called by one thread at a time.
+     *
+     * @param listener Receives the positions on the calling thread
+     * @return The number of positions handed to the listener
+     */
+    public int drainPositions(PositionListener listener) {
+        return positions.drain(listener);
+    }
+
+    /**
+     * Gets the newest position of the next player that moved, like
+     * {@link #drainPositions(PositionListener)} but one at a time.
      *
-     * @return The latest message from the server
+     * @return The position update or null if there was none
      */
-    public String getLastUpdate() {
-        String update = lastUpdate;
-        lastUpdate = "";
-        return update;
+    public PositionUpdate getPosition() {
+        PositionUpdate[] update = new PositionUpdate[1];
+        positions.poll((nickname, x, y) -> update[0] = new PositionUpdate(nickname, x, y));
+        return update[0];
     }
 
     /**
@@ -156,6 +293,9 @@ public class ServerHandler {
         try {
             msgSocket = new Socket(host, port);
             msgWriter = new PrintWriter(msgSocket.getOutputStream(), true);
+            if (FRAMING) {
+                negotiateFrames();
+            }
             msgReader = new BufferedReader(new InputStreamReader(msgSocket.getInputStream()));
 
             if (username != null) {
@@ -164,6 +304,8 @@ public class ServerHandler {
 
             try {
                 updateSocket = new RealUDPSocket(new DatagramSocket());
+                // set before the threads start, the ping check may run before the receiver
+                pingTimer = System.currentTimeMillis();
                 connected = true;
 
                 messageReceiver = new Thread(this::receiveMSG);
@@ -182,11 +324,90 @@ public class ServerHandler {
         }
     }
 
+    /**
+     * Asks the server for binary frames. Reads the reply unbuffered, so nothing that is sent
+     * after it is consumed. The text protocol is kept if the server doesn't support frames.
+     *
+     * @throws IOException if the connection fails
+     */
+    private void negotiateFrames() throws IOException {
+        msgWriter.println("protocol:" + Frames.FRAMED_VERSION);
+        InputStream in = msgSocket.getInputStream();
+        int timeout = msgSocket.getSoTimeout();
+        msgSocket.setSoTimeout(TIMEOUT);
+        try {
+            String line;
+            while ((line = readRawLine(in)) != null) {
+                Message reply = Message.parse(line);
+                switch (reply.opcode()) {
+                    case PROTOCOL:
+                        if (String.valueOf(Frames.FRAMED_VERSION).equals(reply.text().trim())) {
+                            frameReader = new DataInputStream(new BufferedInputStream(in));
+                            frameWriter = new DataOutputStream(
+                                new BufferedOutputStream(msgSocket.getOutputStream()));
+                            logger.info("Using binary frames");
+                        }
+                        return;
+                    case ERROR:
+                        // older servers don't know the command
+                        return;
+                    case PING:
+                        // the server may already read frames, so the pong has to wait
+                        break;
+                    default:
+                        earlyMessages.add(line);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            logger.warn("No protocol reply from server, using text protocol");
+        } finally {
+            msgSocket.setSoTimeout(timeout);
+        }
+    }
+
+    private static String readRawLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return null;
+            }
+            line.write(b);
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Reads the next message from the server, as a frame or a line.
+     *
+     * @return The message or null if the connection was closed
+     * @throws IOException if reading fails
+     */
+    private String readMessage() throws IOException {
+        String early = earlyMessages.poll();
+        if (early != null) {
+            return early;
+        }
+        DataInputStream frames = frameReader;
+        return frames != null ? Frames.read(frames) : msgReader.readLine();
+    }
+
     /**
      * Closes the socket and receiver thread
      */
     public void close() {
         connected = false;
+        // close msgSocket first, the messageReceiver thread is blocked reading from it
+        if (msgSocket != null) {
+            try {
+                msgSocket.close();
+                msgWriter.close();
+                msgReader.close();
+            } catch (Exception e) {
+                logger.error("Couldn't close msgSocket", e);
+            }
+        }
         // close messageReceiver thread
         if (messageReceiver != null) {
             try {
@@ -212,16 +433,9 @@ public class ServerHandler {
             }
         }
 
-        // close msgSocket
-        if (msgSocket != null) {
-            try {
-                msgSocket.close();
-                msgWriter.close();
-                msgReader.close();
-            } catch (Exception e) {
-                logger.error("Couldn't close msgSocket", e);
-            }
-        }
+        frameReader = null;
+        frameWriter = null;
+        earlyMessages.clear();
         // close updateSocket
         if (updateSocket != null) {
             updateSocket.close();
@@ -234,6 +448,15 @@ public class ServerHandler {
                 logger.warn("Connection timed out");
                 messageBuffer.add("Connection timed out");
                 connected = false;
+                // ends the messageReceiver thread, which may still wait for a message
+                Socket socket = msgSocket;
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        logger.error("Couldn't close msgSocket", e);
+                    }
+                }
                 break;
             } else {
                 try {
@@ -248,30 +471,30 @@ public class ServerHandler {
     /**
      * Continuously checks for a received TCP message from the server and adds it to the message
      * buffer. If the message was a ping, it sends a response instead.
+     * <p>
+     * The receiver thread blocks on the socket for the whole connection and handles each message
+     * as soon as it is read. It ends when the server closes the connection or when the socket is
+     * closed by {@link #close()} or the ping check.
+     * </p>
      */
     void receiveMSG() {
         pingTimer = System.currentTimeMillis();
 
         while (connected) {
-            String msg = null;
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            Future<String> future = executor.submit(() -> msgReader.readLine());
-
+            String msg;
             try {
-                msg = future.get(3, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-                future.cancel(true);
-                logger.warn("Timeout reading from Server");
-            } catch (ExecutionException | InterruptedException e) {
-                logger.error("Error reading from Server", e);
-                logger.warn("Server closed connection");
-                connected = false;
-                break;
+                msg = readMessage();
+            } catch (IOException e) {
+                if (connected) {
+                    logger.error("Error reading from Server", e);
+                }
+                msg = null;
             }
-            executor.shutdownNow();
 
             if (msg == null) {
-                logger.warn("Server closed connection");
+                if (connected) {
+                    logger.warn("Server closed connection");
+                }
                 connected = false;
                 break;
             }
@@ -279,23 +502,214 @@ public class ServerHandler {
             if ("ping".equals(msg)) {
                 sendMessage("pong");
                 pingTimer = System.currentTimeMillis();
+            } else if (msg.startsWith(PLAYER_ID_PREFIX)) {
+                try {
+                    playerId = Integer.parseInt(msg.substring(PLAYER_ID_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    logger.error("Invalid player id: {}", msg);
+                }
+            } else if (msg.startsWith(PLAYER_IDS_PREFIX)) {
+                updatePlayerIds(msg.substring(PLAYER_IDS_PREFIX.length()));
+                resetWorld();
             } else if (msg.startsWith(NICKNAME_CONFIRM_PREFIX)) {
                 this.confirmedNickname = msg.substring(NICKNAME_CONFIRM_PREFIX.length());
                 sendUdpRegistrationPacket();
                 messageBuffer.add(msg);
-            } else if (!msg.isEmpty()) {
+            } else if (msg.startsWith("game_started")) {
+                resetWorld();
                 messageBuffer.add(msg);
+            } else if (!msg.isEmpty()) {
+                synchronized (worldLock) {
+                    deliverEvent(msg);
+                }
             }
         }
         connected = false;
     }
 
     /**
-     * Continuously checks for received UDP data from the server. The received message is written to
-     * lastUpdate.
+     * Updates the mapping from player IDs to nicknames. Format: nickname=id,nickname=id,...
+     *
+     * @param ids The list of nicknames and IDs
+     */
+    private void updatePlayerIds(String ids) {
+        for (String entry : ids.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                playerNames.put(Integer.parseInt(parts[1]), parts[0]);
+            } catch (NumberFormatException e) {
+                logger.error("Invalid player id entry: {}", entry);
+            }
+        }
+    }
+
+    /**
+     * Forgets the applied game state and the active events. Called when a game starts or is
+     * joined, so the next snapshot is delivered completely.
+     */
+    private void resetWorld() {
+        synchronized (worldLock) {
+            appliedSnapshot.reset(0);
+            activeEvents.clear();
+        }
+    }
+
+    /**
+     * Applies a snapshot received via UDP and acknowledges it. Positions that changed since the
+     * last applied snapshot are stored in the position table, the position of the local player
+     * only if the server corrected it. Changes of the caught state, the terminals, the stations
+     * and the doors are added to the message buffer as the same messages the server sends via TCP.
+     * <p>
+     * Snapshots older than the last applied one and snapshots whose baseline is no longer known
+     * are dropped, the server falls back to a full snapshot if no newer acknowledgement arrives.
+     * </p>
+     *
+     * @param packet The received packet
+     */
+    void receiveSnapshot(ByteBuffer packet) {
+        if (!UpdatePacket.isValid(packet)
+            || UpdatePacket.getType(packet) != UpdatePacket.TYPE_SNAPSHOT) {
+            logger.warn("Invalid snapshot packet");
+            return;
+        }
+        int sequence = UpdatePacket.getSequence(packet);
+        int baselineSequence = UpdatePacket.getBaseline(packet);
+
+        synchronized (worldLock) {
+            if (sequence <= appliedSnapshot.getSequence()) {
+                return;
+            }
+            WorldSnapshot baseline = emptySnapshot;
+            if (baselineSequence != 0) {
+                baseline = snapshots[Math.floorMod(baselineSequence, SNAPSHOT_HISTORY)];
+                if (baseline.getSequence() != baselineSequence
+                    || sequence - baselineSequence >= SNAPSHOT_HISTORY) {
+                    logger.debug("Missing baseline {} for snapshot {}", baselineSequence, sequence);
+                    return;
+                }
+            }
+
+            WorldSnapshot snapshot = snapshots[Math.floorMod(sequence, SNAPSHOT_HISTORY)];
+            snapshot.copyFrom(baseline, sequence);
+            boolean corrected = false;
+            for (int i = 0; i < UpdatePacket.getCount(packet); i++) {
+                int id = UpdatePacket.getPlayerId(packet, i);
+                int state = UpdatePacket.getState(packet, i);
+                if (id == playerId && (state & UpdatePacket.STATE_CORRECTED) != 0) {
+                    corrected = true;
+                }
+                snapshot.set(id, UpdatePacket.getX(packet, i), UpdatePacket.getY(packet, i),
+                    state & UpdatePacket.STATE_CAUGHT);
+            }
+            snapshot.setWorld(UpdatePacket.isDoorOpen(packet), UpdatePacket.getTerminals(packet),
+                UpdatePacket.getStations(packet));
+
+            publishChanges(snapshot, corrected);
+            appliedSnapshot.copyFrom(snapshot, sequence);
+        }
+        sendAck(UpdatePacket.getLobbyCode(packet), sequence);
+    }
+
+    /**
+     * Adds everything that differs between the given snapshot and the last applied one to the
+     * position table and the message buffer.
      */
-    private void receiveUpdate() {
-        byte[] receiveBuffer = new byte[512];
+    private void publishChanges(WorldSnapshot snapshot, boolean ownPositionCorrected) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            String nickname = playerNames.get(snapshot.getId(i));
+            if (nickname == null) {
+                continue;
+            }
+            int previous = appliedSnapshot.indexOf(snapshot.getId(i), i);
+            boolean moved = previous < 0 || appliedSnapshot.getX(previous) != snapshot.getX(i)
+                || appliedSnapshot.getY(previous) != snapshot.getY(i);
+            if (snapshot.getId(i) == playerId ? ownPositionCorrected : moved) {
+                positions.put(snapshot.getId(i), nickname, snapshot.getX(i), snapshot.getY(i));
+            }
+            boolean caught = (snapshot.getState(i) & UpdatePacket.STATE_CAUGHT) != 0;
+            boolean wasCaught = previous >= 0
+                && (appliedSnapshot.getState(previous) & UpdatePacket.STATE_CAUGHT) != 0;
+            if (caught != wasCaught) {
+                deliverEvent((caught ? "catch:" : "revive:") + nickname);
+            }
+        }
+
+        int terminals = snapshot.getTerminals() & ~appliedSnapshot.getTerminals();
+        for (int i = 0; terminals != 0; i++, terminals >>>= 1) {
+            if ((terminals & 1) != 0) {
+                deliverEvent("terminal:" + i);
+            }
+        }
+        int stations = snapshot.getStations() & ~appliedSnapshot.getStations();
+        for (int i = 0; stations != 0; i++, stations >>>= 1) {
+            if ((stations & 1) != 0) {
+                deliverEvent("activateStation:" + i);
+            }
+        }
+        if (snapshot.isDoorOpen() && !appliedSnapshot.isDoorOpen()) {
+            deliverEvent("door");
+        }
+    }
+
+    /**
+     * Adds a message to the message buffer unless it is a game event that is already in effect,
+     * because it was received via the other protocol. Has to be called while holding worldLock.
+     *
+     * @param msg The message
+     */
+    private void deliverEvent(String msg) {
+        boolean deliver;
+        if (msg.startsWith("revive:")) {
+            deliver = activeEvents.remove("catch:" + msg.substring("revive:".length()));
+        } else if (msg.startsWith("catch:") || msg.startsWith("activateStation:")
+            || msg.equals("door") || (msg.startsWith("terminal:") && !msg.equals("terminal:-1"))) {
+            deliver = activeEvents.add(msg);
+        } else {
+            deliver = true;
+        }
+        if (deliver) {
+            messageBuffer.add(msg);
+        }
+    }
+
+    /**
+     * Acknowledges a snapshot, so the server sends the next one as a delta to it.
+     *
+     * @param lobbyCode The lobby code from the snapshot
+     * @param sequence  The sequence of the snapshot
+     */
+    private void sendAck(int lobbyCode, int sequence) {
+        if (updateSocket == null || playerId == -1) {
+            return;
+        }
+        synchronized (ackPacket) {
+            UpdatePacket.writeAck(ackPacket, lobbyCode, playerId, sequence);
+            try {
+                if (ackDatagram == null) {
+                    ackDatagram = new DatagramPacket(ackPacket.array(), 0, serverAddress(),
+                        SERVER_UDP_LISTENING_PORT);
+                }
+                ackDatagram.setLength(ackPacket.position());
+                updateSocket.send(ackDatagram);
+            } catch (Exception e) {
+                logger.error("Couldn't send snapshot ack", e);
+            }
+        }
+    }
+
+    /**
+     * Continuously checks for received UDP data from the server. Binary snapshots are applied with
+     * {@link #receiveSnapshot(ByteBuffer)}, any other message except acknowledgments is added to
+     * the message buffer.
+     */
+    void receiveUpdate() {
+        byte[] receiveBuffer = new byte[Math.max(512, UpdatePacket.MAX_SIZE)];
+        // reused for every datagram, so receiving a snapshot doesn't allocate
+        DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+        ByteBuffer snapshotView = ByteBuffer.wrap(receiveBuffer);
 
         try {
             while (connected) {
@@ -311,14 +725,20 @@ public class ServerHandler {
                     }
                     ds.setSoTimeout(10);
                     try {
-                        DatagramPacket receivePacket = new DatagramPacket(receiveBuffer,
-                            receiveBuffer.length);
+                        receivePacket.setLength(receiveBuffer.length);
                         ds.receive(receivePacket);
+                        if (UpdatePacket.isUpdatePacket(receiveBuffer,
+                            receivePacket.getLength())) {
+                            receiveSnapshot(snapshotView.clear().limit(receivePacket.getLength()));
+                            continue;
+                        }
                         String receivedMsg = new String(receivePacket.getData(), 0,
                             receivePacket.getLength());
                         //logger.info("Received: {} from {}:{}", receivedMsg, receivePacket.getAddress(), receivePacket.getPort());
                         if (!receivedMsg.startsWith("udp_ack:")) {
-                            lastUpdate = receivedMsg;
+                            synchronized (worldLock) {
+                                deliverEvent(receivedMsg);
+                            }
                         }
                     } catch (SocketTimeoutException e) {
                     }
@@ -357,9 +777,8 @@ public class ServerHandler {
                 this.confirmedNickname,
                 localUdpPort);
             byte[] buffer = registrationMsg.getBytes();
-            InetAddress serverAddress = InetAddress.getByName(host);
             DatagramPacket registrationPacket = new DatagramPacket(buffer, buffer.length,
-                serverAddress, SERVER_UDP_LISTENING_PORT);
+                serverAddress(), SERVER_UDP_LISTENING_PORT);
             updateSocket.send(registrationPacket);
         } catch (IOException e) {
             logger.error("Registration error: " + e.getMessage());
@@ -0,0 +1,179 @@
+package igoat.client;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over walls, so collision checks only look at the walls near a position instead
+ * of all walls of the map.
+ * <p>
+ * Every wall is stored in each cell it overlaps. Walls and queries outside the covered area are
+ * clamped to the border cells, so they still work, just without the speedup. The cells are
+ * immutable arrays that are replaced when a wall is added or removed, and the whole table is
+ * published through a volatile field. Queries can therefore run on other threads than the
+ * changes and never see a half updated grid. Changes are expensive compared to queries, which is
+ * fine since walls only change when the map is built and when the doors open.
+ * </p>
+ */
+public class WallGrid {
+
+    private static final Wall[] EMPTY = new Wall[0];
+
+    private final int originX;
+    private final int originY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private volatile Wall[][] cells;
+
+    /**
+     * Creates an empty grid covering the given area.
+     *
+     * @param x        x-coordinate of the covered area
+     * @param y        y-coordinate of the covered area
+     * @param width    Width of the covered area
+     * @param height   Height of the covered area
+     * @param cellSize Width and height of a cell
+     */
+    public WallGrid(int x, int y, int width, int height, int cellSize) {
+        if (cellSize <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid grid size");
+        }
+        this.originX = x;
+        this.originY = y;
+        this.cellSize = cellSize;
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        clear();
+    }
+
+    /**
+     * Adds a wall to every cell it overlaps.
+     *
+     * @param wall The wall to add
+     */
+    public synchronized void add(Wall wall) {
+        Wall[][] updated = cells.clone();
+        int maxColumn = column(wall.x + wall.width);
+        int maxRow = row(wall.y + wall.height);
+        for (int row = row(wall.y); row <= maxRow; row++) {
+            for (int column = column(wall.x); column <= maxColumn; column++) {
+                int index = row * columns + column;
+                Wall[] cell = updated[index];
+                Wall[] grown = new Wall[cell.length + 1];
+                System.arraycopy(cell, 0, grown, 0, cell.length);
+                grown[cell.length] = wall;
+                updated[index] = grown;
+            }
+        }
+        cells = updated;
+    }
+
+    /**
+     * Removes a wall from the grid. Walls are compared by identity.
+     *
+     * @param wall The wall to remove
+     */
+    public synchronized void remove(Wall wall) {
+        Wall[][] updated = cells.clone();
+        int maxColumn = column(wall.x + wall.width);
+        int maxRow = row(wall.y + wall.height);
+        for (int row = row(wall.y); row <= maxRow; row++) {
+            for (int column = column(wall.x); column <= maxColumn; column++) {
+                int index = row * columns + column;
+                updated[index] = without(updated[index], wall);
+            }
+        }
+        cells = updated;
+    }
+
+    /**
+     * Removes all walls.
+     */
+    public synchronized void clear() {
+        Wall[][] empty = new Wall[columns * rows][];
+        Arrays.fill(empty, EMPTY);
+        cells = empty;
+    }
+
+    /**
+     * Checks whether a rectangle overlaps any wall, using the same test as
+     * {@link Player#collidesWithWall(double, double, double, double, Wall)}.
+     *
+     * @param x      x-coordinate of the rectangle
+     * @param y      y-coordinate of the rectangle
+     * @param width  Width of the rectangle
+     * @param height Height of the rectangle
+     * @return true if at least one wall overlaps the rectangle
+     */
+    public boolean intersects(double x, double y, double width, double height) {
+        Wall[][] table = cells;
+        int minColumn = column(x);
+        int maxColumn = column(x + width);
+        int maxRow = row(y + height);
+        for (int row = row(y); row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (Wall wall : table[row * columns + column]) {
+                    if (Player.collidesWithWall(x, y, width, height, wall)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the walls that overlap a rectangle. Each wall is added once, even if it spans
+     * several cells.
+     *
+     * @param x      x-coordinate of the rectangle
+     * @param y      y-coordinate of the rectangle
+     * @param width  Width of the rectangle
+     * @param height Height of the rectangle
+     * @param result The list the walls are added to
+     */
+    public void query(double x, double y, double width, double height, List<Wall> result) {
+        Wall[][] table = cells;
+        int minColumn = column(x);
+        int maxColumn = column(x + width);
+        int minRow = row(y);
+        int maxRow = row(y + height);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (Wall wall : table[row * columns + column]) {
+                    // only report a wall in the first cell it shares with the query
+                    if (column == Math.max(minColumn, column(wall.x))
+                        && row == Math.max(minRow, row(wall.y))
+                        && Player.collidesWithWall(x, y, width, height, wall)) {
+                        result.add(wall);
+                    }
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor((x - originX) / cellSize), columns);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor((y - originY) / cellSize), rows);
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private static Wall[] without(Wall[] cell, Wall wall) {
+        for (int i = 0; i < cell.length; i++) {
+            if (cell[i] == wall) {
+                Wall[] shrunk = new Wall[cell.length - 1];
+                System.arraycopy(cell, 0, shrunk, 0, i);
+                System.arraycopy(cell, i + 1, shrunk, i, cell.length - i - 1);
+                return shrunk;
+            }
+        }
+        return cell;
+    }
+}
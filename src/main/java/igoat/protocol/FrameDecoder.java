@@ -0,0 +1,103 @@
+package igoat.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes frames (see {@link Frames}) directly from a receive buffer.
+ * <p>
+ * The decoder doesn't copy the frame: after {@link #next(ByteBuffer)} found a complete frame,
+ * {@link #opcode()} and {@link #payload()} refer to the bytes in the buffer until the buffer is
+ * changed. Only {@link #text()} creates the string for the handlers. A decoder is not thread-safe
+ * and is meant to be used by one I/O thread.
+ * </p>
+ */
+public final class FrameDecoder {
+
+    private final int maxLength;
+    private ByteBuffer source;
+    private Opcode opcode;
+    private int restStart;
+    private int restEnd;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Creates a decoder.
+     *
+     * @param maxLength Maximum accepted frame length, larger frames are rejected
+     */
+    public FrameDecoder(int maxLength) {
+        this.maxLength = Math.min(maxLength, Frames.MAX_LENGTH);
+    }
+
+    /**
+     * Decodes the frame at the position of the buffer. If the buffer contains the complete
+     * frame, the position is moved after it.
+     *
+     * @param buffer The received bytes, from the position to the limit
+     * @return true if a frame was decoded, false if more bytes are needed
+     * @throws MalformedMessageException if the frame is empty, too long or has an unknown opcode
+     */
+    public boolean next(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < Frames.LENGTH_SIZE) {
+            return false;
+        }
+        int length = ((buffer.get(start) & 0xFF) << 8) | (buffer.get(start + 1) & 0xFF);
+        if (length == 0 || length > maxLength) {
+            throw new MalformedMessageException("Invalid frame length " + length);
+        }
+        if (buffer.limit() - start < Frames.LENGTH_SIZE + length) {
+            return false;
+        }
+        Opcode decoded = Opcode.fromCode(buffer.get(start + Frames.LENGTH_SIZE) & 0xFF);
+        if (decoded == null) {
+            throw new MalformedMessageException("Unknown opcode");
+        }
+        source = buffer;
+        opcode = decoded;
+        restStart = start + Frames.LENGTH_SIZE + 1;
+        restEnd = start + Frames.LENGTH_SIZE + length;
+        buffer.position(restEnd);
+        return true;
+    }
+
+    /**
+     * Gets the opcode of the last decoded frame.
+     *
+     * @return The opcode
+     */
+    public Opcode opcode() {
+        return opcode;
+    }
+
+    /**
+     * Gets the bytes after the opcode of the last decoded frame, without copying them.
+     *
+     * @return A read-only view of the bytes
+     */
+    public ByteBuffer payload() {
+        return source.asReadOnlyBuffer().limit(restEnd).position(restStart);
+    }
+
+    /**
+     * Gets the last decoded frame as a line of the text protocol.
+     *
+     * @return The message, without line break
+     */
+    public String text() {
+        int length = restEnd - restStart;
+        String rest;
+        if (source.hasArray()) {
+            rest = new String(source.array(), source.arrayOffset() + restStart, length,
+                StandardCharsets.UTF_8);
+        } else {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            source.get(restStart, scratch, 0, length);
+            rest = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return opcode.text().isEmpty() ? rest : opcode.text().concat(rest);
+    }
+}
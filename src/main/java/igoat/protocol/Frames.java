@@ -0,0 +1,100 @@
+package igoat.protocol;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed binary framing for the TCP protocol.
+ * <p>
+ * Without framing every message is a line of text. After both sides agreed on
+ * {@link #FRAMED_VERSION} with a "protocol:2" message, every message is sent as a frame instead:
+ * </p>
+ * <pre>
+ * u16   length of the rest of the frame
+ * u8    opcode, see {@link Opcode#code()}
+ * bytes the text after the command in UTF-8, i.e. nothing or ":" and the payload.
+ *       For {@link Opcode#UNKNOWN} the whole line.
+ * </pre>
+ * <p>
+ * The receiver knows the command from the opcode and where the message ends from the length, so
+ * it neither scans for line breaks nor compares command names.
+ * </p>
+ */
+public final class Frames {
+
+    /**
+     * Protocol version of the plain text protocol
+     */
+    public static final int TEXT_VERSION = 1;
+    /**
+     * Protocol version with binary frames
+     */
+    public static final int FRAMED_VERSION = 2;
+    /**
+     * Size of the length field
+     */
+    public static final int LENGTH_SIZE = 2;
+    /**
+     * Maximum length of a frame after the length field
+     */
+    public static final int MAX_LENGTH = 0xFFFF;
+
+    private Frames() {
+    }
+
+    /**
+     * Encodes a line of the text protocol as a frame.
+     *
+     * @param line The message, without line break
+     * @return The frame
+     * @throws MalformedMessageException if the message is too long for a frame
+     */
+    public static byte[] encode(String line) {
+        Opcode opcode = Opcode.lookup(line);
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        // commands are ASCII, so the command has as many bytes as characters
+        int skip = opcode == Opcode.UNKNOWN ? 0 : opcode.text().length();
+        int length = 1 + text.length - skip;
+        if (length > MAX_LENGTH) {
+            throw new MalformedMessageException("Message too long for a frame: " + length);
+        }
+        byte[] frame = new byte[LENGTH_SIZE + length];
+        frame[0] = (byte) (length >>> 8);
+        frame[1] = (byte) length;
+        frame[2] = (byte) opcode.code();
+        System.arraycopy(text, skip, frame, 3, text.length - skip);
+        return frame;
+    }
+
+    /**
+     * Reads one frame from a blocking stream and returns it as a line of the text protocol.
+     *
+     * @param in The stream
+     * @return The message or null if the stream ended before the frame
+     * @throws IOException               if reading fails
+     * @throws MalformedMessageException if the frame has an unknown opcode
+     */
+    public static String read(DataInputStream in) throws IOException {
+        int high = in.read();
+        if (high == -1) {
+            return null;
+        }
+        try {
+            int length = (high << 8) | in.readUnsignedByte();
+            if (length == 0) {
+                throw new MalformedMessageException("Empty frame");
+            }
+            Opcode opcode = Opcode.fromCode(in.readUnsignedByte());
+            if (opcode == null) {
+                throw new MalformedMessageException("Unknown opcode");
+            }
+            byte[] rest = new byte[length - 1];
+            in.readFully(rest);
+            return opcode.text() + new String(rest, StandardCharsets.UTF_8);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
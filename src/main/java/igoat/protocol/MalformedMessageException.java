@@ -0,0 +1,14 @@
+package igoat.protocol;
+
+/**
+ * Thrown when a message or frame doesn't follow the protocol.
+ */
+public class MalformedMessageException extends IllegalArgumentException {
+
+    /**
+     * @param message Description of the problem
+     */
+    public MalformedMessageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,44 @@
+package igoat.protocol;
+
+/**
+ * A parsed protocol message: the opcode and everything after the first colon.
+ *
+ * @param opcode  The command of the message
+ * @param payload The text after the first colon, null if the message has no colon. For
+ *                {@link Opcode#UNKNOWN} this is the whole line.
+ */
+public record Message(Opcode opcode, String payload) {
+
+    /**
+     * Parses a line of the text protocol.
+     *
+     * @param line The received line
+     * @return The message, never null
+     */
+    public static Message parse(String line) {
+        int length = Opcode.commandLength(line);
+        Opcode opcode = Opcode.lookup(line, 0, length);
+        if (opcode == Opcode.UNKNOWN) {
+            return new Message(opcode, line);
+        }
+        return new Message(opcode, length < line.length() ? line.substring(length + 1) : null);
+    }
+
+    /**
+     * Checks whether the message had a colon, e.g. "game_started:" but not "game_started".
+     *
+     * @return true if there is a payload, which can still be empty
+     */
+    public boolean hasPayload() {
+        return payload != null;
+    }
+
+    /**
+     * Gets the payload or an empty string if the message has none.
+     *
+     * @return The payload
+     */
+    public String text() {
+        return payload == null ? "" : payload;
+    }
+}
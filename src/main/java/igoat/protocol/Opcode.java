@@ -0,0 +1,188 @@
+package igoat.protocol;
+
+/**
+ * The commands of the TCP protocol. Every command has a fixed code, which is used as the opcode
+ * of binary frames, and the name it has in the text protocol.
+ * <p>
+ * Finding the opcode of a text line doesn't allocate: the command is looked up in an open
+ * addressing table by a case-insensitive hash of its characters.
+ * </p>
+ */
+public enum Opcode {
+    /**
+     * Any command that is not part of the protocol
+     */
+    UNKNOWN(0, ""),
+
+    // sent by the client
+    CONNECT(1, "connect"),
+    NEW_LOBBY(2, "newlobby"),
+    READY(3, "ready"),
+    UNREADY(4, "unready"),
+    STATION(5, "station"),
+    USERNAME(6, "username"),
+    WHISPER(7, "whisper"),
+    UDP_BROADCAST(8, "udp_bcast"),
+    START_GAME(9, "startgame"),
+    GET_ROLES(10, "getroles"),
+    GET_RESULTS(11, "getresults"),
+    GET_HIGHSCORES(12, "gethighscores"),
+    SPECTATE(13, "spectate"),
+    LEAVE_SPECTATE(14, "leaveSpectate"),
+    PONG(15, "pong"),
+    EXIT(16, "exit"),
+    PROTOCOL(17, "protocol"),
+
+    // sent by both
+    CHAT(32, "chat"),
+    LOBBY(33, "lobby"),
+    LOBBY_CHAT(34, "lobbychat"),
+    GET_LOBBIES(35, "getlobbies"),
+    GET_PLAYERS(36, "getplayers"),
+    GET_LOBBY_PLAYERS(37, "getlobbyplayers"),
+    ROLE(38, "role"),
+    CATCH(39, "catch"),
+    REVIVE(40, "revive"),
+    TERMINAL(41, "terminal"),
+
+    // sent by the server
+    PING(64, "ping"),
+    ERROR(65, "error"),
+    CONFIRM(66, "confirm"),
+    UDP_ID(67, "udp_id"),
+    UDP_ACK(68, "udp_ack"),
+    PLAYER_IDS(69, "playerids"),
+    GAME_STARTED(70, "game_started"),
+    GAME_OVER(71, "gameover"),
+    TIMER(72, "timer"),
+    ROLES(73, "roles"),
+    READY_STATUS(74, "ready_status"),
+    PLAYER_LEFT(75, "player_left"),
+    ACTIVATE_STATION(76, "activateStation"),
+    DOOR(77, "door"),
+    RESULTS(78, "results"),
+    HIGHSCORES(79, "highscores");
+
+    private static final Opcode[] BY_CODE = new Opcode[256];
+    private static final Opcode[] TABLE = new Opcode[128];
+
+    static {
+        for (Opcode opcode : values()) {
+            if (BY_CODE[opcode.code] != null) {
+                throw new IllegalStateException("Duplicate opcode " + opcode.code);
+            }
+            BY_CODE[opcode.code] = opcode;
+            if (opcode == UNKNOWN) {
+                continue;
+            }
+            int slot = hash(opcode.text, 0, opcode.text.length()) & (TABLE.length - 1);
+            while (TABLE[slot] != null) {
+                slot = (slot + 1) & (TABLE.length - 1);
+            }
+            TABLE[slot] = opcode;
+        }
+    }
+
+    private final int code;
+    private final String text;
+
+    Opcode(int code, String text) {
+        this.code = code;
+        this.text = text;
+    }
+
+    /**
+     * Gets the code used in binary frames.
+     *
+     * @return The code, between 0 and 255
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Gets the name of the command in the text protocol.
+     *
+     * @return The command, without colon
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Gets the opcode with the given code.
+     *
+     * @param code The code from a frame
+     * @return The opcode or null if there is none with this code
+     */
+    public static Opcode fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Gets the length of the command at the start of a text line, i.e. the index of the first
+     * colon or the length of the line if there is none.
+     *
+     * @param line The text line
+     * @return The length of the command
+     */
+    public static int commandLength(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == ':') {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    /**
+     * Finds the opcode of a text line. The command is compared ignoring case.
+     *
+     * @param line The text line, e.g. "catch:alice"
+     * @return The opcode, {@link #UNKNOWN} if the command is not part of the protocol
+     */
+    public static Opcode lookup(CharSequence line) {
+        return lookup(line, 0, commandLength(line));
+    }
+
+    /**
+     * Finds the opcode of a command. The command is compared ignoring case.
+     *
+     * @param chars Characters containing the command
+     * @param start Index of the first character of the command
+     * @param end   Index after the last character of the command
+     * @return The opcode, {@link #UNKNOWN} if the command is not part of the protocol
+     */
+    public static Opcode lookup(CharSequence chars, int start, int end) {
+        int slot = hash(chars, start, end) & (TABLE.length - 1);
+        Opcode candidate;
+        while ((candidate = TABLE[slot]) != null) {
+            if (candidate.matches(chars, start, end)) {
+                return candidate;
+            }
+            slot = (slot + 1) & (TABLE.length - 1);
+        }
+        return UNKNOWN;
+    }
+
+    private boolean matches(CharSequence chars, int start, int end) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(chars.charAt(start + i))
+                != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(chars.charAt(i));
+        }
+        return hash ^ (hash >>> 7);
+    }
+}
@@ -4,9 +4,12 @@ import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
 import igoat.Role;
+import igoat.UpdatePacket;
 import igoat.client.LanguageManager;
-import igoat.client.Map;
-import igoat.client.Wall;
+import igoat.client.RealUDPSocket;
+import igoat.client.UDPSocket;
+import igoat.protocol.Frames;
+import igoat.protocol.Opcode;
 import igoat.server.Lobby.LobbyState;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -15,25 +18,27 @@ import java.io.PrintWriter;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Handles individual client connections in the game server. Each instance manages one client's TCP
  * connection and UDP communication, handling game state updates, chat messages, and player actions.
- * Implements Runnable to run in its own thread.
+ * Implements Runnable to run in its own thread, or is driven by the {@link NioServer} I/O threads
+ * when a {@link NioServer.Connection} is attached.
  */
 public class ClientHandler implements Runnable {
 
@@ -45,32 +50,57 @@ public class ClientHandler implements Runnable {
      * Fixed port that the server listens on for UDP client registration
      */
     public static final int SERVER_UDP_LISTENING_PORT = 61001;
-    private static final String UDP_REGISTRATION_PREFIX = "register_udp:";
-    private static final int UDP_BUFFER_SIZE = 512;
+    private static final byte[] REGISTRATION_PREFIX = "register_udp:".getBytes(
+        StandardCharsets.US_ASCII);
+    private static final byte[] POSITION_PREFIX = "position:".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_PLAYER_ID = 0xFFFF;
+    private static final AtomicInteger nextPlayerId = new AtomicInteger(1);
     private static final int MAX_NAME_LENGTH = 15;
+    private static final int RESULTS_PAGE_SIZE = 10;
+    private static final int MAX_RESULTS = 50;
 
     private final Socket clientSocket;
     private BufferedReader in;
     private PrintWriter out;
-    private Thread pingThread;
+    // messages for the writer thread, only used without a NIO connection
+    private volatile OutboundQueue outbound;
+    private final AtomicBoolean slowClient = new AtomicBoolean(false);
+    private NioServer.Connection connection;
+    private TimingWheel.Timeout pingTask;
+    private volatile TimingWheel.Timeout pongTimeout;
     private volatile boolean running = true;
-    private long lastPongTime;
+    private final AtomicBoolean disconnected = new AtomicBoolean(false);
+    private int captureId = 0; // number of the connection in the traffic capture, 0 if none
+    private volatile long lastPongTime;
+    private volatile long lastPingNanos = 0; // when the last ping was sent, for the round trip time
     private static final long PING_INTERVAL = 2000; // 2 seconds
     private static final long TIMEOUT = 5000; // 5 seconds
     private int udpPort = -1; // Port the client is listening on for UDP updates
-
-    protected static final List<ClientHandler> clientList = new CopyOnWriteArrayList<>();
-
-    protected static final List<Lobby> lobbyList = new CopyOnWriteArrayList<>();
+    private final int playerId; // ID used in binary UDP packets
+    volatile InetSocketAddress udpEndpoint; // set by ClientRegistry.registerEndpoint
+    private volatile int ackedSnapshot = 0; // last snapshot acknowledged by the client
+    // versions of the directory lists the client has, only used by the directory
+    volatile long lobbiesVersion = -1;
+    volatile long playersVersion = -1;
+    // per snapshot: players whose state the client has, only used by the lobby tick
+    final long[] trustedEntities = new long[Lobby.SNAPSHOT_HISTORY];
+    long visibleEntities; // players in sight in the last tick, only used by the lobby tick
+
+    protected static final ClientRegistry clientList = new ClientRegistry();
+
+    protected static final LobbyRegistry lobbyList = new LobbyRegistry();
+    static final Directory directory = new Directory(clientList, lobbyList);
     protected Lobby currentLobby;
-    private static int nextLobbyCode = 1000;
+    private static final AtomicInteger nextLobbyCode = new AtomicInteger(1000);
+    // reads pages of finished games that are no longer in memory
+    private static final ExecutorService resultsReader =
+        ServerThreads.newSingleThreadExecutor("Results-Reader");
     protected boolean isReady = false;
-    private boolean clientReady = false;
+    private volatile boolean eventLogPending = false;
 
-    private static DatagramSocket serverUpdateSocket;
-    private static DatagramSocket udpListeningSocket;
-    private static volatile boolean udpListenerRunning = false;
-    private static Thread udpListenerThread;
+    private static UDPSocket serverUpdateSocket; // abstraction for tests and benchmarks
+    private static volatile UdpServer udpServer;
+    private static final ReentrantLock udpListenerLock = new ReentrantLock();
 
     protected String nickname;
     protected Player player;
@@ -79,7 +109,7 @@ public class ClientHandler implements Runnable {
 
     static {
         try {
-            serverUpdateSocket = new DatagramSocket();
+            serverUpdateSocket = new RealUDPSocket(new DatagramSocket());
         } catch (SocketException e) {
             logger.error("Could not create server UDP sending socket", e);
             serverUpdateSocket = null;
@@ -87,205 +117,380 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Starts the static UDP listener thread if it's not already running. Should be called once
-     * during server initialization.
+     * Replaces the socket the UDP updates are sent with, e.g. by a stub in a benchmark.
+     *
+     * @param socket The new socket
+     * @return The previous socket
      */
-    public static synchronized void startUdpListener() {
-        if (udpListenerRunning || udpListenerThread != null) {
-            logger.warn("UDP Listener is already running or was not properly stopped.");
-            return;
-        }
+    static UDPSocket setUpdateSocket(UDPSocket socket) {
+        UDPSocket previous = serverUpdateSocket;
+        serverUpdateSocket = socket;
+        return previous;
+    }
 
+    /**
+     * Starts the UDP listener if it's not already running. Should be called once during server
+     * initialization.
+     *
+     * @param workers Number of threads handling received packets
+     */
+    public static void startUdpListener(int workers) {
+        udpListenerLock.lock();
         try {
-            udpListeningSocket = new DatagramSocket(SERVER_UDP_LISTENING_PORT);
-            udpListenerRunning = true;
-            udpListenerThread = new Thread(ClientHandler::runUdpListenerLoop);
-            udpListenerThread.setName("Server-UDP-Listener");
-            udpListenerThread.setDaemon(true);
-            udpListenerThread.start();
+            if (udpServer != null) {
+                logger.warn("UDP Listener is already running or was not properly stopped.");
+                return;
+            }
 
-        } catch (SocketException e) {
-            logger.error("Could not start UDP Listener on port {}", SERVER_UDP_LISTENING_PORT, e);
-            udpListenerRunning = false;
-            udpListeningSocket = null;
-            udpListenerThread = null;
+            UdpServer server = new UdpServer(SERVER_UDP_LISTENING_PORT, workers,
+                ClientHandler::handleDatagram);
+            try {
+                server.start();
+                udpServer = server;
+            } catch (IOException e) {
+                logger.error("Could not start UDP Listener on port {}", SERVER_UDP_LISTENING_PORT,
+                    e);
+                server.stop();
+            }
+        } finally {
+            udpListenerLock.unlock();
         }
     }
 
     /**
-     * Stops the static UDP listener thread. Should be called once during server shutdown.
+     * Starts the UDP listener with the default number of worker threads.
      */
-    public static synchronized void stopUdpListener() {
-        if (!udpListenerRunning) {
-            logger.warn("UDP Listener is not running.");
-            return;
-        }
-        udpListenerRunning = false;
-        if (udpListeningSocket != null && !udpListeningSocket.isClosed()) {
-            udpListeningSocket.close();
+    public static void startUdpListener() {
+        startUdpListener(UdpServer.DEFAULT_WORKERS);
+    }
+
+    /**
+     * Runs a task on the UDP worker that handles the packets of a lobby, so it doesn't run
+     * concurrently with them. Without a running UDP listener the task runs on the calling thread.
+     *
+     * @param lobbyCode The code of the lobby
+     * @param task      The task
+     * @return false if the worker is overloaded and the task was not queued
+     */
+    static boolean executeForLobby(int lobbyCode, Runnable task) {
+        UdpServer server = udpServer;
+        if (server == null) {
+            task.run();
+            return true;
         }
-        if (udpListenerThread != null) {
-            try {
-                udpListenerThread.join(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        return server.execute(lobbyCode, task);
+    }
+
+    /**
+     * Stops the UDP listener and saves the results of all finished games. Should be called once
+     * during server shutdown.
+     */
+    public static void stopUdpListener() {
+        udpListenerLock.lock();
+        try {
+            if (udpServer == null) {
+                logger.warn("UDP Listener is not running.");
+                return;
             }
+            udpServer.stop();
+            udpServer = null;
+            logger.info("Server UDP Listener stopped.");
+            // the listener can end games, so their results are saved once it is stopped
+            PersistenceStage.shutdownShared();
+        } finally {
+            udpListenerLock.unlock();
         }
-        logger.info("Server UDP Listener stopped.");
-        udpListeningSocket = null;
-        udpListenerThread = null;
     }
 
     /**
-     * Static method to run a UDP listener loop for position updates. This is run in its own
-     * thread.
+     * Handles a UDP packet from a client. Called by the {@link UdpServer} workers, packets of the
+     * same lobby are handled one at a time. Position updates are parsed directly from the buffer
+     * without allocating, only registrations and unknown senders create strings.
+     *
+     * @param packet The received packet, from index 0 to the limit
+     * @param source The address the packet was sent from
      */
-    private static void runUdpListenerLoop() {
-        if (serverUpdateSocket == null) {
-            logger.error("Cannot run UDP listener - socket is null");
-            return;
+    static void handleDatagram(ByteBuffer packet, SocketAddress source) {
+        if (UpdatePacket.isUpdatePacket(packet)) {
+            long start = System.nanoTime();
+            handleUpdatePacket(packet, source);
+            Metrics.POSITION_UPDATE.recordSince(start);
+        } else if (startsWith(packet, POSITION_PREFIX)) {
+            long start = System.nanoTime();
+            handlePositionUpdate(packet, source);
+            Metrics.POSITION_UPDATE.recordSince(start);
+        } else if (startsWith(packet, REGISTRATION_PREFIX)) {
+            handleRegistration(packet, source);
         }
+    }
 
-        if (udpListeningSocket == null) {
-            logger.error("udpListeningSocket is null!");
+    /**
+     * Handles a UDP registration. Format: register_udp:nickname:port
+     *
+     * @param packet The received packet
+     * @param source The address the packet was sent from
+     */
+    private static void handleRegistration(ByteBuffer packet, SocketAddress source) {
+        int start = REGISTRATION_PREFIX.length;
+        int colon = indexOf(packet, start, ':');
+        if (colon < 0 || indexOf(packet, colon + 1, ':') >= 0
+            || !(source instanceof InetSocketAddress address)) {
             return;
         }
-
-        byte[] buffer = new byte[UDP_BUFFER_SIZE];
-
+        String nickname = decode(packet, start, colon);
         try {
-            udpListeningSocket.setSoTimeout(10);
-        } catch (SocketException e) {
-            logger.error("Could not set socket timeout", e);
+            int clientListeningPort = parseInt(packet, colon + 1, packet.limit());
+            registerClientUdpPort(address.getAddress(), nickname, clientListeningPort);
+        } catch (NumberFormatException e) {
+            logger.error("Invalid port in registration: {}",
+                decode(packet, colon + 1, packet.limit()));
         }
+    }
 
-        while (udpListenerRunning && udpListeningSocket != null && !udpListeningSocket.isClosed()) {
-            try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-                udpListeningSocket.receive(packet);
-
-                InetAddress clientIp = packet.getAddress();
-                String message = new String(packet.getData(), 0, packet.getLength());
-
-                if (message.startsWith(UDP_REGISTRATION_PREFIX)) {
-                    String[] parts = message.split(":");
-                    if (parts.length == 3) {
-                        String nickname = parts[1];
-                        try {
-                            int clientListeningPort = Integer.parseInt(parts[2]);
-                            registerClientUdpPort(clientIp, nickname, clientListeningPort);
-                        } catch (NumberFormatException e) {
-                            logger.error("Invalid port in registration: {}", parts[2]);
-                        }
-                    }
-                } else if (message.startsWith("position:")) {
-                    handlePositionUpdate(message);
-                }
-
-                Arrays.fill(buffer, (byte) 0);
+    /**
+     * Handles a binary packet from a client. See {@link UpdatePacket} for the format. The sender
+     * is looked up by the UDP endpoint the packet came from and has to match the player ID in the
+     * packet.
+     *
+     * @param packet The received packet
+     * @param source The address the packet was sent from
+     */
+    private static void handleUpdatePacket(ByteBuffer packet, SocketAddress source) {
+        if (!UpdatePacket.isValid(packet)) {
+            logger.warn("Invalid update packet");
+            return;
+        }
 
-            } catch (java.net.SocketTimeoutException e) {
-            } catch (SocketException se) {
-                if (udpListenerRunning) {
-                    logger.error("Socket exception", se);
+        switch (UpdatePacket.getType(packet)) {
+            case UpdatePacket.TYPE_POSITION -> {
+                if (UpdatePacket.getCount(packet) != 1) {
+                    logger.warn("Invalid position packet");
+                    return;
                 }
-            } catch (IOException e) {
-                if (udpListenerRunning) {
-                    logger.error("IO exception", e);
+                ClientHandler sender = findSender(packet, UpdatePacket.getPlayerId(packet, 0),
+                    source);
+                if (sender == null) {
+                    return;
+                }
+                try {
+                    sender.updatePosition(UpdatePacket.getX(packet, 0),
+                        UpdatePacket.getY(packet, 0));
+                } catch (Exception e) {
+                    logger.error("Error processing update: ", e);
+                }
+            }
+            case UpdatePacket.TYPE_ACK -> {
+                ClientHandler sender = findSender(packet, UpdatePacket.getAckPlayerId(packet),
+                    source);
+                if (sender != null) {
+                    sender.acknowledgeSnapshot(UpdatePacket.getSequence(packet));
                 }
-            } catch (Exception e) {
-                logger.error("Unexpected exception", e);
             }
+            default -> logger.warn("Unexpected packet type {}", UpdatePacket.getType(packet));
         }
-        logger.info("UDP listener stopped");
     }
 
     /**
-     * Handles a position update from a client. Format: position:playerName:lobbyCode:x:y
+     * Finds the client that sent a binary packet and checks that it is in the lobby named in the
+     * packet.
      *
-     * @param message The position update message
+     * @param packet The received packet
+     * @param id     The player ID in the packet
+     * @param source The address the packet was sent from
+     * @return The sender or null if the packet doesn't belong to a player in that lobby
      */
-    private static void handlePositionUpdate(String message) {
-        String[] parts = message.split(":");
-        if (parts.length != 5) {
-            logger.warn("Invalid position format: {}", message);
+    private static ClientHandler findSender(ByteBuffer packet, int id, SocketAddress source) {
+        ClientHandler sender = clientList.findByEndpoint(source);
+        if (sender == null) {
+            // UDP registration not acknowledged yet
+            sender = clientList.findById(id);
+        }
+        if (sender == null || sender.playerId != id) {
+            logger.warn("Cannot find player with id {} at {}", id, source);
+            return null;
+        }
+        Lobby lobby = sender.currentLobby;
+        if (lobby == null) {
+            logger.warn("Player {} not in a lobby", sender.nickname);
+            return null;
+        }
+        if (UpdatePacket.toWireLobbyCode(lobby.getCode()) != UpdatePacket.getLobbyCode(packet)) {
+            logger.warn("Lobby code mismatch for {}", sender.nickname);
+            return null;
+        }
+        return sender;
+    }
+
+    /**
+     * Handles a text position update from a client. Format: position:playerName:lobbyCode:x:y
+     * <p>
+     * The sender is looked up by the UDP endpoint first and only by nickname if the endpoint is
+     * unknown or belongs to someone else.
+     * </p>
+     *
+     * @param packet The received packet
+     * @param source The address the packet was sent from
+     */
+    private static void handlePositionUpdate(ByteBuffer packet, SocketAddress source) {
+        int start = POSITION_PREFIX.length;
+        int nameEnd = indexOf(packet, start, ':');
+        int codeEnd = nameEnd < 0 ? -1 : indexOf(packet, nameEnd + 1, ':');
+        int xEnd = codeEnd < 0 ? -1 : indexOf(packet, codeEnd + 1, ':');
+        if (xEnd < 0 || indexOf(packet, xEnd + 1, ':') >= 0) {
+            logger.warn("Invalid position format: {}", decode(packet, 0, packet.limit()));
             return;
         }
 
+        int lobbyCode;
+        int x;
+        int y;
         try {
-            String senderName = parts[1];
-            String lobbyCode = parts[2];
-            int x = Integer.parseInt(parts[3]);
-            int y = Integer.parseInt(parts[4]);
-
-            final ClientHandler sender = findClientHandlerByNickname(senderName);
+            lobbyCode = parseInt(packet, nameEnd + 1, codeEnd);
+            x = parseInt(packet, codeEnd + 1, xEnd);
+            y = parseInt(packet, xEnd + 1, packet.limit());
+        } catch (NumberFormatException e) {
+            logger.error("Invalid coordinates", e);
+            return;
+        }
 
+        ClientHandler sender = clientList.findByEndpoint(source);
+        if (sender == null || !matches(sender.nickname, packet, start, nameEnd)) {
+            String senderName = decode(packet, start, nameEnd);
+            sender = clientList.findByNickname(senderName);
             if (sender == null) {
                 logger.warn("Cannot find player: {}", senderName);
                 return;
             }
+        }
 
-            if (sender.currentLobby == null) {
-                logger.warn("Player {} not in a lobby", senderName);
-                return;
-            }
+        Lobby lobby = sender.currentLobby;
+        if (lobby == null) {
+            logger.warn("Player {} not in a lobby", sender.nickname);
+            return;
+        }
+        if (lobby.getCode() != lobbyCode) {
+            logger.warn("Lobby code mismatch for {}", sender.nickname);
+            return;
+        }
 
-            String currentLobbyCode = String.valueOf(sender.currentLobby.getCode());
-            if (!currentLobbyCode.equals(lobbyCode)) {
-                logger.warn("Lobby code mismatch for {}", senderName);
-                return;
+        try {
+            sender.updatePosition(x, y);
+        } catch (Exception e) {
+            logger.error("Error processing update: ", e);
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer packet, byte[] prefix) {
+        if (packet.limit() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (packet.get(i) != prefix[i]) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            if (sender.currentLobby.getGameState() == null) {
-                logger.warn("game state is null for player {}", senderName);
-                return;
+    private static int indexOf(ByteBuffer packet, int from, char value) {
+        for (int i = from; i < packet.limit(); i++) {
+            if (packet.get(i) == value) {
+                return i;
             }
+        }
+        return -1;
+    }
 
-            sender.clientReady = true;
-
-            // check correct spawn/teleport location
-            if (!sender.getPlayer().getPositionWasSet()) {
-                if (x == sender.getPlayer().getX() && y == sender.getPlayer().getY()) {
-                    sender.getPlayer().setPositionWasSet(true);
-                } else {
-                    x = (int) sender.getPlayer().getX();
-                    y = (int) sender.getPlayer().getY();
-                    sender.currentLobby.broadcastUpdateToLobby(
-                        "player_position:" + senderName + ":" + x + ":" + y, null);
-                }
+    /**
+     * Parses a decimal integer from the bytes between from and to, like
+     * {@link Integer#parseInt(String)} but without creating a string.
+     */
+    private static int parseInt(ByteBuffer packet, int from, int to) {
+        boolean negative = from < to && packet.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to || to - i > 9) {
+            throw new NumberFormatException("Invalid number");
+        }
+        int value = 0;
+        for (; i < to; i++) {
+            int digit = packet.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number");
             }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
 
-            // if there is a collision, we return the current coordinates
-            if (sender.currentLobby.getMap() != null &&
-                checkCollision(x, y, sender.getPlayer().getWidth(), sender.getPlayer().getHeight(),
-                    sender.currentLobby.getMap(), sender.getPlayer()
-                        .getRole() == Role.GOAT)) {
-                x = (int) sender.getPlayer().getX();
-                y = (int) sender.getPlayer().getY();
-                logger.info("collision prevented");
-                sender.currentLobby.broadcastUpdateToLobby(
-                    "player_position:" + senderName + ":" + x + ":" + y, null);
-            } else {
-                sender.getPlayer().setX(x);
-                sender.getPlayer().setY(y);
+    /**
+     * Checks whether the bytes between from and to are the ASCII characters of the text.
+     */
+    private static boolean matches(String text, ByteBuffer packet, int from, int to) {
+        if (text == null || text.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != packet.get(from + i)) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            if (sender.getPlayer().getRole() == Role.GOAT &&
-                !sender.currentLobby.getGameState().gameOver && sender.currentLobby.getGameState()
-                .isDoorOpen() &&
-                (sender.getPlayer().getX() < 0 || sender.getPlayer().getX() > 1500)) {
-                logger.info("{} escaped, ending game", sender.getNickname());
-                sender.endGame(false);
+    private static String decode(ByteBuffer packet, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        packet.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies a position reported by this client to its player. The position is sent to the rest
+     * of the lobby in the next lobby tick. Positions that collide with a wall or don't match a
+     * pending teleport are corrected.
+     *
+     * @param x reported x-coordinate
+     * @param y reported y-coordinate
+     */
+    private void updatePosition(int x, int y) {
+        if (currentLobby.getGameState() == null) {
+            logger.warn("game state is null for player {}", nickname);
+            return;
+        }
+        Metrics.POSITIONS_RECEIVED.increment();
+
+        if (eventLogPending) {
+            eventLogPending = false;
+            sendEventLog();
+        }
+
+        // check correct spawn/teleport location
+        if (!player.getPositionWasSet()) {
+            if (x == player.getX() && y == player.getY()) {
+                player.setPositionWasSet(true);
+            } else {
+                x = (int) player.getX();
+                y = (int) player.getY();
+                player.markCorrected();
             }
+        }
 
-            String broadcastMessage = "player_position:" + senderName + ":" + x + ":" + y;
-            sender.currentLobby.broadcastUpdateToLobby(broadcastMessage, sender);
+        // if there is a collision, we return the current coordinates
+        if (currentLobby.getMap() != null &&
+            checkCollision(x, y, player.getWidth(), player.getHeight(), currentLobby.getMap(),
+                player.getRole() == Role.GOAT)) {
+            logger.info("collision prevented");
+            Metrics.COLLISIONS_PREVENTED.increment();
+            player.markCorrected();
+        } else {
+            player.setX(x);
+            player.setY(y);
+        }
 
-        } catch (NumberFormatException e) {
-            logger.error("Invalid coordinates", e);
-        } catch (Exception e) {
-            logger.error("Error processing update: ", e);
+        if (player.getRole() == Role.GOAT &&
+            !currentLobby.getGameState().gameOver && currentLobby.getGameState().isDoorOpen() &&
+            (player.getX() < 0 || player.getX() > 1500)) {
+            logger.info("{} escaped, ending game", nickname);
+            endGame(false);
         }
     }
 
@@ -293,21 +498,9 @@ public class ClientHandler implements Runnable {
      * checks for a collision with a wall
      */
     private static boolean checkCollision(int x, int y, double playerWidth, double playerHeight,
-        Map map, boolean ignoreWindows) {
-        for (Wall wall : map.getCollisionWalls()) {
-            if (igoat.client.Player.collidesWithWall(x, y, playerWidth, playerHeight, wall)) {
-                return true;
-            }
-        }
-        if (!ignoreWindows) {
-            for (Wall wall : map.getWindowCollisions()) {
-                if (igoat.client.Player.collidesWithWall(x, y, playerWidth, playerHeight, wall)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        LobbyMap map, boolean ignoreWindows) {
+        // a single bit lookup for positions on the map
+        return map.collides(x, y, playerWidth, playerHeight, ignoreWindows);
     }
 
     /**
@@ -320,30 +513,27 @@ public class ClientHandler implements Runnable {
      */
     private static void registerClientUdpPort(InetAddress clientIp, String nickname,
         int clientListeningPort) {
-        boolean found = false;
-        for (ClientHandler handler : clientList) {
-            if (handler.nickname.equals(nickname)) {
-
-                handler.udpPort = clientListeningPort;
-                found = true;
-
-                if (serverUpdateSocket != null) {
-                    try {
-                        String ackMsg = "udp_ack:";
-                        byte[] ackBuf = ackMsg.getBytes();
-                        DatagramPacket ackPacket = new DatagramPacket(ackBuf, ackBuf.length,
-                            clientIp, clientListeningPort);
-                        serverUpdateSocket.send(ackPacket);
-                    } catch (IOException e) {
-                        logger.error("Failed to send UDP ACK to {}", nickname, e);
-                    }
-                }
-                break;
-            }
-        }
-        if (!found) {
+        ClientHandler handler = clientList.findByNickname(nickname);
+        if (handler == null) {
             logger.error("UDP registration failed for {} (Handler not found or IP/name mismatch)",
                 nickname);
+            return;
+        }
+
+        handler.udpPort = clientListeningPort;
+        clientList.registerEndpoint(handler, new InetSocketAddress(clientIp, clientListeningPort));
+
+        if (serverUpdateSocket != null) {
+            try {
+                String ackMsg = "udp_ack:";
+                byte[] ackBuf = ackMsg.getBytes();
+                DatagramPacket ackPacket = new DatagramPacket(ackBuf, ackBuf.length,
+                    clientIp, clientListeningPort);
+                serverUpdateSocket.send(ackPacket);
+                Metrics.UDP_SENT.increment();
+            } catch (IOException e) {
+                logger.error("Failed to send UDP ACK to {}", nickname, e);
+            }
         }
     }
 
@@ -357,6 +547,22 @@ public class ClientHandler implements Runnable {
         this.clientSocket = clientSocket;
         this.lastPongTime = System.currentTimeMillis();
         this.nickname = generateUniqueNickname("player");
+        this.playerId = allocatePlayerId();
+    }
+
+    /**
+     * Picks the next free player ID. IDs are 16-bit values, so they wrap around and IDs still in
+     * use by a connected client are skipped. 0 is never used.
+     *
+     * @return A player ID that is not used by any connected client
+     */
+    private static int allocatePlayerId() {
+        while (true) {
+            int id = nextPlayerId.getAndUpdate(i -> i >= MAX_PLAYER_ID ? 1 : i + 1);
+            if (clientList.findById(id) == null) {
+                return id;
+            }
+        }
     }
 
     /**
@@ -366,34 +572,20 @@ public class ClientHandler implements Runnable {
     @Override
     public void run() {
         clientList.add(this);
+        captureId = TrafficCapture.connected();
         try {
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
+            out = new PrintWriter(clientSocket.getOutputStream());
+            outbound = new OutboundQueue();
+            ServerThreads.start("Client-Writer-" + clientSocket.getPort(), this::writeMessages);
 
-            // start ping thread
-            pingThread = new Thread(this::runPingPong);
-            pingThread.start();
+            startPingPong();
 
             String message;
             while (running && (message = in.readLine()) != null) {
-                if (message.equals("pong")) {
-                    handlePong();
-                    continue;
-                } else if (message.equals("exit")) {
-                    running = false;
+                if (!handleLine(message)) {
                     break;
                 }
-
-                if (message.startsWith("spectate:")) {
-                    handleSpectate(message.split(":"));
-                    continue;
-                }
-                if (message.startsWith("leaveSpectate:")) {
-                    handleLeaveSpectate(message.split(":"));
-                    continue;
-                }
-
-                handleCommand(message);
             }
         } catch (IOException e) {
             logger.error("Exception", e);
@@ -403,37 +595,145 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Performs the PingPong connection check. Sends periodic pings and checks for timeouts.
+     * Writes the queued messages to the socket until the queue is closed. Runs on its own thread,
+     * so only this client waits if its socket is slow.
      */
-    private void runPingPong() {
-        long lastPingSent = 0;
-
-        while (running) {
-            long currentTime = System.currentTimeMillis();
-
-            if (currentTime - lastPingSent >= PING_INTERVAL) {
-                sendMessage("ping");
-                lastPingSent = currentTime;
-                //logger.info("Ping sent to {}", nickname);
+    private void writeMessages() {
+        StringBuilder batch = new StringBuilder();
+        try {
+            while (outbound.await()) {
+                batch.setLength(0);
+                if (outbound.drainTo(batch)) {
+                    out.write(batch.toString());
+                    out.flush();
+                    if (out.checkError()) {
+                        logger.info("Could not write to {}", nickname);
+                        disconnect();
+                        return;
+                    }
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            if (currentTime - lastPongTime >= TIMEOUT) {
-                logger.info("Client {} timed out", nickname);
-                disconnect();
-                break;
-            }
+    /**
+     * Attaches a non-blocking connection to this handler. Messages are then sent through the
+     * connection and incoming lines are passed to {@link #handleLine(String)} by the I/O thread
+     * owning the connection.
+     *
+     * @param connection The connection of this client
+     */
+    void attach(NioServer.Connection connection) {
+        this.connection = connection;
+        clientList.add(this);
+        captureId = TrafficCapture.connected();
+        startPingPong();
+    }
 
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    /**
+     * Processes a single line received from the client.
+     *
+     * @param message The received line
+     * @return false if the client wants to close the connection, true otherwise
+     */
+    boolean handleLine(String message) {
+        TrafficCapture.line(captureId, message);
+        int commandLength = Opcode.commandLength(message);
+        boolean hasParams = commandLength < message.length();
+        switch (Opcode.lookup(message, 0, commandLength)) {
+            case PONG:
+                if (!hasParams) {
+                    handlePong();
+                    return true;
+                }
                 break;
-            }
+            case EXIT:
+                if (!hasParams) {
+                    running = false;
+                    return false;
+                }
+                break;
+            case SPECTATE:
+                if (hasParams) {
+                    handleSpectate(message.split(":"));
+                    return true;
+                }
+                break;
+            case LEAVE_SPECTATE:
+                if (hasParams) {
+                    handleLeaveSpectate(message.split(":"));
+                    return true;
+                }
+                break;
+            case PROTOCOL:
+                if (hasParams) {
+                    handleProtocol(message.substring(commandLength + 1).trim());
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+
+        handleCommand(message);
+        return true;
+    }
+
+    /**
+     * Answers the protocol version requested by the client. Binary frames are only supported by
+     * NIO connections, so other clients keep using the text protocol.
+     *
+     * @param version The version requested by the client
+     */
+    private void handleProtocol(String version) {
+        if (connection != null && String.valueOf(Frames.FRAMED_VERSION).equals(version)) {
+            connection.useFrames("protocol:" + Frames.FRAMED_VERSION);
+        } else {
+            sendMessage("protocol:" + Frames.TEXT_VERSION);
+        }
+    }
+
+    /**
+     * Starts the PingPong connection check on the server timing wheel. Sends periodic pings and
+     * disconnects the client if no pong arrives within the timeout.
+     */
+    private void startPingPong() {
+        TimingWheel wheel = TimingWheel.getInstance();
+        pingTask = wheel.scheduleAtFixedRate(this::sendPing, 0, PING_INTERVAL);
+        pongTimeout = wheel.schedule(this::checkPongTimeout, TIMEOUT);
+    }
+
+    /**
+     * Sends a ping and remembers when, so the pong gives the round trip time.
+     */
+    private void sendPing() {
+        lastPingNanos = System.nanoTime();
+        sendMessage("ping");
+    }
+
+    /**
+     * Disconnects the client if the last pong is older than the timeout. Otherwise, checks again
+     * at the time the last pong would time out, so pongs don't have to reschedule anything.
+     */
+    private void checkPongTimeout() {
+        if (!running) {
+            return;
+        }
+
+        long remaining = lastPongTime + TIMEOUT - System.currentTimeMillis();
+        if (remaining <= 0) {
+            logger.info("Client {} timed out", nickname);
+            disconnect();
+        } else {
+            pongTimeout = TimingWheel.getInstance().schedule(this::checkPongTimeout, remaining);
         }
     }
 
     /**
-     * Processes incoming commands from the client. Format: command:message
+     * Processes incoming commands from the client. Format: command:message. The command is
+     * looked up as an {@link Opcode}, ignoring case.
      *
      * @param message The received message
      */
@@ -444,26 +744,26 @@ public class ClientHandler implements Runnable {
                 sendError(lang.get("server.formatError"));
                 return;
             }
-            String command = message.substring(0, colonIndex).toLowerCase();
+            Opcode opcode = Opcode.lookup(message, 0, colonIndex);
             String params = message.substring(colonIndex + 1);
 
-            switch (command) {
-                case "connect":
+            switch (opcode) {
+                case CONNECT:
                     handleConnect(new String[]{params.trim()});
                     break;
-                case "chat":
+                case CHAT:
                     handleChat(new String[]{params});
                     break;
-                case "lobby":
+                case LOBBY:
                     handleLobby(new String[]{params.trim()});
                     break;
-                case "newlobby":
+                case NEW_LOBBY:
                     handleNewLobby();
                     break;
-                case "getlobbies":
+                case GET_LOBBIES:
                     handleGetLobbies();
                     break;
-                case "lobbychat":
+                case LOBBY_CHAT:
                     if (currentLobby != null) {
                         if (!handleCheatCode(params)) {
                             currentLobby.broadcastChatToLobby(nickname + ":" + params);
@@ -472,34 +772,34 @@ public class ClientHandler implements Runnable {
                         sendError(lang.get("server.noLobby"));
                     }
                     break;
-                case "getplayers":
+                case GET_PLAYERS:
                     handleGetPlayers();
                     break;
-                case "getlobbyplayers":
+                case GET_LOBBY_PLAYERS:
                     handleGetLobbyPlayers();
                     break;
-                case "ready":
+                case READY:
                     handleReady(true);
                     break;
-                case "unready":
+                case UNREADY:
                     handleReady(false);
                     break;
-                case "role":
+                case ROLE:
                     handleRoleConfirmation(params.trim());
                     break;
-                case "catch":
+                case CATCH:
                     handleCatch(params.trim());
                     break;
-                case "revive":
+                case REVIVE:
                     handleRevive(params.trim());
                     break;
-                case "station":
+                case STATION:
                     handleStation(params.trim());
                     break;
-                case "username":
+                case USERNAME:
                     handleUsername(new String[]{params.trim()});
                     break;
-                case "whisper":
+                case WHISPER:
                     int commaIndex = params.indexOf(',');
                     if (commaIndex != -1) {
                         String recipient = params.substring(0, commaIndex).trim();
@@ -509,7 +809,7 @@ public class ClientHandler implements Runnable {
                         sendError(lang.get("server.whisperError"));
                     }
                     break;
-                case "udp_bcast":
+                case UDP_BROADCAST:
                     if (currentLobby != null) {
                         currentLobby.broadcastUpdateToLobby("UDP Broadcast Test: " + params, this);
                         sendMessage("chat:Sent UDP broadcast to lobby " + currentLobby.getCode());
@@ -517,29 +817,30 @@ public class ClientHandler implements Runnable {
                         sendError("You are not in a lobby to broadcast UDP.");
                     }
                     break;
-                case "startgame":
+                case START_GAME:
                     handleStartGame();
                     break;
-                case "terminal":
+                case TERMINAL:
                     handleTerminalActivation(params.trim());
                     break;
-                case "getroles":
+                case GET_ROLES:
                     handleGetRoles();
                     break;
-                case "getresults":
-                    handleGetResults();
+                case GET_RESULTS:
+                    handleGetResults(params.trim());
                     break;
-                case "gethighscores":
+                case GET_HIGHSCORES:
                     handleGetHighscores();
                     break;
-                case "spectate":
+                case SPECTATE:
                     handleSpectate(params.split(":"));
                     break;
-                case "leavespectate":
+                case LEAVE_SPECTATE:
                     handleLeaveSpectate(params.split(":"));
                     break;
                 default:
-                    sendError("Unknown command: " + command);
+                    sendError("Unknown command: "
+                        + message.substring(0, colonIndex).toLowerCase());
             }
         } catch (Exception e) {
             sendError(lang.get("server.commError") + ": " + e.getMessage());
@@ -620,12 +921,19 @@ public class ClientHandler implements Runnable {
      * @return true if the nickname is already taken, false otherwise
      */
     private boolean isNicknameTaken(String nickname) {
-        for (ClientHandler client : clientList) {
-            if (client != this && client.nickname.equals(nickname)) {
-                return true;
-            }
-        }
-        return false;
+        ClientHandler client = clientList.findByNickname(nickname);
+        return client != null && client != this;
+    }
+
+    /**
+     * Changes the nickname of this client and updates the nickname index of the client list.
+     *
+     * @param newNickname The new nickname
+     */
+    private void setNickname(String newNickname) {
+        String oldNickname = nickname;
+        nickname = newNickname;
+        clientList.rename(this, oldNickname);
     }
 
     /**
@@ -652,16 +960,17 @@ public class ClientHandler implements Runnable {
             requestedNickname.length() > MAX_NAME_LENGTH ? requestedNickname.substring(0,
                 MAX_NAME_LENGTH) : requestedNickname;
 
-        this.nickname = generateUniqueNickname(requestedNickname);
+        setNickname(generateUniqueNickname(requestedNickname));
 
         if (!requestedNickname.equals(this.nickname)) {
             sendMessage(
                 "chat:" + lang.get("server.nicknameChosen") + this.nickname);
         }
 
+        sendMessage("udp_id:" + playerId);
         sendMessage("confirm:" + this.nickname);
         broadcast("chat:" + String.format(lang.get("server.connected"), this.nickname));
-        broadcastGlobalPlayerList();
+        directory.playersChanged();
 
         // check if player was in a game
         for (Lobby lobby : lobbyList) {
@@ -692,17 +1001,19 @@ public class ClientHandler implements Runnable {
         }
         player.setPositionWasSet(false);
         sendMessage("game_started:");
+        sendMessage(currentLobby.getPlayerIdsMessage());
+        resetAckedSnapshot();
 
+        // the event log is sent as soon as the client reports its first position
         logger.info("waiting for client...");
-        while (!clientReady) {
-            try {
-                Thread.sleep(100);
-
-            } catch (InterruptedException e) {
-                logger.error("Error", e);
-            }
-        }
+        eventLogPending = true;
+    }
 
+    /**
+     * Sends the event log, the caught players and the active stations of the current game to
+     * this client.
+     */
+    private void sendEventLog() {
         // send gamestate event log
         int counter = 0;
         for (String event : currentLobby.getGameState().getEventLog()) {
@@ -817,8 +1128,7 @@ public class ClientHandler implements Runnable {
                 Role role = target.getPlayer().getRole();
 
                 if (role == Role.GOAT) {
-                    target.getPlayer().getSpawnProtection().update();
-                    if (target.getPlayer().getSpawnProtection().getTime() < 5000) {
+                    if (target.getPlayer().getSpawnProtection().check()) {
                         sendMessage("chat:" + lang.get("server.spawnProt"));
                         return;
                     }
@@ -870,12 +1180,13 @@ public class ClientHandler implements Runnable {
                     + newNickname);
         }
 
-        this.nickname = newNickname;
+        setNickname(newNickname);
+        sendMessage("udp_id:" + playerId);
         sendMessage("confirm:" + this.nickname);
         broadcast(
             "chat:" + String.format(lang.get("server.nameChange"), oldNickname, newNickname));
         logger.info("User nickname changed");
-        broadcastGlobalPlayerList();
+        directory.playersChanged();
         if (currentLobby != null) {
             broadcastLobbyPlayerList();
         }
@@ -913,13 +1224,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        Lobby lobbyToJoin = null;
-        for (Lobby lobby : lobbyList) {
-            if (lobby.getCode() == code) {
-                lobbyToJoin = lobby;
-                break;
-            }
-        }
+        Lobby lobbyToJoin = lobbyList.findByCode(code);
 
         if (lobbyToJoin == null) {
             sendError(lang.get("server.codeError"));
@@ -952,7 +1257,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        int code = nextLobbyCode++;
+        int code = nextLobbyCode.getAndIncrement();
         Lobby newLobby = new Lobby(code);
         lobbyList.add(newLobby);
         newLobby.broadcastChatToLobby(
@@ -970,7 +1275,7 @@ public class ClientHandler implements Runnable {
         currentLobby.broadcastChatToLobby(
             String.format(lang.get("server.joinedLobby"), nickname, lobby.getCode()));
 
-        broadcastGetLobbiesToAll();
+        directory.lobbiesChanged();
         broadcastLobbyPlayerList();
     }
 
@@ -983,46 +1288,18 @@ public class ClientHandler implements Runnable {
             if (currentLobby.getMembers().isEmpty()) {
                 lobbyList.remove(currentLobby);
             }
-            broadcastGetLobbiesToAll();
+            directory.lobbiesChanged();
             broadcastLobbyPlayerList();
             currentLobby = null;
         }
     }
 
     private void handleGetLobbies() {
-        if (lobbyList.isEmpty()) {
-            sendMessage("getlobbies:");
-            return;
-        }
-
-        StringBuilder sb = new StringBuilder();
-        for (Lobby lobby : lobbyList) {
-            sb.append(lobby.getCode())
-                .append("=")
-                .append(lobby.getMembers().size())
-                .append("/")
-                .append(Lobby.MAX_PLAYERS)
-                .append(" [")
-                .append(lobby.getState().toString().toLowerCase())
-                .append("],");
-        }
-
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-
-        sendMessage("getlobbies:" + sb);
+        directory.sendLobbies(this);
     }
 
     private void handleGetPlayers() {
-        StringBuilder sb = new StringBuilder();
-        for (ClientHandler client : clientList) {
-            sb.append(client.nickname).append(",");
-        }
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-        sendMessage("getplayers:" + sb);
+        directory.sendPlayers(this);
     }
 
     private void handleGetLobbyPlayers() {
@@ -1061,7 +1338,7 @@ public class ClientHandler implements Runnable {
         this.setReady(status);
         if (currentLobby.getState() == LobbyState.FINISHED) {
             currentLobby.resetState();
-            broadcastGetLobbiesToAll();
+            directory.lobbiesChanged();
         }
         String statusMessage = "ready_status:" + this.nickname + "," + this.isReady;
         currentLobby.broadcastToAll(statusMessage);
@@ -1102,17 +1379,13 @@ public class ClientHandler implements Runnable {
     }
 
     private ClientHandler findPlayer(String name) {
-        for (ClientHandler client : clientList) {
-            if (client.nickname.equals(name)) {
-                return client;
-            }
-        }
-        return null;
+        return clientList.findByNickname(name);
     }
 
     private boolean isInRange(ClientHandler client, ClientHandler target) {
-        // to be implemented
-        return true;
+        Player player = client.getPlayer();
+        Player targetPlayer = target.getPlayer();
+        return player != null && targetPlayer != null && Interest.isInRange(player, targetPlayer);
     }
 
     /**
@@ -1121,13 +1394,22 @@ public class ClientHandler implements Runnable {
      */
     private void handlePong() {
         lastPongTime = System.currentTimeMillis();
+        long pingNanos = lastPingNanos;
+        if (pingNanos != 0) {
+            Metrics.PING_RTT.recordSince(pingNanos);
+            lastPingNanos = 0;
+        }
         //logger.info("Pong received from {}", nickname);
     }
 
     /**
      * Disconnects the client. Sends appropriate broadcast messages and closes resources.
      */
-    private void disconnect() {
+    void disconnect() {
+        if (!disconnected.compareAndSet(false, true)) {
+            return;
+        }
+        TrafficCapture.closed(captureId);
         try {
             leaveCurrentLobby();
 
@@ -1138,21 +1420,34 @@ public class ClientHandler implements Runnable {
                 broadcast("chat:" + String.format(lang.get("server.disconnected"), nickname));
                 logger.info("Client {} was disconnected", nickname);
             }
-            broadcastGlobalPlayerList();
+            directory.playersChanged();
 
             running = false;
             clientList.remove(this);
 
-            // close pingPong thread
-            try {
-                pingThread.join();
-            } catch (InterruptedException e) {
-                logger.error("Couldn't close ping Thread.", e);
+            // stop pingPong check
+            if (pingTask != null) {
+                pingTask.cancel();
+            }
+            if (pongTimeout != null) {
+                pongTimeout.cancel();
             }
 
+            if (connection != null) {
+                connection.close();
+            }
             if (in != null) {
                 in.close();
             }
+            if (outbound != null) {
+                // send what is left unless the client is the reason the queue is full
+                StringBuilder rest = new StringBuilder();
+                if (!slowClient.get() && outbound.drainTo(rest) && out != null) {
+                    out.write(rest.toString());
+                    out.flush();
+                }
+                outbound.close();
+            }
             if (out != null) {
                 out.close();
             }
@@ -1174,13 +1469,22 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Sends a message to the client.
+     * Sends a message to the client. The message is only queued, so this never blocks on the
+     * socket. A client that falls too far behind is disconnected, see {@link OutboundQueue}.
      *
      * @param message The message to send
      */
     void sendMessage(String message) {
-        if (out != null && !clientSocket.isClosed()) {
-            out.println(message);
+        boolean accepted = true;
+        if (connection != null) {
+            accepted = connection.send(message);
+        } else if (outbound != null) {
+            accepted = outbound.offer(message);
+        }
+        if (!accepted && slowClient.compareAndSet(false, true)) {
+            // not on the sending thread, it may be broadcasting to other clients
+            logger.warn("{} is too far behind, disconnecting", nickname);
+            ServerThreads.start("Client-Disconnect-" + playerId, this::disconnect);
         }
     }
 
@@ -1205,6 +1509,36 @@ public class ClientHandler implements Runnable {
             );
 
             serverUpdateSocket.send(packet);
+            Metrics.UDP_SENT.increment();
+        } catch (IOException e) {
+            logger.error("Send failed", e);
+        }
+    }
+
+    /**
+     * Sends a binary UDP packet to this specific client. While the UDP listener runs, the packet is
+     * sent through its channel to the endpoint the client registered, without allocating. Without
+     * a listener, e.g. in tests and benchmarks, it goes through the update socket.
+     *
+     * @param packet The packet, from its position to its limit. The position is advanced.
+     */
+    public void sendUpdate(ByteBuffer packet) {
+        InetSocketAddress endpoint = udpEndpoint;
+        if (endpoint == null || clientSocket == null || clientSocket.isClosed()) {
+            return;
+        }
+
+        try {
+            UdpServer server = udpServer;
+            if (server != null) {
+                server.send(packet, endpoint);
+            } else if (serverUpdateSocket != null) {
+                serverUpdateSocket.send(new DatagramPacket(packet.array(),
+                    packet.arrayOffset() + packet.position(), packet.remaining(), endpoint));
+            } else {
+                return;
+            }
+            Metrics.UDP_SENT.increment();
         } catch (IOException e) {
             logger.error("Send failed", e);
         }
@@ -1260,8 +1594,8 @@ public class ClientHandler implements Runnable {
             nickname);
 
         currentLobby.startGame();
-        player.getSpawnProtection().reset();
-        broadcastGetLobbiesToAll();
+        player.getSpawnProtection().start();
+        directory.lobbiesChanged();
 
         String gameStartedMessage = "game_started:";
         currentLobby.broadcastToAll(gameStartedMessage);
@@ -1269,18 +1603,42 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Helper method to find a ClientHandler by nickname.
+     * Gets the ID of this client used in binary UDP packets.
      *
-     * @param nickname The nickname to search for
-     * @return The ClientHandler with the matching nickname, or null if not found
+     * @return The player ID
      */
-    private static ClientHandler findClientHandlerByNickname(String nickname) {
-        for (ClientHandler handler : clientList) {
-            if (handler.nickname.equals(nickname)) {
-                return handler;
-            }
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Gets the sequence of the newest snapshot the client acknowledged, used as the baseline for
+     * the next delta update.
+     *
+     * @return The snapshot sequence or 0 if the client has none
+     */
+    int getAckedSnapshot() {
+        return ackedSnapshot;
+    }
+
+    /**
+     * Forgets the acknowledged snapshot, so the client gets a full snapshot next. Called whenever
+     * the client starts following a game.
+     */
+    void resetAckedSnapshot() {
+        ackedSnapshot = 0;
+    }
+
+    /**
+     * Records a snapshot acknowledgement. Acknowledgements older than the current one are ignored,
+     * since UDP packets can arrive out of order.
+     *
+     * @param sequence The acknowledged snapshot sequence
+     */
+    private void acknowledgeSnapshot(int sequence) {
+        if (sequence > ackedSnapshot) {
+            ackedSnapshot = sequence;
         }
-        return null;
     }
 
     /**
@@ -1292,20 +1650,66 @@ public class ClientHandler implements Runnable {
         return udpPort;
     }
 
-    private void handleGetResults() {
+    /**
+     * Handles the getresults command. Sends one page of finished games, one game per line with
+     * "&lt;br&gt;" between the lines. Format: getresults:[page] counts pages back from the most
+     * recent games, getresults:from-to selects games by number, starting with 1. Pages of recent
+     * games are served from memory right away, older pages are read from disk by the results
+     * reader, so the I/O thread never waits for the disk.
+     *
+     * @param params The requested page or range, empty for the most recent games
+     */
+    void handleGetResults(String params) {
         try {
-            Path logPath = Paths.get("finished_games.log");
-            if (!Files.exists(logPath)) {
+            GameLog gameLog = GameLog.shared();
+            int total = gameLog.size();
+            if (total == 0) {
                 sendMessage("results:No past results available.");
                 return;
             }
 
-            List<String> lines = Files.readAllLines(logPath);
-            StringBuilder sb = new StringBuilder();
-            for (String line : lines) {
-                sb.append(line).append("\n");
+            int from;
+            int count = RESULTS_PAGE_SIZE;
+            int dash = params.indexOf('-');
+            if (dash > 0) {
+                from = Integer.parseInt(params.substring(0, dash).trim()) - 1;
+                int to = Integer.parseInt(params.substring(dash + 1).trim());
+                count = Math.min(to - from, MAX_RESULTS);
+            } else {
+                int page = params.isEmpty() ? 0 : Integer.parseInt(params);
+                from = total - (page + 1) * RESULTS_PAGE_SIZE;
+                if (from < 0) {
+                    count += from;
+                    from = 0;
+                }
             }
-            sendMessage("results:" + sb);
+            if (count <= 0 || from < 0 || from >= total) {
+                sendMessage("results:No results in this range.");
+                return;
+            }
+
+            int pageStart = from;
+            int pageSize = count;
+            if (gameLog.isInMemory(pageStart)) {
+                sendResults(gameLog, pageStart, pageSize, total);
+            } else {
+                resultsReader.execute(() -> sendResults(gameLog, pageStart, pageSize, total));
+            }
+        } catch (NumberFormatException e) {
+            sendError("Invalid results page: " + params);
+        }
+    }
+
+    private void sendResults(GameLog gameLog, int from, int count, int total) {
+        try {
+            List<String> games = gameLog.read(from, count);
+            StringBuilder sb = new StringBuilder("results:Games ")
+                .append(from + 1).append('-').append(from + games.size())
+                .append(" of ").append(total);
+            for (String game : games) {
+                sb.append("<br>").append(game);
+            }
+            sendMessage(sb.toString());
         } catch (IOException e) {
             logger.error("Failed to read finished games", e);
             sendMessage("results:Error reading past results.");
@@ -1317,13 +1721,7 @@ public class ClientHandler implements Runnable {
      */
     private void handleGetHighscores() {
         try {
-            HighscoreManager.initialize();
-
-            String highscores = HighscoreManager.getHighscores();
-
-            String formattedHighscores = highscores.replace("\n", "<br>");
-
-            sendMessage("highscores:" + formattedHighscores);
+            sendMessage(HighscoreManager.getHighscoresMessage());
             logger.info("Sent highscores to client");
         } catch (Exception e) {
             logger.error("Failed to retrieve highscores", e);
@@ -1342,68 +1740,19 @@ public class ClientHandler implements Runnable {
 
             currentLobby.getGameState().gameOver = true;
             currentLobby.endGame();
-            broadcastGetLobbiesToAll();
+            directory.lobbiesChanged();
             currentLobby.broadcastToAll("gameover:" + result);
+            Metrics.GAMES_FINISHED.increment();
             long gameTime = currentLobby.getTimer().getTime();
-            logger.info("Game time: {} ms", gameTime);
             logger.info("Game finished in {}", currentLobby.getTimer().toString());
 
-            try {
-                HighscoreManager.initialize();
-
-                logger.info("Saving highscore with game time: {} ms", gameTime);
-
-                if (result) {
-                    for (ClientHandler m : currentLobby.getMembers()) {
-                        if (m.getPlayer().getRole() == Role.GUARD) {
-                            logger.info("Adding guard highscore for player: {}", m.nickname);
-                            HighscoreManager.addGuardHighscore(m.nickname, gameTime);
-                            break;
-                        }
-                    }
-                } else {
-                    StringBuilder goatNames = new StringBuilder();
-                    for (ClientHandler m : currentLobby.getMembers()) {
-                        if (m.getPlayer().getRole() == Role.GOAT
-                            || m.getPlayer().getRole() == Role.IGOAT) {
-                            if (!goatNames.isEmpty()) {
-                                goatNames.append(", ");
-                            }
-                            goatNames.append(m.nickname);
-                        }
-                    }
-                    logger.info("Adding goat highscore for players: {}", goatNames);
-                    HighscoreManager.addGoatHighscore(goatNames.toString(), gameTime);
-                }
-            } catch (Exception e) {
-                logger.error("Failed to save highscore", e);
-            }
-
-            try {
-                Path logPath = Paths.get("finished_games.log");
-                DateTimeFormatter fmt = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-                String timestamp = LocalDateTime.now().format(fmt);
-                StringBuilder sb = new StringBuilder();
-                sb.append("{\"timestamp\":\"").append(timestamp).append("\",");
-                sb.append("\"lobby\":").append(currentLobby.getCode()).append(',');
-                sb.append("\"result\":").append(result).append(',');
-                sb.append("\"players\":[");
-                for (ClientHandler m : currentLobby.getMembers()) {
-                    boolean win = (result && m.getPlayer().getRole() == Role.GUARD) || (!result
-                        && m.getPlayer().getRole() != Role.GUARD);
-                    sb.append("{\"name\":\"").append(m.nickname).append("\",")
-                        .append("\"role\":\"").append(m.getPlayer().getRole()).append("\",")
-                        .append("\"outcome\":\"").append(win ? "Won" : "Lost").append("\"},");
-                }
-                if (sb.charAt(sb.length() - 1) == ',') {
-                    sb.setLength(sb.length() - 1);
-                }
-                sb.append("]}\n");
-                Files.write(logPath, sb.toString().getBytes(StandardCharsets.UTF_8),
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                logger.error("Failed to write finished game", e);
+            List<GameResult.PlayerResult> players = new ArrayList<>();
+            for (ClientHandler m : currentLobby.getMembers()) {
+                players.add(new GameResult.PlayerResult(m.nickname, m.getPlayer().getRole()));
             }
+            // saved by the persistence stage, this may be the UDP listener or a lobby thread
+            PersistenceStage.shared().enqueue(new GameResult(LocalDateTime.now(),
+                currentLobby.getCode(), result, gameTime, players));
         }
     }
 
@@ -1436,7 +1785,7 @@ public class ClientHandler implements Runnable {
                         player.getPlayer().revive();
                         player.getPlayer().teleport(920, 230);
                         currentLobby.broadcastToAll("revive:" + player.getNickname());
-                        player.getPlayer().getSpawnProtection().reset();
+                        player.getPlayer().getSpawnProtection().start();
                     }
                 }
             } else {
@@ -1461,13 +1810,12 @@ public class ClientHandler implements Runnable {
         }
         String recipient = params[0];
         String msg = params[1];
-        for (ClientHandler client : clientList) {
-            if (client.nickname.equals(recipient)) {
-                client.sendMessage("chat:[" + nickname + " whispered] " + msg);
-                return;
-            }
+        ClientHandler client = clientList.findByNickname(recipient);
+        if (client == null) {
+            sendError("User " + recipient + " not found");
+            return;
         }
-        sendError("User " + recipient + " not found");
+        client.sendMessage("chat:[" + nickname + " whispered] " + msg);
     }
 
     /**
@@ -1479,47 +1827,6 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    /**
-     * Broadcasts the list of lobbies to all clients.
-     */
-    private static void broadcastGetLobbiesToAll() {
-        StringBuilder sb = new StringBuilder();
-        for (Lobby lobby : lobbyList) {
-            sb.append(lobby.getCode())
-                .append("=")
-                .append(lobby.getMembers().size())
-                .append("/")
-                .append(Lobby.MAX_PLAYERS)
-                .append(" [")
-                .append(lobby.getState().toString().toLowerCase())
-                .append("],");
-        }
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-        String msg = "getlobbies:" + sb;
-        for (ClientHandler client : clientList) {
-            client.sendMessage(msg);
-        }
-    }
-
-    /**
-     * Broadcasts the global player list to all clients.
-     */
-    private static void broadcastGlobalPlayerList() {
-        StringBuilder sb = new StringBuilder();
-        for (ClientHandler client : clientList) {
-            sb.append(client.getNickname()).append(",");
-        }
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-        String update = "getplayers:" + sb;
-        for (ClientHandler client : clientList) {
-            client.sendMessage(update);
-        }
-    }
-
     /**
      * Broadcasts the list of players in the current lobby to its members.
      */
@@ -1560,8 +1867,7 @@ public class ClientHandler implements Runnable {
         }
 
         if (target.getPlayer().getRole() == Role.GOAT) {
-            target.getPlayer().getSpawnProtection().update();
-            if (target.getPlayer().getSpawnProtection().getTime() < 5000) {
+            if (target.getPlayer().getSpawnProtection().check()) {
                 return;
             }
 
@@ -1650,13 +1956,7 @@ public class ClientHandler implements Runnable {
             sendMessage("lobby:0");
             return;
         }
-        Lobby lobbyToSpectate = null;
-        for (Lobby lobby : lobbyList) {
-            if (lobby.getCode() == code) {
-                lobbyToSpectate = lobby;
-                break;
-            }
-        }
+        Lobby lobbyToSpectate = lobbyList.findByCode(code);
         if (lobbyToSpectate == null) {
             sendError(lang.get("server.codeError"));
             sendMessage("lobby:0");
@@ -1665,6 +1965,7 @@ public class ClientHandler implements Runnable {
         this.isSpectator = true;
         this.currentLobby = lobbyToSpectate;
         lobbyToSpectate.addSpectator(this);
+        sendMessage(lobbyToSpectate.getPlayerIdsMessage());
         if (lobbyToSpectate.getGameState() != null) {
             for (String event : lobbyToSpectate.getGameState().getEventLog()) {
                 sendMessage(event);
@@ -0,0 +1,86 @@
+package igoat.server;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All connected clients, indexed by nickname, player ID and UDP endpoint.
+ */
+final class ClientRegistry extends Registry<ClientHandler> {
+
+    private final Map<String, ClientHandler> byNickname = new ConcurrentHashMap<>();
+    private final Map<Integer, ClientHandler> byId = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, ClientHandler> byEndpoint = new ConcurrentHashMap<>();
+
+    @Override
+    protected void index(ClientHandler client) {
+        byNickname.put(client.getNickname(), client);
+        byId.put(client.getPlayerId(), client);
+        InetSocketAddress endpoint = client.udpEndpoint;
+        if (endpoint != null) {
+            byEndpoint.put(endpoint, client);
+        }
+    }
+
+    @Override
+    protected void unindex(ClientHandler client) {
+        if (!byNickname.remove(client.getNickname(), client)) {
+            // the nickname was changed without renaming the entry
+            byNickname.values().remove(client);
+        }
+        byId.remove(client.getPlayerId(), client);
+        InetSocketAddress endpoint = client.udpEndpoint;
+        if (endpoint != null) {
+            byEndpoint.remove(endpoint, client);
+        }
+    }
+
+    /**
+     * Updates the nickname index after a client changed its nickname.
+     *
+     * @param client      The client
+     * @param oldNickname The previous nickname
+     */
+    void rename(ClientHandler client, String oldNickname) {
+        if (!contains(client)) {
+            return;
+        }
+        byNickname.remove(oldNickname, client);
+        byNickname.put(client.getNickname(), client);
+    }
+
+    /**
+     * Sets the UDP endpoint of a client and indexes the client by it.
+     *
+     * @param client   The client
+     * @param endpoint The IP address and port the client sends and receives UDP packets on
+     */
+    void registerEndpoint(ClientHandler client, InetSocketAddress endpoint) {
+        InetSocketAddress previous = client.udpEndpoint;
+        client.udpEndpoint = endpoint;
+        if (previous != null) {
+            byEndpoint.remove(previous, client);
+        }
+        if (contains(client)) {
+            byEndpoint.put(endpoint, client);
+            if (!contains(client)) {
+                // removed concurrently, unindex might have missed the new endpoint
+                byEndpoint.remove(endpoint, client);
+            }
+        }
+    }
+
+    ClientHandler findByNickname(String nickname) {
+        return byNickname.get(nickname);
+    }
+
+    ClientHandler findById(int id) {
+        return byId.get(id);
+    }
+
+    ClientHandler findByEndpoint(SocketAddress endpoint) {
+        return byEndpoint.get(endpoint);
+    }
+}
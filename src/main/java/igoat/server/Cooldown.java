@@ -1,23 +1,36 @@
 package igoat.server;
 
-import igoat.Timer;
-
 /**
- * A class for tracking cooldowns
+ * A class for tracking cooldowns. The end of a cooldown is scheduled on the server timing wheel,
+ * so checking it is just a field read.
  */
 public class Cooldown {
 
-    private final Timer timer = new Timer();
     private final long coolDownTime;
+    private volatile boolean active = false;
+    private TimingWheel.Timeout expiry;
+    private int generation = 0;
 
     /**
-     * Constructor for Cooldown
+     * Constructor for Cooldown. The cooldown is started immediately.
      *
      * @param cooldownTime Cooldown time
      */
     public Cooldown(long cooldownTime) {
+        this(cooldownTime, true);
+    }
+
+    /**
+     * Constructor for Cooldown
+     *
+     * @param cooldownTime Cooldown time
+     * @param start        whether the cooldown should be started immediately
+     */
+    public Cooldown(long cooldownTime, boolean start) {
         this.coolDownTime = cooldownTime;
-        timer.reset();
+        if (start) {
+            start();
+        }
     }
 
     /**
@@ -26,14 +39,25 @@ public class Cooldown {
      * @return true if the cooldown is still active, false otherwise
      */
     public boolean check() {
-        timer.update();
-        return timer.getTime() < coolDownTime;
+        return active;
     }
 
     /**
-     * Starts the cooldown
+     * Starts the cooldown. A running cooldown is restarted.
      */
-    public void start() {
-        timer.reset();
+    public synchronized void start() {
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        int current = ++generation;
+        active = true;
+        expiry = TimingWheel.getInstance().schedule(() -> expire(current), coolDownTime);
+    }
+
+    private synchronized void expire(int expired) {
+        // ignore the expiry of a cooldown that was restarted in the meantime
+        if (expired == generation) {
+            active = false;
+        }
     }
 }
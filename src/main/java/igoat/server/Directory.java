@@ -0,0 +1,163 @@
+package igoat.server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the lobby list and the player list that are shown on the lobby screen.
+ * <p>
+ * Both lists are serialized once per change and shared by all clients. Changes only mark a list
+ * as outdated; the new version is published to the clients after a short delay, so a burst of
+ * joins and leaves results in a single broadcast. Every client remembers the version it has, and
+ * clients that already have the current one are skipped. Reading a list, updating the version of
+ * the client and queueing the message happen under the lock of the directory, so a client never
+ * gets an older list after a newer one.
+ * </p>
+ */
+final class Directory {
+
+    private static final Logger logger = LoggerFactory.getLogger(Directory.class);
+
+    /**
+     * Delay in ms between the first change and the broadcast of the new lists
+     */
+    static final long PUBLISH_DELAY = Math.max(0, Long.getLong("igoat.directoryDelay", 50));
+
+    /**
+     * A serialized list together with its version
+     */
+    private record Listing(long version, String message) {
+
+    }
+
+    private final ClientRegistry clients;
+    private final LobbyRegistry lobbies;
+    private final AtomicBoolean lobbiesChanged = new AtomicBoolean(true);
+    private final AtomicBoolean playersChanged = new AtomicBoolean(true);
+    private final AtomicBoolean publishScheduled = new AtomicBoolean(false);
+    private volatile Listing lobbyListing = new Listing(0, "getlobbies:");
+    private volatile Listing playerListing = new Listing(0, "getplayers:");
+
+    /**
+     * Creates a directory of the given clients and lobbies.
+     *
+     * @param clients All connected clients
+     * @param lobbies All lobbies
+     */
+    Directory(ClientRegistry clients, LobbyRegistry lobbies) {
+        this.clients = clients;
+        this.lobbies = lobbies;
+    }
+
+    /**
+     * Marks the lobby list as outdated, e.g. because a lobby was created or its state changed.
+     */
+    void lobbiesChanged() {
+        lobbiesChanged.set(true);
+        schedulePublish();
+    }
+
+    /**
+     * Marks the player list as outdated, e.g. because a client connected or changed its name.
+     */
+    void playersChanged() {
+        playersChanged.set(true);
+        schedulePublish();
+    }
+
+    /**
+     * Sends the current lobby list to a client that asked for it.
+     *
+     * @param client The client
+     */
+    synchronized void sendLobbies(ClientHandler client) {
+        Listing listing = currentLobbies();
+        client.lobbiesVersion = listing.version();
+        client.sendMessage(listing.message());
+    }
+
+    /**
+     * Sends the current player list to a client that asked for it.
+     *
+     * @param client The client
+     */
+    synchronized void sendPlayers(ClientHandler client) {
+        Listing listing = currentPlayers();
+        client.playersVersion = listing.version();
+        client.sendMessage(listing.message());
+    }
+
+    private void schedulePublish() {
+        if (publishScheduled.compareAndSet(false, true)) {
+            TimingWheel.getInstance().schedule(this::publish, PUBLISH_DELAY);
+        }
+    }
+
+    /**
+     * Sends the lists to every client that doesn't have the current version yet.
+     */
+    synchronized void publish() {
+        publishScheduled.set(false);
+        Listing lobbyList = currentLobbies();
+        Listing playerList = currentPlayers();
+        int sent = 0;
+        for (ClientHandler client : clients) {
+            if (client.lobbiesVersion != lobbyList.version()) {
+                client.lobbiesVersion = lobbyList.version();
+                client.sendMessage(lobbyList.message());
+                sent++;
+            }
+            if (client.playersVersion != playerList.version()) {
+                client.playersVersion = playerList.version();
+                client.sendMessage(playerList.message());
+                sent++;
+            }
+        }
+        logger.debug("Published lobby list {} and player list {} with {} messages",
+            lobbyList.version(), playerList.version(), sent);
+    }
+
+    private synchronized Listing currentLobbies() {
+        if (lobbiesChanged.getAndSet(false)) {
+            StringBuilder sb = new StringBuilder("getlobbies:");
+            for (Lobby lobby : lobbies) {
+                sb.append(lobby.getCode())
+                    .append("=")
+                    .append(lobby.getMembers().size())
+                    .append("/")
+                    .append(Lobby.MAX_PLAYERS)
+                    .append(" [")
+                    .append(lobby.getState().toString().toLowerCase())
+                    .append("],");
+            }
+            lobbyListing = next(lobbyListing, sb, "getlobbies:".length());
+        }
+        return lobbyListing;
+    }
+
+    private synchronized Listing currentPlayers() {
+        if (playersChanged.getAndSet(false)) {
+            StringBuilder sb = new StringBuilder("getplayers:");
+            for (ClientHandler client : clients) {
+                sb.append(client.getNickname()).append(",");
+            }
+            playerListing = next(playerListing, sb, "getplayers:".length());
+        }
+        return playerListing;
+    }
+
+    /**
+     * Creates the next version of a listing, or keeps the old one if nothing actually changed.
+     */
+    private static Listing next(Listing old, StringBuilder sb, int prefixLength) {
+        if (sb.length() > prefixLength) {
+            sb.setLength(sb.length() - 1); // trailing comma
+        }
+        String message = sb.toString();
+        if (message.equals(old.message())) {
+            return old;
+        }
+        return new Listing(old.version() + 1, message);
+    }
+}
@@ -0,0 +1,346 @@
+package igoat.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of the finished games, one JSON line per game.
+ * <p>
+ * The log is split into segments of {@link #GAMES_PER_SEGMENT} games. Next to every segment an
+ * index file holds the byte offset of each game as a long, so any range of games can be read
+ * without scanning the log. The most recent games are also kept in memory. Reading a page
+ * therefore costs the same no matter how many games were played.
+ * </p>
+ */
+final class GameLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(GameLog.class);
+
+    /**
+     * Number of games per segment file
+     */
+    static final int GAMES_PER_SEGMENT = Math.max(1, Integer.getInteger("igoat.gamesPerSegment",
+        10000));
+    /**
+     * Number of recent games kept in memory
+     */
+    static final int RECENT_GAMES = 100;
+
+    private static final Path DIRECTORY = Paths.get("finished_games");
+    // the single file written by older versions, imported on the first start
+    private static final Path LEGACY_LOG = Paths.get("finished_games.log");
+
+    private final Path directory;
+    private final int gamesPerSegment;
+    private final String[] recent;
+    // guarded by this
+    private int size = 0;
+    private FileChannel log;
+    private FileChannel index;
+    private final ByteBuffer offsetBuffer = ByteBuffer.allocate(Long.BYTES);
+
+    /**
+     * Creates a log in the given directory. The log can't be used until it is opened.
+     *
+     * @param directory       Directory of the segment files
+     * @param gamesPerSegment Number of games per segment
+     * @param recentGames     Number of recent games kept in memory
+     */
+    GameLog(Path directory, int gamesPerSegment, int recentGames) {
+        this.directory = directory;
+        this.gamesPerSegment = gamesPerSegment;
+        this.recent = new String[recentGames];
+    }
+
+    private static final class Holder {
+
+        static final GameLog INSTANCE = open(new GameLog(DIRECTORY, GAMES_PER_SEGMENT,
+            RECENT_GAMES));
+
+        private static GameLog open(GameLog gameLog) {
+            try {
+                gameLog.open();
+                gameLog.importLegacyLog(LEGACY_LOG);
+            } catch (IOException e) {
+                logger.error("Could not open the finished games log", e);
+            }
+            return gameLog;
+        }
+    }
+
+    /**
+     * Gets the log of the server, opening it on the first call.
+     *
+     * @return The shared log
+     */
+    static GameLog shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Opens the last segment and loads the recent games. The index of the last segment is rebuilt
+     * from the log, so a crash between writing the log and the index loses nothing, and an
+     * incomplete last line is removed.
+     *
+     * @throws IOException if the files can't be read or written
+     */
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        int segment = 0;
+        while (Files.exists(logPath(segment + 1))) {
+            segment++;
+        }
+        openSegment(segment);
+        size = segment * gamesPerSegment + rebuildIndex();
+
+        int first = Math.max(0, size - recent.length);
+        List<String> games = readFromDisk(first, size - first);
+        for (int i = 0; i < games.size(); i++) {
+            recent[(first + i) % recent.length] = games.get(i);
+        }
+        logger.info("Finished games log has {} games", size);
+    }
+
+    /**
+     * Imports the single log file of older versions if this log is still empty. The old file is
+     * renamed afterwards.
+     *
+     * @param legacyLog The old log file
+     * @throws IOException if a file can't be read or written
+     */
+    synchronized void importLegacyLog(Path legacyLog) throws IOException {
+        if (size > 0 || !Files.exists(legacyLog)) {
+            return;
+        }
+        int imported = 0;
+        for (String line : Files.readAllLines(legacyLog, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                append(line);
+                imported++;
+            }
+        }
+        Files.move(legacyLog, legacyLog.resolveSibling(legacyLog.getFileName() + ".imported"),
+            StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Imported {} games from {}", imported, legacyLog);
+    }
+
+    /**
+     * Appends a game to the log, starting a new segment if the current one is full.
+     *
+     * @param record The game as a single line of JSON
+     * @throws IOException if the files can't be written
+     */
+    synchronized void append(String record) throws IOException {
+        if (size > 0 && size % gamesPerSegment == 0) {
+            closeSegment();
+            openSegment(size / gamesPerSegment);
+        }
+        long offset = log.size();
+        ByteBuffer line = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            log.write(line, offset + line.position());
+        }
+        offsetBuffer.clear();
+        offsetBuffer.putLong(offset).flip();
+        while (offsetBuffer.hasRemaining()) {
+            index.write(offsetBuffer);
+        }
+        recent[size % recent.length] = record;
+        size++;
+    }
+
+    /**
+     * Gets the number of games in the log.
+     *
+     * @return The number of games
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether games from the given one up to the last game are kept in memory, so reading
+     * them doesn't touch the disk.
+     *
+     * @param from Number of the first game, 0 is the oldest one
+     * @return true if {@link #read} won't read from disk for this game and newer ones
+     */
+    synchronized boolean isInMemory(int from) {
+        return from >= size - recent.length;
+    }
+
+    /**
+     * Reads a range of games. Recent games come from memory, older games are located with the
+     * index of their segment.
+     *
+     * @param from  Number of the first game, 0 is the oldest one
+     * @param count Maximum number of games
+     * @return The games in the order they were played, fewer if the range ends after the last game
+     * @throws IOException if the files can't be read
+     */
+    List<String> read(int from, int count) throws IOException {
+        List<String> fromMemory = new ArrayList<>();
+        int end;
+        int firstInMemory;
+        synchronized (this) {
+            from = Math.max(0, from);
+            end = (int) Math.min(size, (long) from + Math.max(0, count));
+            firstInMemory = Math.max(from, size - recent.length);
+            for (int game = firstInMemory; game < end; game++) {
+                fromMemory.add(recent[game % recent.length]);
+            }
+        }
+        // older games are never changed, so they can be read without holding the lock
+        List<String> games = readFromDisk(from, Math.min(end, firstInMemory) - from);
+        games.addAll(fromMemory);
+        return games;
+    }
+
+    /**
+     * Forces the current segment and its index to disk.
+     *
+     * @throws IOException if the files can't be written
+     */
+    synchronized void sync() throws IOException {
+        if (log != null) {
+            log.force(false);
+            index.force(false);
+        }
+    }
+
+    /**
+     * Closes the files of the current segment.
+     */
+    synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            logger.error("Could not close the finished games log", e);
+        }
+    }
+
+    private List<String> readFromDisk(int from, int count) throws IOException {
+        List<String> games = new ArrayList<>(Math.max(0, count));
+        int game = from;
+        int end = from + count;
+        while (game < end) {
+            int segment = game / gamesPerSegment;
+            int first = game % gamesPerSegment;
+            int last = Math.min(end - segment * gamesPerSegment, gamesPerSegment);
+            readSegment(segment, first, last, games);
+            game = segment * gamesPerSegment + last;
+        }
+        return games;
+    }
+
+    /**
+     * Reads the games from first (inclusive) to last (exclusive) of a segment.
+     */
+    private void readSegment(int segment, int first, int last, List<String> games)
+        throws IOException {
+        try (FileChannel logFile = FileChannel.open(logPath(segment), StandardOpenOption.READ);
+            FileChannel indexFile = FileChannel.open(indexPath(segment),
+                StandardOpenOption.READ)) {
+            ByteBuffer offsets = ByteBuffer.allocate(Long.BYTES * (last - first + 1));
+            readFully(indexFile, offsets, (long) first * Long.BYTES);
+            offsets.flip();
+            long start = offsets.getLong(0);
+            long stop = offsets.limit() > (last - first) * Long.BYTES
+                ? offsets.getLong((last - first) * Long.BYTES) : logFile.size();
+            ByteBuffer bytes = ByteBuffer.allocate((int) (stop - start));
+            readFully(logFile, bytes, start);
+            String text = new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+            int lineStart = 0;
+            for (int i = first; i < last; i++) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                games.add(text.substring(lineStart, lineEnd));
+                lineStart = lineEnd + 1;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index of the current segment from its log.
+     *
+     * @return The number of games in the segment
+     */
+    private int rebuildIndex() throws IOException {
+        ByteArrayOutputStream offsets = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer offset = ByteBuffer.allocate(Long.BYTES);
+        long position = 0;
+        long lineStart = 0;
+        int games = 0;
+        log.position(0);
+        int read;
+        while ((read = log.read(buffer)) != -1) {
+            buffer.flip();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    offsets.write(offset.putLong(0, lineStart).array(), 0, Long.BYTES);
+                    lineStart = position + i + 1;
+                    games++;
+                }
+            }
+            position += read;
+            buffer.clear();
+        }
+        if (lineStart < position) {
+            logger.warn("Removing an incomplete game at the end of the finished games log");
+            log.truncate(lineStart);
+        }
+        index.truncate(0);
+        ByteBuffer indexBytes = ByteBuffer.wrap(offsets.toByteArray());
+        while (indexBytes.hasRemaining()) {
+            index.write(indexBytes);
+        }
+        return games;
+    }
+
+    private void openSegment(int segment) throws IOException {
+        log = FileChannel.open(logPath(segment), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath(segment), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeSegment() throws IOException {
+        if (log != null) {
+            log.close();
+            index.close();
+            log = null;
+            index = null;
+        }
+    }
+
+    private Path logPath(int segment) {
+        return directory.resolve(String.format("finished_games-%05d.log", segment));
+    }
+
+    private Path indexPath(int segment) {
+        return directory.resolve(String.format("finished_games-%05d.idx", segment));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                break;
+            }
+            position += read;
+        }
+    }
+}
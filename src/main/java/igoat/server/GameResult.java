@@ -0,0 +1,103 @@
+package igoat.server;
+
+import igoat.Role;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * The result of a finished game, as it is saved by the {@link PersistenceStage}. Captured when the
+ * game ends, so it doesn't change if players leave or the lobby starts a new game afterwards.
+ *
+ * @param timestamp When the game ended
+ * @param lobbyCode The code of the lobby
+ * @param guardWon  true if the guard won, false if the goats escaped
+ * @param gameTime  Duration of the game in ms
+ * @param players   The players and their roles
+ */
+public record GameResult(LocalDateTime timestamp, int lobbyCode, boolean guardWon, long gameTime,
+                         List<PlayerResult> players) {
+
+    /**
+     * A player of a finished game.
+     *
+     * @param name The nickname
+     * @param role The role the player had
+     */
+    public record PlayerResult(String name, Role role) {
+
+        /**
+         * Checks whether the player won the game.
+         *
+         * @param guardWon true if the guard won
+         * @return true if the player was on the winning side
+         */
+        public boolean won(boolean guardWon) {
+            return guardWon == (role == Role.GUARD);
+        }
+    }
+
+    /**
+     * Creates a result. The list of players is copied.
+     */
+    public GameResult {
+        players = List.copyOf(players);
+    }
+
+    /**
+     * Gets the name of the guard, who gets the highscore if the guard won.
+     *
+     * @return The name or null if there was no guard
+     */
+    public String guardName() {
+        for (PlayerResult player : players) {
+            if (player.role() == Role.GUARD) {
+                return player.name();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the names of the goats and the iGOAT, who get the highscore if they escaped.
+     *
+     * @return The names separated by ", "
+     */
+    public String goatNames() {
+        StringBuilder names = new StringBuilder();
+        for (PlayerResult player : players) {
+            if (player.role() == Role.GOAT || player.role() == Role.IGOAT) {
+                if (!names.isEmpty()) {
+                    names.append(", ");
+                }
+                names.append(player.name());
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * Formats the result as a line of the finished games log.
+     *
+     * @return The result as JSON, without line break
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"timestamp\":\"")
+            .append(timestamp.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append("\",");
+        sb.append("\"lobby\":").append(lobbyCode).append(',');
+        sb.append("\"result\":").append(guardWon).append(',');
+        sb.append("\"players\":[");
+        for (PlayerResult player : players) {
+            sb.append("{\"name\":\"").append(player.name()).append("\",")
+                .append("\"role\":\"").append(player.role()).append("\",")
+                .append("\"outcome\":\"").append(player.won(guardWon) ? "Won" : "Lost")
+                .append("\"},");
+        }
+        if (sb.charAt(sb.length() - 1) == ',') {
+            sb.setLength(sb.length() - 1);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
@@ -19,6 +19,8 @@ public class GameState {
     private final List<ClientHandler> players;
     private final List<String> eventLog;
     private final boolean doorsOpen = false;
+    // set together with the "door" event, read by the lobby tick
+    private volatile boolean doorsAnnounced = false;
 
     public boolean gameOver = false;
 
@@ -80,6 +82,7 @@ public class GameState {
         }
         if (!eventLog.contains("door")) {
             eventLog.add("door");
+            doorsAnnounced = true;
         }
 
         return true;
@@ -91,6 +94,7 @@ public class GameState {
     public void openDoors() {
         if (!eventLog.contains("door")) {
             eventLog.add("door");
+            doorsAnnounced = true;
         }
         for (int id : ids) {
             terminals[id] = true;
@@ -112,6 +116,40 @@ public class GameState {
         return true;
     }
 
+    /**
+     * Checks whether the doors were opened, without checking the terminals again
+     *
+     * @return True if the doors are open
+     */
+    public boolean areDoorsAnnounced() {
+        return doorsAnnounced;
+    }
+
+    /**
+     * Gets the active terminals as a bit mask, bit i is set if terminal i is active. Only the
+     * first 16 terminals are included.
+     */
+    public int getTerminalMask() {
+        return toMask(terminals);
+    }
+
+    /**
+     * Gets the active stations as a bit mask, bit i is set if station i is active
+     */
+    public int getStationMask() {
+        return toMask(stations);
+    }
+
+    private static int toMask(boolean[] values) {
+        int mask = 0;
+        for (int i = 0; i < values.length && i < 16; i++) {
+            if (values[i]) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
     /**
      * Return the status for the stations
      */
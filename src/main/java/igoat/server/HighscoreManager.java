@@ -1,25 +1,21 @@
 package igoat.server;
 
-import igoat.Timer;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Simple highscore manager for the game
+ * <p>
+ * The highscores are loaded once and kept in memory, so new highscores and the highscore list
+ * don't touch the files. New highscores of finished games are added by the
+ * {@link PersistenceStage}, so the files are only written by its writer thread.
+ * </p>
  */
 public class HighscoreManager {
 
@@ -32,30 +28,39 @@ public class HighscoreManager {
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(
         "yyyy-MM-dd HH:mm");
 
+    private static final Leaderboard guards = new Leaderboard(Paths.get(GUARD_HIGHSCORE_FILE),
+        MAX_HIGHSCORES, "No guard highscores yet.\n");
+    private static final Leaderboard goats = new Leaderboard(Paths.get(GOAT_HIGHSCORE_FILE),
+        MAX_HIGHSCORES, "No goat highscores yet.\n");
+    private static volatile String highscores;
+    private static volatile String highscoresMessage;
+    private static volatile boolean initialized = false;
+
     /**
-     * Initialize the highscore system
+     * Initialize the highscore system: creates the files if necessary and loads the highscores.
+     * Only the first call has an effect.
      */
     public static void initialize() {
-        try {
-            Path dirPath = Paths.get(HIGHSCORE_DIR);
-            if (!Files.exists(dirPath)) {
-                Files.createDirectories(dirPath);
-                logger.info("Created highscores directory");
-            }
-
-            File guardFile = new File(GUARD_HIGHSCORE_FILE);
-            if (!guardFile.exists()) {
-                guardFile.createNewFile();
-                logger.info("Created guard highscores file");
+        if (initialized) {
+            return;
+        }
+        synchronized (HighscoreManager.class) {
+            if (initialized) {
+                return;
             }
-
-            File goatFile = new File(GOAT_HIGHSCORE_FILE);
-            if (!goatFile.exists()) {
-                goatFile.createNewFile();
-                logger.info("Created goat highscores file");
+            try {
+                Path dirPath = Paths.get(HIGHSCORE_DIR);
+                if (!Files.exists(dirPath)) {
+                    Files.createDirectories(dirPath);
+                    logger.info("Created highscores directory");
+                }
+                guards.load();
+                goats.load();
+            } catch (IOException e) {
+                logger.error("Error initializing highscore system", e);
             }
-        } catch (IOException e) {
-            logger.error("Error initializing highscore system", e);
+            render();
+            initialized = true;
         }
     }
 
@@ -63,226 +68,58 @@ public class HighscoreManager {
      * Add a guard highscore
      */
     public static void addGuardHighscore(String guardName, long timeInMs) {
-        try {
-            String entry = guardName + "," + timeInMs + "," +
-                LocalDateTime.now().format(DATE_FORMAT);
-
-            List<String> entries = new ArrayList<>();
-            File file = new File(GUARD_HIGHSCORE_FILE);
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        entries.add(line);
-                    }
-                }
-            }
-
-            entries.add(entry);
-
-            Collections.sort(entries, (a, b) -> {
-                long timeA = Long.parseLong(a.split(",")[1]);
-                long timeB = Long.parseLong(b.split(",")[1]);
-                return Long.compare(timeA, timeB);
-            });
-
-            if (entries.size() > MAX_HIGHSCORES) {
-                entries = entries.subList(0, MAX_HIGHSCORES);
-            }
-
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                for (String line : entries) {
-                    writer.write(line);
-                    writer.newLine();
-                }
-            }
-
-            logger.info("Added new highscore for {}: {}", guardName, timeInMs);
-        } catch (Exception e) {
-            logger.error("Error adding guard highscore", e);
-        }
+        add(guards, guardName, timeInMs);
     }
 
     /**
      * Add a goat highscore
      */
     public static void addGoatHighscore(String goatNames, long timeInMs) {
-        try {
-            String entry = goatNames + "," + timeInMs + "," +
-                LocalDateTime.now().format(DATE_FORMAT);
-
-            List<String> entries = new ArrayList<>();
-            File file = new File(GOAT_HIGHSCORE_FILE);
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        entries.add(line);
-                    }
-                }
-            }
-
-            entries.add(entry);
-
-            Collections.sort(entries, (a, b) -> {
-                try {
-                    int lastCommaA = a.lastIndexOf(",");
-                    int lastCommaB = b.lastIndexOf(",");
-
-                    String withoutDateA = a.substring(0, lastCommaA);
-                    String withoutDateB = b.substring(0, lastCommaB);
-
-                    int timeCommaA = withoutDateA.lastIndexOf(",");
-                    int timeCommaB = withoutDateB.lastIndexOf(",");
-
-                    long timeA = Long.parseLong(withoutDateA.substring(timeCommaA + 1).trim());
-                    long timeB = Long.parseLong(withoutDateB.substring(timeCommaB + 1).trim());
-
-                    return Long.compare(timeA, timeB);
-                } catch (Exception e) {
-                    logger.warn("Error comparing goat highscore entries", e);
-                    return 0;
-                }
-            });
-
-            if (entries.size() > MAX_HIGHSCORES) {
-                entries = entries.subList(0, MAX_HIGHSCORES);
-            }
-
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                for (String line : entries) {
-                    writer.write(line);
-                    writer.newLine();
-                }
-            }
+        add(goats, goatNames, timeInMs);
+    }
 
-            logger.info("Added new highscore for {}: {}", goatNames, timeInMs);
-        } catch (Exception e) {
-            logger.error("Error adding goat highscore", e);
+    private static void add(Leaderboard leaderboard, String names, long timeInMs) {
+        initialize();
+        Leaderboard.Entry entry = new Leaderboard.Entry(names, timeInMs,
+            LocalDateTime.now().format(DATE_FORMAT));
+        long sequence = leaderboard.add(entry);
+        if (sequence == -1) {
+            return;
         }
+        render();
+        Metrics.HIGHSCORES_ADDED.increment();
+        try {
+            leaderboard.append(entry, sequence);
+        } catch (IOException e) {
+            logger.error("Error saving highscore", e);
+        }
+        logger.info("Added new highscore for {}: {}", names, timeInMs);
     }
 
     /**
      * Get all highscores as a formatted string
      */
     public static String getHighscores() {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("=== GUARD HIGHSCORES (Fastest Wins) ===\n");
-        sb.append("----------------------------------------\n");
-
-        List<String> guardEntries = new ArrayList<>();
-        try {
-            File file = new File(GUARD_HIGHSCORE_FILE);
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        guardEntries.add(line);
-                    }
-                }
-            }
-
-            Collections.sort(guardEntries, (a, b) -> {
-                try {
-                    long timeA = Long.parseLong(a.split(",")[1]);
-                    long timeB = Long.parseLong(b.split(",")[1]);
-                    return Long.compare(timeA, timeB);
-                } catch (Exception e) {
-                    return 0;
-                }
-            });
-
-            if (guardEntries.isEmpty()) {
-                sb.append("No guard highscores yet.\n");
-            } else {
-                for (int i = 0; i < Math.min(guardEntries.size(), 10); i++) {
-                    try {
-                        String[] parts = guardEntries.get(i).split(",");
-                        if (parts.length >= 3) {
-                            String name = parts[0];
-                            long time = Long.parseLong(parts[1]);
-                            String date = parts[2];
-
-                            double[] minSec = Timer.convertToMinSec(time);
-                            String formattedTime = String.format("%.0f:%05.2f", minSec[0],
-                                minSec[1]);
-
-                            sb.append(String.format("%d. %s - Time: %s - Date: %s\n", i + 1, name,
-                                formattedTime, date));
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Error parsing guard highscore entry: {}", guardEntries.get(i));
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Error reading guard highscores", e);
-            sb.append("Error reading guard highscores.\n");
-        }
-
-        sb.append("\n=== GOAT HIGHSCORES (Fastest Wins) ===\n");
-        sb.append("---------------------------------------\n");
-
-        List<String> goatEntries = new ArrayList<>();
-        try {
-            File file = new File(GOAT_HIGHSCORE_FILE);
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        goatEntries.add(line);
-                    }
-                }
-            }
-
-            Collections.sort(goatEntries, (a, b) -> {
-                try {
-                    long timeA = Long.parseLong(a.split(",")[1]);
-                    long timeB = Long.parseLong(b.split(",")[1]);
-                    return Long.compare(timeA, timeB);
-                } catch (Exception e) {
-                    return 0;
-                }
-            });
-
-            if (goatEntries.isEmpty()) {
-                sb.append("No goat highscores yet.\n");
-            } else {
-                for (int i = 0; i < Math.min(goatEntries.size(), 10); i++) {
-                    try {
-                        String entry = goatEntries.get(i);
-
-                        int lastCommaIndex = entry.lastIndexOf(",");
-                        String date = entry.substring(lastCommaIndex + 1).trim();
-
-                        String withoutDate = entry.substring(0, lastCommaIndex);
-                        int timeCommaIndex = withoutDate.lastIndexOf(",");
-
-                        if (timeCommaIndex > 0) {
-                            String playerNames = withoutDate.substring(0, timeCommaIndex).trim();
-                            String timeStr = withoutDate.substring(timeCommaIndex + 1).trim();
-                            long time = Long.parseLong(timeStr);
-
-                            double[] minSec = Timer.convertToMinSec(time);
-                            String formattedTime = String.format("%.0f:%05.2f", minSec[0],
-                                minSec[1]);
+        initialize();
+        return highscores;
+    }
 
-                            sb.append(
-                                String.format("%d. %s - Time: %s - Date: %s\n", i + 1, playerNames,
-                                    formattedTime, date));
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Error parsing goat highscore entry: {}", goatEntries.get(i),
-                            e);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Error reading goat highscores", e);
-            sb.append("Error reading goat highscores.\n");
-        }
+    /**
+     * Get all highscores as the message for the client, with "&lt;br&gt;" instead of line breaks
+     */
+    public static String getHighscoresMessage() {
+        initialize();
+        return highscoresMessage;
+    }
 
-        return sb.toString();
+    private static synchronized void render() {
+        String text = "=== GUARD HIGHSCORES (Fastest Wins) ===\n"
+            + "----------------------------------------\n"
+            + guards.getText()
+            + "\n=== GOAT HIGHSCORES (Fastest Wins) ===\n"
+            + "---------------------------------------\n"
+            + goats.getText();
+        highscoresMessage = "highscores:" + text.replace("\n", "<br>");
+        highscores = text;
     }
 }
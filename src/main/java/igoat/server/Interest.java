@@ -0,0 +1,70 @@
+package igoat.server;
+
+/**
+ * Decides which players a client can perceive, so the lobby tick only sends what the client
+ * could actually see, and checks the range of player interactions.
+ * <p>
+ * Goats and iGoats see everything within {@link #VISION_RADIUS} of their center. The guard sees a
+ * cone of the same radius that points wherever the mouse is. The direction isn't known to the
+ * server and can change every frame, so the whole circle around the guard counts as visible. A
+ * margin covers the distance a player moves while an update travels to the client, and the
+ * hysteresis keeps a player that is already visible from flickering at the edge.
+ * </p>
+ */
+final class Interest {
+
+    /**
+     * Radius of the visible area around a player, matches the fog of war on the client
+     */
+    static final double VISION_RADIUS = 100;
+    /**
+     * Extra distance so players are known to the client before they enter its vision
+     */
+    static final double VISION_MARGIN = 48;
+    /**
+     * Extra distance before a visible player stops being sent
+     */
+    static final double VISION_HYSTERESIS = 32;
+    /**
+     * Maximum center distance for catching and reviving. The client allows 40, the rest is
+     * tolerance for positions that are a few updates old.
+     */
+    static final double INTERACTION_RANGE = 64;
+
+    private Interest() {
+    }
+
+    /**
+     * Checks whether a player is close enough to be seen by another one.
+     *
+     * @param viewer     The player who is looking
+     * @param target     The player who might be seen
+     * @param wasVisible Whether the target was visible to the viewer in the last tick
+     * @return true if the target has to be sent to the viewer
+     */
+    static boolean canPerceive(Player viewer, Player target, boolean wasVisible) {
+        // the guard's cone fits into the same circle, see class comment
+        double range = VISION_RADIUS + VISION_MARGIN;
+        if (wasVisible) {
+            range += VISION_HYSTERESIS;
+        }
+        return centerDistanceSquared(viewer, target) <= range * range;
+    }
+
+    /**
+     * Checks whether two players are close enough to interact, e.g. to catch or revive.
+     *
+     * @param player The player who interacts
+     * @param target The target of the interaction
+     * @return true if the target is in range
+     */
+    static boolean isInRange(Player player, Player target) {
+        return centerDistanceSquared(player, target) <= INTERACTION_RANGE * INTERACTION_RANGE;
+    }
+
+    private static double centerDistanceSquared(Player a, Player b) {
+        double dx = (a.getX() + a.getWidth() / 2.0) - (b.getX() + b.getWidth() / 2.0);
+        double dy = (a.getY() + a.getHeight() / 2.0) - (b.getY() + b.getHeight() / 2.0);
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,208 @@
+package igoat.server;
+
+import igoat.Timer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The best times of one highscore category, kept in memory.
+ * <p>
+ * The entries are kept sorted in a small array, so adding a time is a binary search and a shift
+ * of at most {@code capacity} entries. The rendered text is rebuilt on every change, so reading
+ * the list doesn't cost anything. The file is an append-only journal: every new highscore is
+ * appended as a line, and once the file has many more lines than the list, it is compacted to
+ * the current entries. The file methods are meant to be called by a single writer thread.
+ * </p>
+ */
+final class Leaderboard {
+
+    private static final Logger logger = LoggerFactory.getLogger(Leaderboard.class);
+
+    /**
+     * A single highscore. The names of several players are separated by ", ".
+     */
+    record Entry(String names, long time, String date) {
+
+        /**
+         * Parses a line of the highscore file. Format: names,time,date
+         *
+         * @param line The line
+         * @return The entry or null if the line is invalid
+         */
+        static Entry parse(String line) {
+            try {
+                int dateComma = line.lastIndexOf(',');
+                int timeComma = line.lastIndexOf(',', dateComma - 1);
+                if (timeComma <= 0) {
+                    return null;
+                }
+                return new Entry(line.substring(0, timeComma).trim(),
+                    Long.parseLong(line.substring(timeComma + 1, dateComma).trim()),
+                    line.substring(dateComma + 1).trim());
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        String toLine() {
+            return names + "," + time + "," + date;
+        }
+    }
+
+    private final Path file;
+    private final Entry[] entries;
+    private final String emptyText;
+    private int size = 0;
+    // number of entries added so far, used to skip entries that a compaction already wrote
+    private long added = 0;
+    private volatile String rendered;
+    // only used by the writer thread
+    private int journalLines = 0;
+    private long compactedThrough = 0;
+
+    /**
+     * Creates an empty leaderboard.
+     *
+     * @param file      The journal file
+     * @param capacity  Number of entries that are kept
+     * @param emptyText Text shown while there are no entries
+     */
+    Leaderboard(Path file, int capacity, String emptyText) {
+        this.file = file;
+        this.entries = new Entry[capacity];
+        this.emptyText = emptyText;
+        this.rendered = emptyText;
+    }
+
+    /**
+     * Reads the journal and compacts it if it contains more lines than entries.
+     *
+     * @throws IOException if the file can't be read or written
+     */
+    void load() throws IOException {
+        if (!Files.exists(file)) {
+            Files.createFile(file);
+            logger.info("Created highscore file {}", file);
+            return;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            Entry entry = Entry.parse(line);
+            if (entry != null) {
+                add(entry);
+            } else if (!line.isBlank()) {
+                logger.warn("Skipping invalid highscore entry: {}", line);
+            }
+        }
+        journalLines = lines.size();
+        if (journalLines > entries.length) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds a time to the list if it is one of the best.
+     *
+     * @param entry The new highscore
+     * @return The sequence number for {@link #append(Entry, long)}, or -1 if the time is not
+     * good enough
+     */
+    synchronized long add(Entry entry) {
+        if (size == entries.length && entries[size - 1].time() <= entry.time()) {
+            return -1;
+        }
+        // after all entries with the same time, so older entries stay in front
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid].time() <= entry.time()) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int moved = Math.min(size, entries.length - 1) - low;
+        System.arraycopy(entries, low, entries, low + 1, moved);
+        entries[low] = entry;
+        size = Math.min(size + 1, entries.length);
+        rendered = render();
+        return ++added;
+    }
+
+    /**
+     * Gets the list as text, one line per entry.
+     *
+     * @return The rendered list
+     */
+    String getText() {
+        return rendered;
+    }
+
+    /**
+     * Appends an entry to the journal and compacts the journal if it got too long.
+     *
+     * @param entry    The entry
+     * @param sequence The sequence number returned by {@link #add(Entry)}
+     * @throws IOException if the file can't be written
+     */
+    void append(Entry entry, long sequence) throws IOException {
+        if (sequence <= compactedThrough) {
+            return; // already written by a compaction
+        }
+        Files.writeString(file, entry.toLine() + System.lineSeparator(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (++journalLines > 4 * entries.length) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the journal with the current entries.
+     *
+     * @throws IOException if the file can't be written
+     */
+    void compact() throws IOException {
+        Entry[] current;
+        long through;
+        synchronized (this) {
+            current = Arrays.copyOf(entries, size);
+            through = added;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : current) {
+                writer.write(entry.toLine());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        journalLines = current.length;
+        compactedThrough = through;
+        logger.info("Compacted highscore file {} to {} entries", file, current.length);
+    }
+
+    private String render() {
+        if (size == 0) {
+            return emptyText;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            double[] minSec = Timer.convertToMinSec(entries[i].time());
+            String formattedTime = String.format("%.0f:%05.2f", minSec[0], minSec[1]);
+            sb.append(String.format("%d. %s - Time: %s - Date: %s\n", i + 1, entries[i].names(),
+                formattedTime, entries[i].date()));
+        }
+        return sb.toString();
+    }
+}
@@ -2,7 +2,9 @@ package igoat.server;
 
 import igoat.Role;
 import igoat.Timer;
-import igoat.client.Map;
+import igoat.UpdatePacket;
+import igoat.WorldSnapshot;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -10,6 +12,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,24 +25,45 @@ import org.slf4j.LoggerFactory;
 public class Lobby {
 
     public static final long GAME_OVER_TIME = 1000 * 300; // 5 minutes
+    /**
+     * Number of lobby ticks per second. Player positions are sent to the clients once per tick.
+     */
+    public static final int TICK_RATE = Math.max(1, Integer.getInteger("igoat.tickRate", 30));
+    /**
+     * Number of past snapshots kept per lobby. A client whose last acknowledged snapshot is older
+     * gets a full snapshot instead of a delta.
+     */
+    public static final int SNAPSHOT_HISTORY = 32;
     private static final Logger logger = LoggerFactory.getLogger(Lobby.class);
     // roles
-    private static final List<Role> availableRoles = new CopyOnWriteArrayList<>();
+    private static final List<Role> availableRoles = new ArrayList<>();
+    private static final ReentrantLock rolesLock = new ReentrantLock();
     private static final Role[] INITIAL_ROLES = {Role.GUARD, Role.IGOAT, Role.IGOAT,
         Role.GOAT}; // 1 goat, 2 igoat, 1 guard
     public static final java.util.Map<String, Role> roleMap = new ConcurrentHashMap<>();
 
     private final int code;
-    private final List<ClientHandler> members = new ArrayList<>();
+    private final List<ClientHandler> members = new CopyOnWriteArrayList<>();
     private final List<Player> playerList = new ArrayList<>();
     /**
      * Maximum number of players allowed in a lobby
      */
     public static int MAX_PLAYERS = 4;
-    private final Map map = new Map(true);
+    private final LobbyMap map = new LobbyMap(MapGeometry.shared());
     private final Timer timer = new Timer();
     private final Cooldown stationCooldown = new Cooldown(10000);
-    private final List<ClientHandler> spectators = new ArrayList<>();
+    private volatile TimingWheel.Timeout timerTask;
+    private volatile TimingWheel.Timeout tickTask;
+    // set while a tick waits on the UDP worker of the lobby, so a slow worker doesn't pile them up
+    private final AtomicBoolean tickQueued = new AtomicBoolean();
+    private final Runnable queuedTick = this::runQueuedTick;
+    // only used by the tick on the UDP worker of the lobby
+    private final ByteBuffer tickPacket = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+    private final WorldSnapshot[] snapshots = new WorldSnapshot[SNAPSHOT_HISTORY];
+    private final boolean[] corrected = new boolean[UpdatePacket.MAX_ENTRIES];
+    private final Player[] tickPlayers = new Player[UpdatePacket.MAX_ENTRIES];
+    private int snapshotSequence = 0;
+    private final List<ClientHandler> spectators = new CopyOnWriteArrayList<>();
 
     /**
      * Represents the different states a lobby can be in: - OPEN: Lobby is accepting new players -
@@ -97,11 +122,14 @@ public class Lobby {
             setSpawnPoints(client);
         }
 
-        synchronized (availableRoles) {
+        rolesLock.lock();
+        try {
             availableRoles.clear();
             availableRoles.addAll(
                 Arrays.asList(INITIAL_ROLES[0], INITIAL_ROLES[1], INITIAL_ROLES[2],
                     INITIAL_ROLES[3]));
+        } finally {
+            rolesLock.unlock();
         }
     }
 
@@ -111,7 +139,8 @@ public class Lobby {
      * @return Role for a player
      */
     private Role assignRole() {
-        synchronized (availableRoles) {
+        rolesLock.lock();
+        try {
             if (availableRoles.isEmpty()) {
                 // Reset the roles list if empty
                 availableRoles.addAll(
@@ -121,6 +150,8 @@ public class Lobby {
 
             int randomIndex = (int) (Math.random() * availableRoles.size());
             return availableRoles.remove(randomIndex);
+        } finally {
+            rolesLock.unlock();
         }
     }
 
@@ -172,7 +203,7 @@ public class Lobby {
         return state;
     }
 
-    public Map getMap() {
+    public LobbyMap getMap() {
         return map;
     }
 
@@ -188,27 +219,26 @@ public class Lobby {
      */
     public Lobby(int code) {
         this.code = code;
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+        }
     }
 
     /**
-     * Method for the timer thread. This constantly updates the game timer and ends the game if the
-     * maximal game length was reached.
+     * Called every second by the server timing wheel while a game is running. Updates the game
+     * timer and ends the game if the maximal game length was reached.
      */
-    private void startTimerThread() {
-        while (state != LobbyState.FINISHED) {
-            timer.update();
-            broadcastToAll("timer:" + code + ":" + timer.getTime());
-            if (/*timer.getTime() >= GAME_OVER_TIME*/false) {
-                members.getFirst().endGame(true);
-                logger.info("Time limit reached - game over");
-                break;
-            }
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+    private void updateTimer() {
+        if (state == LobbyState.FINISHED) {
+            timerTask.cancel();
+            return;
+        }
+        timer.update();
+        broadcastToAll("timer:" + code + ":" + timer.getTime());
+        if (/*timer.getTime() >= GAME_OVER_TIME*/false) {
+            timerTask.cancel();
+            members.getFirst().endGame(true);
+            logger.info("Time limit reached - game over");
         }
     }
 
@@ -267,6 +297,8 @@ public class Lobby {
      * maximum capacity is reached, otherwise OPEN.
      */
     private void updateState() {
+        // member count or state may have changed
+        ClientHandler.directory.lobbiesChanged();
         if (state == LobbyState.IN_GAME || state == LobbyState.FINISHED) {
             return;
         }
@@ -289,24 +321,41 @@ public class Lobby {
     public void startGame() {
         // new gamestate
         cheatLocked = false;
-        gameState = new GameState(map.getTerminalList().size(), new int[]{1, 3, 5}/*generateRandomTerminalIDs()*/,
+        map.reset();
+        gameState = new GameState(map.getTerminalCount(), new int[]{1, 3, 5}/*generateRandomTerminalIDs()*/,
             members);
         for (ClientHandler client : members) {
             Player player = new Player(200, 80, client.getNickname(), this);
             playerList.add(player);
             client.setPlayer(player);
+            client.resetAckedSnapshot();
         }
 
         state = LobbyState.IN_GAME;
+        ClientHandler.directory.lobbiesChanged();
         timer.reset();
-        Thread timerThread = new Thread(this::startTimerThread);
-        timerThread.setDaemon(true);
-        timerThread.start();
+        if (timerTask != null) {
+            timerTask.cancel();
+        }
+        if (tickTask != null) {
+            tickTask.cancel();
+        }
+        TimingWheel wheel = TimingWheel.getInstance();
+        timerTask = wheel.scheduleAtFixedRate(this::updateTimer, 0, 1000);
+        tickTask = wheel.scheduleAtFixedRate(this::queueTick, 0, 1000 / TICK_RATE);
+        broadcastToAll(getPlayerIdsMessage());
     }
 
     public void endGame() {
         playerList.clear();
         state = LobbyState.FINISHED;
+        ClientHandler.directory.lobbiesChanged();
+        if (timerTask != null) {
+            timerTask.cancel();
+        }
+        if (tickTask != null) {
+            tickTask.cancel();
+        }
     }
 
     /**
@@ -387,11 +436,160 @@ public class Lobby {
         }
     }
 
+    /**
+     * Called by the server timing wheel at the tick rate. The tick itself runs on the UDP worker
+     * that handles the packets of this lobby, so ticks of different lobbies run in parallel and a
+     * tick never runs concurrently with the position updates of its lobby. A tick is skipped while
+     * the previous one is still waiting.
+     */
+    private void queueTick() {
+        if (tickQueued.compareAndSet(false, true)
+            && !ClientHandler.executeForLobby(code, queuedTick)) {
+            tickQueued.set(false);
+        }
+    }
+
+    private void runQueuedTick() {
+        tickQueued.set(false);
+        tick();
+    }
+
+    /**
+     * Records a snapshot of the game and sends every client the changes since the last snapshot it
+     * acknowledged. Players are only sent to members that can perceive them, see
+     * {@link Interest}, spectators get everyone. The position of the receiving player is left out
+     * unless the server corrected it, its caught state is always kept up to date.
+     */
+    private void tick() {
+        if (state == LobbyState.FINISHED) {
+            tickTask.cancel();
+            return;
+        }
+
+        long start = System.nanoTime();
+        WorldSnapshot snapshot = snapshots[++snapshotSequence % SNAPSHOT_HISTORY];
+        snapshot.reset(snapshotSequence);
+        ClientHandler[] clients = members.toArray(new ClientHandler[0]);
+        for (ClientHandler client : clients) {
+            Player player = client.getPlayer();
+            if (player == null) {
+                continue;
+            }
+            boolean correction = player.takeCorrection();
+            if (!snapshot.set(client.getPlayerId(), (int) player.getX(), (int) player.getY(),
+                player.isCaught() ? UpdatePacket.STATE_CAUGHT : 0)) {
+                break;
+            }
+            corrected[snapshot.size() - 1] = correction;
+            tickPlayers[snapshot.size() - 1] = player;
+        }
+        GameState game = gameState;
+        if (game != null) {
+            snapshot.setWorld(game.areDoorsAnnounced(), game.getTerminalMask(),
+                game.getStationMask());
+        }
+
+        for (ClientHandler client : clients) {
+            sendSnapshot(client, snapshot, false);
+        }
+        for (ClientHandler spectator : spectators.toArray(new ClientHandler[0])) {
+            sendSnapshot(spectator, snapshot, true);
+        }
+        Arrays.fill(tickPlayers, 0, snapshot.size(), null);
+        Metrics.LOBBY_TICK.recordSince(start);
+    }
+
+    /**
+     * Sends a snapshot as a delta to the last snapshot the recipient acknowledged.
+     * <p>
+     * For every snapshot sent, the recipient remembers which players it has the current state of
+     * (the trusted mask). Players that were out of sight are not trusted, so they are sent again
+     * when they come into sight, even if they didn't change since the baseline.
+     * </p>
+     */
+    private void sendSnapshot(ClientHandler recipient, WorldSnapshot snapshot, boolean seesAll) {
+        int acked = recipient.getAckedSnapshot();
+        WorldSnapshot baseline = snapshots[Math.floorMod(acked, SNAPSHOT_HISTORY)];
+        long baselineTrusted = 0;
+        if (acked <= 0 || baseline.getSequence() != acked) {
+            baseline = null;
+            acked = 0;
+        } else {
+            baselineTrusted = recipient.trustedEntities[acked % SNAPSHOT_HISTORY];
+        }
+        int sequence = snapshot.getSequence();
+        WorldSnapshot previous = snapshots[Math.floorMod(sequence - 1, SNAPSHOT_HISTORY)];
+        long previousVisible = previous.getSequence() == sequence - 1
+            ? recipient.visibleEntities : 0;
+        Player viewer = recipient.getPlayer();
+        seesAll |= viewer == null;
+
+        long visible = 0;
+        long trusted = 0;
+        UpdatePacket.writeSnapshotHeader(tickPacket, UpdatePacket.toWireLobbyCode(code), snapshot,
+            acked);
+        for (int i = 0; i < snapshot.size(); i++) {
+            int id = snapshot.getId(i);
+            int state = snapshot.getState(i);
+            int index = baseline == null ? -1 : baseline.indexOf(id, i);
+            boolean include;
+            if (id == recipient.getPlayerId()) {
+                include = corrected[i] || index < 0 || baseline.getState(index) != state;
+                if (corrected[i]) {
+                    state |= UpdatePacket.STATE_CORRECTED;
+                }
+            } else {
+                boolean same = index >= 0 && (baselineTrusted & (1L << index)) != 0
+                    && !snapshot.differs(i, baseline, index);
+                int previousIndex = previous.indexOf(id, i);
+                boolean wasVisible = previousIndex >= 0
+                    && (previousVisible & (1L << previousIndex)) != 0;
+                boolean perceived = seesAll
+                    || Interest.canPerceive(viewer, tickPlayers[i], wasVisible);
+                if (perceived) {
+                    visible |= 1L << i;
+                }
+                include = perceived && !same;
+                if (include || same) {
+                    trusted |= 1L << i;
+                }
+            }
+            if (include) {
+                UpdatePacket.writeSnapshotEntry(tickPacket, id, snapshot.getX(i),
+                    snapshot.getY(i), state);
+            }
+        }
+        recipient.visibleEntities = visible;
+        recipient.trustedEntities[sequence % SNAPSHOT_HISTORY] = trusted;
+
+        if (UpdatePacket.getCount(tickPacket) > 0 || !snapshot.sameWorld(baseline)) {
+            recipient.sendUpdate(tickPacket.flip());
+        }
+    }
+
+    /**
+     * Builds the message that tells clients which player ID belongs to which member. Format:
+     * playerids:nickname=id,nickname=id,...
+     *
+     * @return The player ID message
+     */
+    public String getPlayerIdsMessage() {
+        StringBuilder sb = new StringBuilder("playerids:");
+        for (ClientHandler member : members) {
+            sb.append(member.getNickname()).append('=').append(member.getPlayerId()).append(',');
+        }
+        if (!members.isEmpty()) {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
     public Cooldown getStationCooldown() {
         return stationCooldown;
     }
 
     public void addSpectator(ClientHandler client) {
+        client.resetAckedSnapshot();
         spectators.add(client);
     }
 
@@ -0,0 +1,56 @@
+package igoat.server;
+
+/**
+ * The map of one lobby: the shared {@link MapGeometry} and whether the doors are open.
+ */
+public class LobbyMap {
+
+    private final MapGeometry geometry;
+    private volatile boolean doorsOpen = false;
+
+    LobbyMap(MapGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    /**
+     * Opens the doors, so they don't block players anymore.
+     */
+    public void openDoors() {
+        doorsOpen = true;
+    }
+
+    /**
+     * Closes the doors again for a new game.
+     */
+    public void reset() {
+        doorsOpen = false;
+    }
+
+    public boolean areDoorsOpen() {
+        return doorsOpen;
+    }
+
+    /**
+     * Gets the number of terminals on the map.
+     *
+     * @return The number of terminals
+     */
+    public int getTerminalCount() {
+        return geometry.getTerminalCount();
+    }
+
+    /**
+     * Checks whether a player at a position collides with a wall.
+     *
+     * @param x             x-coordinate of the player
+     * @param y             y-coordinate of the player
+     * @param width         Width of the player
+     * @param height        Height of the player
+     * @param ignoreWindows Whether windows are ignored, which is the case for goats
+     * @return true if the player overlaps a wall
+     */
+    public boolean collides(int x, int y, double width, double height, boolean ignoreWindows) {
+        // player sizes are whole pixels
+        return geometry.collides(x, y, (int) width, (int) height, ignoreWindows, doorsOpen);
+    }
+}
@@ -0,0 +1,26 @@
+package igoat.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All open lobbies, indexed by lobby code.
+ */
+final class LobbyRegistry extends Registry<Lobby> {
+
+    private final Map<Integer, Lobby> byCode = new ConcurrentHashMap<>();
+
+    @Override
+    protected void index(Lobby lobby) {
+        byCode.put(lobby.getCode(), lobby);
+    }
+
+    @Override
+    protected void unindex(Lobby lobby) {
+        byCode.remove(lobby.getCode(), lobby);
+    }
+
+    Lobby findByCode(int code) {
+        return byCode.get(code);
+    }
+}
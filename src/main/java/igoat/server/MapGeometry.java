@@ -0,0 +1,79 @@
+package igoat.server;
+
+import igoat.client.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The walls of the map as the server needs them for collision checks. The geometry is the same
+ * for every lobby, so it is built once and shared. It is never changed afterwards; whether the
+ * doors of a lobby are open is kept in its {@link LobbyMap}.
+ */
+final class MapGeometry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MapGeometry.class);
+
+    // player sizes, see Player.setRole
+    private static final int PLAYER_SIZE = 32;
+    private static final int GUARD_WIDTH = 20;
+
+    private final Map closedDoors;
+    private final Map openDoors;
+    private final int terminalCount;
+
+    private MapGeometry() {
+        closedDoors = new Map(true);
+        openDoors = new Map(true);
+        openDoors.openDoors();
+        terminalCount = closedDoors.getTerminalList().size();
+
+        // build the collision rasters now instead of on the first position update of a game
+        for (Map map : new Map[]{closedDoors, openDoors}) {
+            map.collidesAt(0, 0, PLAYER_SIZE, PLAYER_SIZE, true);
+            map.collidesAt(0, 0, PLAYER_SIZE, PLAYER_SIZE, false);
+            map.collidesAt(0, 0, GUARD_WIDTH, PLAYER_SIZE, false);
+        }
+        logger.info("Map geometry loaded: {} walls, {} windows",
+            closedDoors.getCollisionWalls().size(), closedDoors.getWindowCollisions().size());
+    }
+
+    private static final class Holder {
+
+        static final MapGeometry INSTANCE = new MapGeometry();
+    }
+
+    /**
+     * Gets the geometry shared by all lobbies, building it on the first call.
+     *
+     * @return The shared geometry
+     */
+    static MapGeometry shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Checks whether a player at a position collides with a wall.
+     *
+     * @param x             x-coordinate of the player
+     * @param y             y-coordinate of the player
+     * @param width         Width of the player
+     * @param height        Height of the player
+     * @param ignoreWindows Whether windows are ignored, which is the case for goats
+     * @param doorsOpen     Whether the doors are open
+     * @return true if the player overlaps a wall
+     */
+    boolean collides(int x, int y, int width, int height, boolean ignoreWindows,
+        boolean doorsOpen) {
+        Map map = doorsOpen ? openDoors : closedDoors;
+        return map.collidesAt(x, y, width, height, ignoreWindows);
+    }
+
+    /**
+     * Gets the number of terminals on the map.
+     *
+     * @return The number of terminals
+     */
+    int getTerminalCount() {
+        return terminalCount;
+    }
+}
@@ -0,0 +1,444 @@
+package igoat.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import igoat.server.Lobby.LobbyState;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters, gauges and latency histograms of the server.
+ * <p>
+ * Recording a value only increments a {@link LongAdder} or a histogram bucket, so the metrics can
+ * stay in the hot paths. Gauges are computed when the metrics are read. If
+ * {@code -Digoat.metricsPort} is set, the metrics are served in the Prometheus text format at
+ * {@code http://localhost:<port>/metrics}.
+ * </p>
+ */
+final class Metrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    /**
+     * Port of the metrics endpoint, 0 if it is disabled
+     */
+    static final int PORT = Integer.getInteger("igoat.metricsPort", 0);
+
+    private static final List<Metric> METRICS = new CopyOnWriteArrayList<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * UDP packets received by the server
+     */
+    static final Counter UDP_RECEIVED = counter("igoat_udp_packets_received_total",
+        "UDP packets received");
+    /**
+     * UDP packets dropped because the server could not keep up
+     */
+    static final Counter UDP_DROPPED = counter("igoat_udp_packets_dropped_total",
+        "UDP packets dropped because the server could not keep up");
+    /**
+     * UDP packets sent to clients
+     */
+    static final Counter UDP_SENT = counter("igoat_udp_packets_sent_total",
+        "UDP packets sent to clients");
+    /**
+     * Position updates of players handled by the server
+     */
+    static final Counter POSITIONS_RECEIVED = counter("igoat_positions_received_total",
+        "Position updates of players handled by the server");
+    /**
+     * Position updates rejected because of a wall
+     */
+    static final Counter COLLISIONS_PREVENTED = counter("igoat_collisions_prevented_total",
+        "Position updates rejected because of a wall");
+    /**
+     * TCP messages dropped for slow clients
+     */
+    static final Counter OUTBOUND_DROPPED = counter("igoat_outbound_dropped_messages_total",
+        "TCP messages dropped for slow clients");
+    /**
+     * Finished games
+     */
+    static final Counter GAMES_FINISHED = counter("igoat_games_finished_total",
+        "Finished games");
+    /**
+     * New highscores
+     */
+    static final Counter HIGHSCORES_ADDED = counter("igoat_highscores_added_total",
+        "New highscores");
+    /**
+     * Finished games that did not fit into the persistence queue
+     */
+    static final Counter PERSIST_OVERFLOW = counter("igoat_persist_overflow_total",
+        "Finished games that did not fit into the persistence queue");
+    /**
+     * Time to handle a position update packet
+     */
+    static final Histogram POSITION_UPDATE = histogram("igoat_position_update_seconds",
+        "Time to handle a position update packet");
+    /**
+     * Time of a lobby tick
+     */
+    static final Histogram LOBBY_TICK = histogram("igoat_lobby_tick_seconds",
+        "Time to build and send the snapshots of a lobby tick");
+    /**
+     * Round trip time of the TCP ping
+     */
+    static final Histogram PING_RTT = histogram("igoat_ping_rtt_seconds",
+        "Round trip time of the TCP ping");
+    /**
+     * Time to save a finished game
+     */
+    static final Histogram PERSIST = histogram("igoat_persist_seconds",
+        "Time to save the highscore and log entry of a finished game");
+
+    static {
+        gauge("igoat_clients_connected", null, "Connected clients",
+            () -> ClientHandler.clientList.size());
+        for (LobbyState state : LobbyState.values()) {
+            gauge("igoat_lobbies", "state=\"" + state.name().toLowerCase(Locale.ROOT) + "\"",
+                "Lobbies by state", () -> countLobbies(state));
+        }
+        gauge("igoat_outbound_queued_messages", null, "TCP messages waiting to be sent",
+            OutboundQueue::totalQueued);
+        gauge("igoat_persist_queued_games", null, "Finished games waiting to be saved",
+            PersistenceStage::queuedShared);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("igoat_heap_used_bytes", null, "Used heap memory",
+            () -> memory.getHeapMemoryUsage().getUsed());
+        if (ManagementFactory.getOperatingSystemMXBean()
+            instanceof com.sun.management.OperatingSystemMXBean os) {
+            gauge("igoat_process_cpu_milliseconds", null, "CPU time used by the server process",
+                () -> os.getProcessCpuTime() / 1_000_000);
+        }
+    }
+
+    private static HttpServer endpoint;
+
+    private Metrics() {
+    }
+
+    /**
+     * A metric that can be written in the text format
+     */
+    private interface Metric {
+
+        String name();
+
+        String help();
+
+        String type();
+
+        void write(StringBuilder out);
+    }
+
+    /**
+     * A value that only goes up.
+     */
+    static final class Counter implements Metric {
+
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        void increment() {
+            value.increment();
+        }
+
+        long get() {
+            return value.sum();
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String help() {
+            return help;
+        }
+
+        @Override
+        public String type() {
+            return "counter";
+        }
+
+        @Override
+        public void write(StringBuilder out) {
+            out.append(name).append(' ').append(value.sum()).append('\n');
+        }
+    }
+
+    private record Gauge(String name, String labels, String help, LongSupplier value)
+        implements Metric {
+
+        @Override
+        public String type() {
+            return "gauge";
+        }
+
+        @Override
+        public void write(StringBuilder out) {
+            out.append(name);
+            if (labels != null) {
+                out.append('{').append(labels).append('}');
+            }
+            out.append(' ').append(value.getAsLong()).append('\n');
+        }
+    }
+
+    /**
+     * Distribution of durations in ns, in log-linear buckets like an HDR histogram: every power of
+     * two is split into 16 buckets, so a quantile is off by at most about 6%.
+     */
+    static final class Histogram implements Metric {
+
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+        private final String name;
+        private final String help;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos The duration in ns
+         */
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            counts.incrementAndGet(index(nanos));
+            sum.add(nanos);
+        }
+
+        /**
+         * Records the time since a start time.
+         *
+         * @param startNanos The start time from {@link System#nanoTime()}
+         */
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Gets the number of recorded durations.
+         *
+         * @return The count
+         */
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Gets a quantile of the recorded durations.
+         *
+         * @param quantile The quantile, between 0 and 1
+         * @return The upper bound of the bucket containing the quantile in ns, 0 if nothing was
+         * recorded
+         */
+        long quantile(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                count += snapshot[i];
+            }
+            return quantile(snapshot, count, quantile);
+        }
+
+        private static long quantile(long[] snapshot, long count, double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int shift = highestBit - SUB_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        }
+
+        static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long next = SUB_BUCKETS + index % SUB_BUCKETS + 1;
+            // the last bucket would overflow
+            return index == BUCKETS - 1 ? Long.MAX_VALUE : (next << shift) - 1;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String help() {
+            return help;
+        }
+
+        @Override
+        public String type() {
+            return "summary";
+        }
+
+        @Override
+        public void write(StringBuilder out) {
+            long[] snapshot = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                count += snapshot[i];
+            }
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(quantile(snapshot, count, quantile))).append('\n');
+            }
+            out.append(name).append("_sum ").append(seconds(sum.sum())).append('\n');
+            out.append(name).append("_count ").append(count).append('\n');
+        }
+
+        private static double seconds(long nanos) {
+            return nanos / 1e9;
+        }
+    }
+
+    private static Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        METRICS.add(counter);
+        return counter;
+    }
+
+    private static Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram(name, help);
+        METRICS.add(histogram);
+        return histogram;
+    }
+
+    private static void gauge(String name, String labels, String help, LongSupplier value) {
+        METRICS.add(new Gauge(name, labels, help, value));
+    }
+
+    private static long countLobbies(LobbyState state) {
+        long count = 0;
+        for (Lobby lobby : ClientHandler.lobbyList) {
+            if (lobby.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     *
+     * @return The metrics, one sample per line
+     */
+    static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        String previous = null;
+        for (Metric metric : METRICS) {
+            // metrics with labels share the header of their name
+            if (!metric.name().equals(previous)) {
+                out.append("# HELP ").append(metric.name()).append(' ').append(metric.help())
+                    .append('\n');
+                out.append("# TYPE ").append(metric.name()).append(' ').append(metric.type())
+                    .append('\n');
+                previous = metric.name();
+            }
+            metric.write(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Starts the metrics endpoint on localhost if a port is configured. Only the first call has an
+     * effect.
+     */
+    static synchronized void startEndpoint() {
+        if (PORT <= 0 || endpoint != null) {
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+            // scraping is cheap, so the dispatcher thread of the HTTP server handles it
+            server.createContext("/metrics", Metrics::handle);
+            server.start();
+            endpoint = server;
+            logger.info("Metrics available at http://localhost:{}/metrics", PORT);
+        } catch (IOException e) {
+            logger.error("Could not start the metrics endpoint on port {}", PORT, e);
+        }
+    }
+
+    /**
+     * Stops the metrics endpoint.
+     */
+    static synchronized void stopEndpoint() {
+        if (endpoint != null) {
+            endpoint.stop(0);
+            endpoint = null;
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package igoat.server;
+
+import igoat.protocol.FrameDecoder;
+import igoat.protocol.Frames;
+import igoat.protocol.MalformedMessageException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking TCP front end for the server.
+ * <p>
+ * A single acceptor hands new connections to a small, fixed pool of I/O threads. Each I/O thread
+ * owns a {@link Selector}, frames the incoming bytes into lines and passes every complete line to
+ * the {@link ClientHandler} of the connection. Clients that ask for protocol version
+ * {@link Frames#FRAMED_VERSION} are switched to length-prefixed binary frames, which are decoded
+ * directly in the receive buffer. Outgoing messages are queued per connection in an
+ * {@link OutboundQueue} and written by the I/O thread that owns it, all queued messages with a
+ * single write. The number of threads does not depend on the number of connected clients.
+ * </p>
+ */
+public class NioServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioServer.class);
+
+    /**
+     * Default number of I/O threads if none is configured
+     */
+    public static final int DEFAULT_IO_THREADS = 2;
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 8192;
+    // pause after a failed accept, so running out of file descriptors doesn't spin the acceptor
+    private static final long ACCEPT_RETRY_DELAY_MS = 100;
+
+    private final int port;
+    private final IoWorker[] workers;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a new NIO server. The server is not started until {@link #run()} is called.
+     *
+     * @param port      The TCP port to listen on
+     * @param ioThreads Number of I/O threads used for reading and writing client connections
+     */
+    public NioServer(int port, int ioThreads) {
+        this.port = port;
+        this.workers = new IoWorker[Math.max(1, ioThreads)];
+    }
+
+    /**
+     * Binds the server socket, starts the I/O threads and accepts connections on the calling
+     * thread until the server is stopped.
+     *
+     * @throws IOException if the server socket or a selector could not be opened
+     */
+    public void run() throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            running = true;
+
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new IoWorker(i);
+                workers[i].start();
+            }
+
+            logger.info("NIO server started on port {} with {} I/O threads", port,
+                workers.length);
+
+            int next = 0;
+            while (running) {
+                SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    // e.g. out of file descriptors, the next accept may succeed again
+                    logger.error("Could not accept connection", e);
+                    pauseAccepting();
+                    continue;
+                }
+
+                try {
+                    logger.info("New connection from {}",
+                        channel.socket().getInetAddress().getHostAddress());
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    logger.error("Could not configure connection", e);
+                    closeQuietly(channel);
+                    continue;
+                }
+                workers[next].register(channel);
+                next = (next + 1) % workers.length;
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private static void pauseAccepting() {
+        try {
+            Thread.sleep(ACCEPT_RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Could not close channel", e);
+        }
+    }
+
+    /**
+     * Stops the I/O threads.
+     */
+    public void stop() {
+        running = false;
+        for (IoWorker worker : workers) {
+            if (worker != null) {
+                worker.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A single I/O thread with its own selector. Channels are registered and writes are requested
+     * through queues so that the selector is only ever touched by its own thread.
+     */
+    private final class IoWorker implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        IoWorker(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "Server-IO-" + index);
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void shutdown() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Could not close selector", e);
+            }
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(Connection connection) {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerPendingChannels();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(connection);
+                            }
+                        } catch (IOException e) {
+                            logger.info("Connection of {} closed: {}",
+                                connection.handler.getNickname(), e.getMessage());
+                            connection.close();
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (Exception e) {
+                    logger.error("Unexpected exception in I/O thread", e);
+                }
+            }
+            logger.info("{} stopped", thread.getName());
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                ClientHandler handler = new ClientHandler(channel.socket());
+                Connection connection = new Connection(channel, this, handler);
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ,
+                        connection);
+                    handler.attach(connection);
+                } catch (IOException e) {
+                    logger.error("Could not register connection", e);
+                    connection.close();
+                }
+            }
+        }
+
+        private void flushPendingWrites() {
+            Connection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                connection.writeRequested.set(false);
+                if (connection.key == null || !connection.key.isValid()) {
+                    continue;
+                }
+                try {
+                    write(connection);
+                } catch (IOException e) {
+                    logger.info("Write to {} failed: {}", connection.handler.getNickname(),
+                        e.getMessage());
+                    connection.close();
+                }
+            }
+        }
+
+        private void read(Connection connection) throws IOException {
+            readBuffer.clear();
+            int read = connection.channel.read(readBuffer);
+            if (read == -1) {
+                connection.close();
+                return;
+            }
+            readBuffer.flip();
+            if (!connection.framed && !readLines(connection)) {
+                return;
+            }
+            // the rest of the buffer is framed if the client switched the protocol in between
+            if (connection.framed && readBuffer.hasRemaining()) {
+                readFrames(connection);
+            }
+        }
+
+        /**
+         * Dispatches the complete lines in the read buffer. Stops after the line that switched the
+         * connection to frames.
+         *
+         * @return false if the connection was closed
+         */
+        private boolean readLines(Connection connection) {
+            while (readBuffer.hasRemaining() && !connection.framed) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    if (!connection.dispatchLine()) {
+                        connection.close();
+                        return false;
+                    }
+                } else if (!connection.append(b)) {
+                    logger.warn("Line from {} exceeds {} bytes, closing connection",
+                        connection.handler.getNickname(), MAX_LINE_LENGTH);
+                    connection.close();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Appends the read buffer to the frames of the connection and dispatches every complete
+         * frame. An incomplete frame stays in the buffer of the connection until the next read.
+         */
+        private void readFrames(Connection connection) {
+            ByteBuffer frames = connection.frames;
+            while (readBuffer.hasRemaining()) {
+                int limit = readBuffer.limit();
+                readBuffer.limit(readBuffer.position()
+                    + Math.min(readBuffer.remaining(), frames.remaining()));
+                frames.put(readBuffer);
+                readBuffer.limit(limit);
+                frames.flip();
+                try {
+                    while (connection.decoder.next(frames)) {
+                        if (!connection.dispatch(connection.decoder.text())) {
+                            connection.close();
+                            return;
+                        }
+                    }
+                } catch (MalformedMessageException e) {
+                    logger.warn("Invalid frame from {}, closing connection: {}",
+                        connection.handler.getNickname(), e.getMessage());
+                    connection.close();
+                    return;
+                }
+                frames.compact();
+            }
+        }
+
+        private void write(Connection connection) throws IOException {
+            while (true) {
+                if (connection.pending == null || !connection.pending.hasRemaining()) {
+                    if (!connection.drainOutbound()) {
+                        connection.pending = null;
+                        connection.key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+                connection.channel.write(connection.pending);
+                if (connection.pending.hasRemaining()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * State of one client connection: the line or frames currently being assembled and the queue
+     * of outgoing messages.
+     */
+    static final class Connection {
+
+        private final SocketChannel channel;
+        private final IoWorker worker;
+        private final ClientHandler handler;
+        private final OutboundQueue outbound = new OutboundQueue();
+        // only used by the I/O thread: the batch being written and what is left of it
+        private final StringBuilder batch = new StringBuilder();
+        private ByteBuffer pending;
+        // only used by the I/O thread: binary frames instead of lines after the switch
+        private boolean framed = false;
+        private ByteBuffer frames;
+        private FrameDecoder decoder;
+        private ByteArrayOutputStream frameBatch;
+        private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private SelectionKey key;
+
+        private byte[] line = new byte[128];
+        private int lineLength = 0;
+
+        private Connection(SocketChannel channel, IoWorker worker, ClientHandler handler) {
+            this.channel = channel;
+            this.worker = worker;
+            this.handler = handler;
+        }
+
+        /**
+         * Queues a message for this connection. May be called from any thread and never blocks.
+         *
+         * @param message The message to send, without line terminator
+         * @return false if the client is too far behind and has to be disconnected
+         */
+        boolean send(String message) {
+            if (closed.get()) {
+                return true;
+            }
+            if (!outbound.offer(message)) {
+                return false;
+            }
+            if (writeRequested.compareAndSet(false, true)) {
+                worker.requestWrite(this);
+            }
+            return true;
+        }
+
+        /**
+         * Closes the channel and disconnects the client handler. Only the first call has an
+         * effect.
+         */
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            outbound.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Could not close channel", e);
+            }
+            handler.disconnect();
+        }
+
+        /**
+         * Switches the connection to binary frames. Has to be called on the I/O thread that owns
+         * the connection, while the line requesting the switch is processed. Everything queued so
+         * far and the reply are still sent as text, all later messages as frames.
+         *
+         * @param reply The last text message, confirming the switch
+         */
+        void useFrames(String reply) {
+            batch.setLength(0);
+            outbound.drainTo(batch);
+            batch.append(reply).append('\n');
+            byte[] text = batch.toString().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer combined = ByteBuffer.allocate(
+                (pending == null ? 0 : pending.remaining()) + text.length);
+            if (pending != null) {
+                combined.put(pending);
+            }
+            pending = combined.put(text).flip();
+
+            framed = true;
+            frames = ByteBuffer.allocate(Frames.LENGTH_SIZE + MAX_LINE_LENGTH);
+            decoder = new FrameDecoder(MAX_LINE_LENGTH);
+            frameBatch = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+            if (writeRequested.compareAndSet(false, true)) {
+                worker.requestWrite(this);
+            }
+        }
+
+        /**
+         * Takes all queued messages and encodes them as the next bytes to write.
+         *
+         * @return false if nothing was queued
+         */
+        private boolean drainOutbound() {
+            if (framed) {
+                frameBatch.reset();
+                if (!outbound.drainTo(this::appendFrame)) {
+                    return false;
+                }
+                pending = ByteBuffer.wrap(frameBatch.toByteArray());
+            } else {
+                batch.setLength(0);
+                if (!outbound.drainTo(batch)) {
+                    return false;
+                }
+                pending = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return true;
+        }
+
+        private void appendFrame(String message) {
+            try {
+                frameBatch.writeBytes(Frames.encode(message));
+            } catch (MalformedMessageException e) {
+                logger.error("Could not send message to {}: {}", handler.getNickname(),
+                    e.getMessage());
+            }
+        }
+
+        private boolean append(byte b) {
+            if (lineLength == line.length) {
+                if (line.length >= MAX_LINE_LENGTH) {
+                    return false;
+                }
+                line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+            }
+            line[lineLength++] = b;
+            return true;
+        }
+
+        private boolean dispatchLine() {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            String message = new String(line, 0, length, StandardCharsets.UTF_8);
+            lineLength = 0;
+            return dispatch(message);
+        }
+
+        private boolean dispatch(String message) {
+            try {
+                return handler.handleLine(message);
+            } catch (Exception e) {
+                logger.error("Error when processing message {}", message, e);
+                return true;
+            }
+        }
+    }
+}
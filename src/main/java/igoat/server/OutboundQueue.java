@@ -0,0 +1,244 @@
+package igoat.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of the TCP messages waiting to be sent to one client.
+ * <p>
+ * Any thread can add messages without touching the socket, so a slow client never blocks a
+ * broadcast. The writer of the connection takes all queued messages at once and sends them with a
+ * single write. Messages that contain a complete list, like the lobby list, replace an older one
+ * of the same kind that is still queued. If the queued messages exceed {@link #LIMIT} characters,
+ * the client is too far behind and the {@link Policy} decides what happens.
+ * </p>
+ */
+final class OutboundQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueue.class);
+
+    /**
+     * What happens to a client whose queue is full
+     */
+    enum Policy {
+        /**
+         * The client is disconnected
+         */
+        DISCONNECT,
+        /**
+         * New messages are dropped until the client catches up
+         */
+        DROP
+    }
+
+    /**
+     * Maximum number of queued characters per client
+     */
+    static final int LIMIT = Math.max(1024, Integer.getInteger("igoat.sendQueueLimit",
+        256 * 1024));
+    /**
+     * Policy for clients whose queue is full
+     */
+    static final Policy POLICY = parsePolicy(System.getProperty("igoat.slowClients"));
+
+    // messages with the whole state, only the latest one has to be sent
+    private static final String[] COLLAPSIBLE = {"getlobbies:", "getplayers:",
+        "getlobbyplayers:", "timer:"};
+    // messages queued for all clients, for the metrics
+    private static final LongAdder totalQueued = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<String> messages = new ArrayDeque<>();
+    private final int limit;
+    private final Policy policy;
+    private int queuedChars = 0;
+    private long dropped = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a queue with the configured limit and policy.
+     */
+    OutboundQueue() {
+        this(LIMIT, POLICY);
+    }
+
+    /**
+     * Creates a queue with the given limit and policy.
+     *
+     * @param limit  Maximum number of queued characters
+     * @param policy What happens when the limit is reached
+     */
+    OutboundQueue(int limit, Policy policy) {
+        this.limit = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a message. Never blocks on the socket.
+     *
+     * @param message The message, without line terminator
+     * @return false if the client is too far behind and has to be disconnected
+     */
+    boolean offer(String message) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            String prefix = collapsiblePrefix(message);
+            if (prefix != null) {
+                removeQueued(prefix);
+            }
+            if (queuedChars + message.length() + 1 > limit) {
+                if (policy == Policy.DISCONNECT) {
+                    return false;
+                }
+                dropped++;
+                Metrics.OUTBOUND_DROPPED.increment();
+                if ((dropped & (dropped - 1)) == 0) {
+                    logger.warn("Dropped {} messages for a slow client so far", dropped);
+                }
+                return true;
+            }
+            messages.add(message);
+            totalQueued.increment();
+            queuedChars += message.length() + 1;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves all queued messages to a batch, each followed by a line break.
+     *
+     * @param batch The batch to append to
+     * @return false if nothing was queued
+     */
+    boolean drainTo(StringBuilder batch) {
+        lock.lock();
+        try {
+            if (messages.isEmpty()) {
+                return false;
+            }
+            totalQueued.add(-messages.size());
+            String message;
+            while ((message = messages.poll()) != null) {
+                batch.append(message).append('\n');
+            }
+            queuedChars = 0;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passes all queued messages to a consumer, e.g. to encode them as frames.
+     *
+     * @param sink Receives the messages in order, without line terminator
+     * @return false if nothing was queued
+     */
+    boolean drainTo(Consumer<String> sink) {
+        lock.lock();
+        try {
+            if (messages.isEmpty()) {
+                return false;
+            }
+            totalQueued.add(-messages.size());
+            String message;
+            while ((message = messages.poll()) != null) {
+                sink.accept(message);
+            }
+            queuedChars = 0;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a message is queued or the queue is closed.
+     *
+     * @return false if the queue was closed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean await() throws InterruptedException {
+        lock.lock();
+        try {
+            while (messages.isEmpty() && !closed) {
+                notEmpty.await(1, TimeUnit.SECONDS);
+            }
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue, discards the queued messages and wakes up a waiting writer.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            totalQueued.add(-messages.size());
+            messages.clear();
+            queuedChars = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages queued for all clients.
+     *
+     * @return The number of messages
+     */
+    static long totalQueued() {
+        return totalQueued.sum();
+    }
+
+    private void removeQueued(String prefix) {
+        Iterator<String> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            String queued = iterator.next();
+            if (queued.startsWith(prefix)) {
+                iterator.remove();
+                totalQueued.decrement();
+                queuedChars -= queued.length() + 1;
+            }
+        }
+    }
+
+    private static String collapsiblePrefix(String message) {
+        for (String prefix : COLLAPSIBLE) {
+            if (message.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    private static Policy parsePolicy(String value) {
+        if (value == null) {
+            return Policy.DISCONNECT;
+        }
+        try {
+            return Policy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown slow client policy {}, disconnecting slow clients", value);
+            return Policy.DISCONNECT;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package igoat.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves finished games in the background.
+ * <p>
+ * {@link ClientHandler#endGame(boolean)} can run on the UDP listener or a lobby thread, so it only
+ * puts an immutable {@link GameResult} into a bounded queue. A single writer thread takes all
+ * queued results at once, adds the highscores, appends the games to the {@link GameLog} and then
+ * flushes the log to disk according to the {@link SyncPolicy}. Enqueueing never blocks: if the
+ * writer falls behind until the queue is full, further results go to an unbounded overflow list,
+ * which the writer empties after the queue. Results are never dropped while the stage runs. Every
+ * result that overflows is counted in {@link Metrics#PERSIST_OVERFLOW}.
+ * </p>
+ */
+final class PersistenceStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceStage.class);
+
+    /**
+     * Capacity of the queue
+     */
+    static final int QUEUE_CAPACITY = Math.max(1, Integer.getInteger("igoat.persistQueue", 1024));
+    /**
+     * Maximum number of results written before the log is flushed
+     */
+    static final int MAX_BATCH = 64;
+
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
+    /**
+     * When the finished games log is forced to disk.
+     */
+    enum SyncPolicy {
+        /**
+         * Leave it to the operating system
+         */
+        NEVER,
+        /**
+         * Once after every batch of results
+         */
+        BATCH,
+        /**
+         * After every single result
+         */
+        ALWAYS;
+
+        /**
+         * Parses the policy from a system property value.
+         *
+         * @param value The value, case-insensitive
+         * @return The policy, BATCH if the value is unknown
+         */
+        static SyncPolicy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown fsync policy '{}', using BATCH", value);
+                return BATCH;
+            }
+        }
+    }
+
+    private final BlockingQueue<GameResult> queue;
+    private final Queue<GameResult> overflow = new ConcurrentLinkedQueue<>();
+    private final GameLog gameLog;
+    private final SyncPolicy syncPolicy;
+    private final Thread writer;
+    private final AtomicLong queued = new AtomicLong();
+    // guarded by this
+    private long written = 0;
+    private volatile boolean stopped = false;
+    private static volatile boolean started = false;
+
+    /**
+     * Creates a stage and starts its writer thread.
+     *
+     * @param gameLog    The log the games are appended to
+     * @param capacity   Capacity of the queue
+     * @param syncPolicy When the log is forced to disk
+     */
+    PersistenceStage(GameLog gameLog, int capacity, SyncPolicy syncPolicy) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.gameLog = gameLog;
+        this.syncPolicy = syncPolicy;
+        this.writer = ServerThreads.start("Persistence-Writer", this::run);
+    }
+
+    private static final class Holder {
+
+        static final PersistenceStage INSTANCE = create();
+
+        private static PersistenceStage create() {
+            PersistenceStage stage = new PersistenceStage(GameLog.shared(), QUEUE_CAPACITY,
+                SyncPolicy.parse(System.getProperty("igoat.fsync", "batch")));
+            Runtime.getRuntime().addShutdownHook(new Thread(stage::shutdown,
+                "Persistence-Shutdown"));
+            logger.info("Persisting finished games with a queue of {} and fsync policy {}",
+                QUEUE_CAPACITY, stage.syncPolicy);
+            started = true;
+            return stage;
+        }
+    }
+
+    /**
+     * Gets the stage of the server, starting it on the first call.
+     *
+     * @return The shared stage
+     */
+    static PersistenceStage shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Shuts down the stage of the server if it was started.
+     */
+    static void shutdownShared() {
+        if (started) {
+            Holder.INSTANCE.shutdown();
+        }
+    }
+
+    /**
+     * Gets the number of finished games waiting to be saved by the stage of the server.
+     *
+     * @return The number of games, 0 if the stage was not started
+     */
+    static long queuedShared() {
+        return started ? Holder.INSTANCE.pending() : 0;
+    }
+
+    /**
+     * Queues a finished game. Never blocks, a result that doesn't fit into the queue is added to
+     * the overflow list.
+     *
+     * @param result The result
+     * @return true if the result was queued, false if the stage was shut down
+     */
+    boolean enqueue(GameResult result) {
+        if (stopped) {
+            logger.error("Persistence stopped, finished game of lobby {} is lost",
+                result.lobbyCode());
+            return false;
+        }
+        queued.incrementAndGet();
+        // once results overflow, later ones queue up behind them to keep the order
+        if (overflow.isEmpty() && queue.offer(result)) {
+            return true;
+        }
+        if (overflow.isEmpty()) {
+            logger.warn("Persistence queue is full, keeping finished games in the overflow list");
+        }
+        overflow.add(result);
+        Metrics.PERSIST_OVERFLOW.increment();
+        return true;
+    }
+
+    private int pending() {
+        return queue.size() + overflow.size();
+    }
+
+    /**
+     * Waits until all results queued before this call are written.
+     *
+     * @param timeoutMs Maximum time to wait in ms
+     * @return true if everything was written in time
+     */
+    synchronized boolean drain(long timeoutMs) {
+        long target = queued.get();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (written < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !writer.isAlive()) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes all queued results, stops the writer and closes the log. New results are rejected
+     * afterwards. Calling this more than once has no effect.
+     */
+    void shutdown() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+        }
+        if (!drain(DRAIN_TIMEOUT_MS)) {
+            logger.error("{} finished games could not be saved before shutdown", pending());
+        }
+        // the writer notices the flag the next time the queue is empty
+        try {
+            writer.join(DRAIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            gameLog.sync();
+        } catch (IOException e) {
+            logger.error("Could not flush the finished games log", e);
+        }
+        gameLog.close();
+        logger.info("Persistence stopped");
+    }
+
+    private void run() {
+        List<GameResult> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                GameResult first = overflow.isEmpty()
+                    ? queue.poll(100, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    first = overflow.poll();
+                }
+                if (first == null) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // not interrupted by the stage, a file channel would be closed by an interrupt
+                logger.warn("Persistence writer was interrupted");
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - batch.size());
+            GameResult next;
+            while (batch.size() < MAX_BATCH && (next = overflow.poll()) != null) {
+                batch.add(next);
+            }
+            write(batch);
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<GameResult> batch) {
+        for (GameResult result : batch) {
+            long start = System.nanoTime();
+            try {
+                if (result.guardWon()) {
+                    String guard = result.guardName();
+                    if (guard != null) {
+                        HighscoreManager.addGuardHighscore(guard, result.gameTime());
+                    }
+                } else {
+                    HighscoreManager.addGoatHighscore(result.goatNames(), result.gameTime());
+                }
+            } catch (Exception e) {
+                logger.error("Failed to save highscore", e);
+            }
+            try {
+                gameLog.append(result.toJson());
+                if (syncPolicy == SyncPolicy.ALWAYS) {
+                    gameLog.sync();
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write finished game", e);
+            }
+            Metrics.PERSIST.recordSince(start);
+        }
+        if (syncPolicy == SyncPolicy.BATCH && !batch.isEmpty()) {
+            try {
+                gameLog.sync();
+            } catch (IOException e) {
+                logger.error("Could not flush the finished games log", e);
+            }
+        }
+    }
+}
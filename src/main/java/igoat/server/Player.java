@@ -1,15 +1,16 @@
 package igoat.server;
 
 import igoat.Role;
-import igoat.Timer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The serverside Player class stores all information related to the in-game player.
  */
 public class Player {
 
-    private double x;
-    private double y;
+    private volatile double x;
+    private volatile double y;
+    private final AtomicBoolean corrected = new AtomicBoolean();
     private double width = 32;
     private final double height = 32;
     private Role role;
@@ -17,7 +18,7 @@ public class Player {
     private boolean isCaught = false;
 
     private boolean positionWasSet = false;
-    private final Timer spawnProtection = new Timer();
+    private final Cooldown spawnProtection = new Cooldown(5000, false);
 
     private final Lobby lobby;
 
@@ -38,8 +39,24 @@ public class Player {
         this.x = x;
         this.y = y;
         positionWasSet = false;
-        lobby.broadcastUpdateToLobby("player_position:" + nickname + ":" + (int) x + ":" + (int) y,
-            null);
+        markCorrected();
+    }
+
+    /**
+     * Marks the position as set by the server, so it is sent to all clients, including this
+     * player, in the next lobby tick.
+     */
+    public void markCorrected() {
+        corrected.set(true);
+    }
+
+    /**
+     * Gets and clears whether the position was set by the server since the last call.
+     *
+     * @return true if the position has to be sent to the player itself
+     */
+    boolean takeCorrection() {
+        return corrected.getAndSet(false);
     }
 
     public double getWidth() {
@@ -74,7 +91,7 @@ public class Player {
         return positionWasSet;
     }
 
-    public Timer getSpawnProtection() {
+    public Cooldown getSpawnProtection() {
         return spawnProtection;
     }
 
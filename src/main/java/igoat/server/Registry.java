@@ -0,0 +1,110 @@
+package igoat.server;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent collection with indexes for constant-time lookups.
+ * <p>
+ * Adding and removing an entry only updates hash maps, so it doesn't copy the collection. Iterating
+ * uses an immutable snapshot in insertion order. The snapshot is built when it is first needed
+ * after a change and then shared by all readers until the next change, so broadcasts can iterate
+ * it without locking while clients join and leave.
+ * </p>
+ *
+ * @param <T> Type of the entries
+ */
+abstract class Registry<T> extends AbstractCollection<T> {
+
+    private final Map<T, Long> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot<T> snapshot = new Snapshot<>(0, List.of());
+
+    private record Snapshot<T>(long version, List<T> entries) {
+
+    }
+
+    /**
+     * Adds the entry to the indexes of the subclass. Called after the entry was added.
+     *
+     * @param entry The new entry
+     */
+    protected abstract void index(T entry);
+
+    /**
+     * Removes the entry from the indexes of the subclass. Called after the entry was removed.
+     *
+     * @param entry The removed entry
+     */
+    protected abstract void unindex(T entry);
+
+    @Override
+    public boolean add(T entry) {
+        if (entries.putIfAbsent(entry, sequence.incrementAndGet()) != null) {
+            return false;
+        }
+        index(entry);
+        version.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object entry) {
+        if (entries.remove(entry) == null) {
+            return false;
+        }
+        unindex((T) entry);
+        version.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object entry) {
+        return entries.containsKey(entry);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Iterates over the current snapshot. Changes made during the iteration are not visible to
+     * it.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+
+    /**
+     * Gets an immutable list of all entries in the order they were added.
+     *
+     * @return The current snapshot
+     */
+    public List<T> snapshot() {
+        Snapshot<T> current = snapshot;
+        long currentVersion = version.get();
+        if (current.version() != currentVersion) {
+            // entries changed while building are picked up by the next call, because the
+            // snapshot is tagged with the version read before building it
+            current = new Snapshot<>(currentVersion, entries.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .toList());
+            snapshot = current;
+        }
+        return current.entries();
+    }
+}
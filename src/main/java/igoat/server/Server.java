@@ -9,9 +9,10 @@ import org.slf4j.LoggerFactory;
 /**
  * Server implementation for the iGoat game application.
  * <p>
- * This server: - Accepts TCP connections from game clients - Creates individual ClientHandler
- * threads for each connected client - Manages UDP communication for real-time game state updates -
- * Supports dynamic port configuration with a default fallback
+ * This server: - Accepts TCP connections from game clients - Serves all clients from a small pool
+ * of NIO threads, or creates individual ClientHandler threads for each connected client in thread
+ * mode - Manages UDP communication for real-time game state updates - Supports dynamic port
+ * configuration with a default fallback
  * </p>
  */
 public class Server {
@@ -23,33 +24,107 @@ public class Server {
      */
     private static final int DEFAULT_PORT = 61000;
 
+    /**
+     * Number of NIO I/O threads, can be overridden with -Digoat.ioThreads=n
+     */
+    private static final int IO_THREADS = Integer.getInteger("igoat.ioThreads",
+        NioServer.DEFAULT_IO_THREADS);
+
+    /**
+     * Number of threads handling UDP packets, can be overridden with -Digoat.udpWorkers=n
+     */
+    private static final int UDP_WORKERS = Integer.getInteger("igoat.udpWorkers",
+        UdpServer.DEFAULT_WORKERS);
+
+    /**
+     * The ways the server can serve its TCP clients
+     */
+    public enum Mode {
+        /**
+         * All clients are served by a fixed pool of non-blocking I/O threads
+         */
+        NIO,
+        /**
+         * Every client gets its own blocking handler thread
+         */
+        THREAD,
+        /**
+         * Every client gets its own blocking handler, running on a virtual thread
+         */
+        VIRTUAL
+    }
+
     /**
      * Entry point for the server application. Starts the server on either a specified port or the
      * default port.
      *
      * @param args Command line arguments. If args[0] exists, it's used as the port number,
-     *             otherwise DEFAULT_PORT is used
+     *             otherwise DEFAULT_PORT is used. If args[1] exists, it's used as the server mode
+     *             (nio, thread or virtual), otherwise NIO is used
      */
     public static void main(String[] args) {
         int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Mode mode = args.length > 1 ? Mode.valueOf(args[1].toUpperCase()) : Mode.NIO;
 
-        startServer(port);
+        startServer(port, mode);
     }
 
     /**
-     * Starts the game server on the specified port.
+     * Starts the game server on the specified port using non-blocking I/O.
+     *
+     * @param port The port number to listen on
+     */
+    public static void startServer(int port) {
+        startServer(port, Mode.NIO);
+    }
+
+    /**
+     * Starts the game server on the specified port in the given mode.
+     *
+     * @param port The port number to listen on
+     * @param mode The way TCP clients are served
+     */
+    public static void startServer(int port, Mode mode) {
+        // load the map, the highscores and the game log before the first lobby needs them
+        MapGeometry.shared();
+        HighscoreManager.initialize();
+        GameLog.shared();
+        PersistenceStage.shared();
+        Metrics.startEndpoint();
+        TrafficCapture.startRecording();
+        if (mode == Mode.THREAD || mode == Mode.VIRTUAL) {
+            ServerThreads.useVirtualThreads(mode == Mode.VIRTUAL);
+            startThreadServer(port);
+            return;
+        }
+
+        ClientHandler.startUdpListener(UDP_WORKERS);
+        try {
+            new NioServer(port, IO_THREADS).run();
+        } catch (IOException e) {
+            logger.error("Could not listen on port {}", port, e);
+        } finally {
+            ClientHandler.stopUdpListener();
+            TrafficCapture.stopRecording();
+            Metrics.stopEndpoint();
+        }
+    }
+
+    /**
+     * Starts the game server on the specified port with one thread per client.
      * <p>
      * This method: - Creates a TCP server socket - Initializes the UDP listener for game state
-     * updates - Accepts incoming client connections - Creates a new thread for each client
+     * updates - Accepts incoming client connections - Creates a new thread for each client, which
+     * is a virtual thread if enabled in {@link ServerThreads}
      * </p>
      *
      * @param port The port number to listen on
      */
-    public static void startServer(int port) {
+    private static void startThreadServer(int port) {
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             logger.info("Server started on port {}", port);
 
-            ClientHandler.startUdpListener();
+            ClientHandler.startUdpListener(UDP_WORKERS);
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
@@ -57,14 +132,14 @@ public class Server {
                     clientSocket.getInetAddress().getHostAddress());
 
                 ClientHandler handler = new ClientHandler(clientSocket);
-                Thread client = new Thread(handler);
-                client.setDaemon(true);
-                client.start();
+                ServerThreads.start("Client-" + clientSocket.getPort(), handler);
             }
         } catch (IOException e) {
             logger.error("Could not listen on port {}", port, e);
         } finally {
             ClientHandler.stopUdpListener();
+            TrafficCapture.stopRecording();
+            Metrics.stopEndpoint();
         }
     }
 }
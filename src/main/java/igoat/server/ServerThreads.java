@@ -0,0 +1,121 @@
+package igoat.server;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the threads used by the server. By default these are daemon platform threads. In virtual
+ * mode every thread is a virtual thread, which allows thousands of blocking client handlers
+ * without reserving a native thread and stack for each of them.
+ */
+public final class ServerThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerThreads.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    private static volatile boolean virtual = false;
+    private static RecordingStream pinningMonitor;
+
+    private ServerThreads() {
+    }
+
+    /**
+     * Switches between virtual and platform threads for all threads started afterwards. Enabling
+     * virtual threads also starts reporting pinned virtual threads.
+     *
+     * @param enabled true to use virtual threads, false to use platform threads
+     */
+    public static synchronized void useVirtualThreads(boolean enabled) {
+        virtual = enabled;
+        if (enabled && pinningMonitor == null) {
+            startPinningMonitor();
+        }
+    }
+
+    /**
+     * Checks whether new server threads are virtual threads.
+     *
+     * @return true if virtual threads are used
+     */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Creates and starts a new server thread.
+     *
+     * @param name Name of the thread
+     * @param task The task to run
+     * @return The started thread
+     */
+    public static Thread start(String name, Runnable task) {
+        if (virtual) {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Creates an executor that runs its tasks one after another on a single server thread. The
+     * thread is created with the first task, so it is virtual if virtual threads are used by then.
+     *
+     * @param name Name of the thread
+     * @return The executor
+     */
+    public static ExecutorService newSingleThreadExecutor(String name) {
+        return Executors.newSingleThreadExecutor(task -> {
+            if (virtual) {
+                return Thread.ofVirtual().name(name).unstarted(task);
+            }
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reports every virtual thread that stays pinned to its carrier thread for longer than the
+     * threshold, e.g. because it blocks inside a synchronized block. Uses the JDK Flight Recorder
+     * event stream, so no recording has to be configured on the command line.
+     */
+    private static void startPinningMonitor() {
+        try {
+            pinningMonitor = new RecordingStream();
+            pinningMonitor.enable(PINNED_EVENT).withStackTrace().withThreshold(PINNED_THRESHOLD);
+            pinningMonitor.onEvent(PINNED_EVENT, ServerThreads::reportPinning);
+            pinningMonitor.startAsync();
+            logger.info("Reporting virtual threads pinned for more than {} ms",
+                PINNED_THRESHOLD.toMillis());
+        } catch (Exception e) {
+            logger.warn("Could not start pinning monitor", e);
+            pinningMonitor = null;
+        }
+    }
+
+    private static void reportPinning(RecordedEvent event) {
+        String location = "unknown";
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                if (frame.isJavaFrame() && frame.getMethod().getType().getName()
+                    .startsWith("igoat.")) {
+                    location = frame.getMethod().getType().getName() + "."
+                        + frame.getMethod().getName() + ":" + frame.getLineNumber();
+                    break;
+                }
+            }
+        }
+        logger.warn("Virtual thread {} was pinned for {} ms at {}",
+            event.getThread() != null ? event.getThread().getJavaName() : "?",
+            event.getDuration().toMillis(), location);
+    }
+}
@@ -0,0 +1,230 @@
+package igoat.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel that runs all timeouts of the server on a single thread.
+ * <p>
+ * Timeouts are hashed into a fixed number of buckets by their deadline. Every tick the thread
+ * expires one bucket, so scheduling and cancelling is O(1) and the number of timer threads stays
+ * the same no matter how many clients and lobbies exist. While no timeout is scheduled the thread
+ * parks until the next one is added. Tasks run on the timer thread and should not block.
+ * </p>
+ */
+public final class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Duration of one tick in ms. This is the resolution of all timeouts.
+     */
+    public static final long TICK_DURATION = 10;
+    private static final int WHEEL_SIZE = 512;
+
+    private static final TimingWheel instance = new TimingWheel(TICK_DURATION, WHEEL_SIZE);
+
+    private final long tickDuration;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+
+    private Thread worker;
+    private volatile boolean idle = false;
+    private long tick = 0;
+    private int scheduled = 0;
+
+    /**
+     * Creates a new timing wheel. The timer thread is started with the first timeout.
+     *
+     * @param tickDuration Duration of one tick in ms
+     * @param wheelSize    Number of buckets, rounded up to a power of two
+     */
+    TimingWheel(long tickDuration, int wheelSize) {
+        this.tickDuration = tickDuration;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the timing wheel shared by the whole server.
+     *
+     * @return The server timing wheel
+     */
+    public static TimingWheel getInstance() {
+        return instance;
+    }
+
+    /**
+     * Runs a task once after the given delay.
+     *
+     * @param task  The task to run
+     * @param delay Delay in ms
+     * @return The timeout, which can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        return add(new Timeout(task, now() + Math.max(0, delay), 0));
+    }
+
+    /**
+     * Runs a task repeatedly. The deadlines are computed from the first one, so the task keeps its
+     * rate even if a single run is late.
+     *
+     * @param task         The task to run
+     * @param initialDelay Delay before the first run in ms
+     * @param period       Time between two runs in ms
+     * @return The timeout, which can be used to cancel the task
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period) {
+        return add(new Timeout(task, now() + Math.max(0, initialDelay),
+            Math.max(tickDuration, period)));
+    }
+
+    private Timeout add(Timeout timeout) {
+        pending.add(timeout);
+        start();
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if (worker == null) {
+            worker = new Thread(this::run, "Server-Timer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Milliseconds since this wheel was created.
+     */
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private void run() {
+        while (true) {
+            if (scheduled == 0 && pending.isEmpty()) {
+                idle = true;
+                // re-check after publishing the idle flag, a timeout might just have been added
+                if (pending.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                tick = now() / tickDuration;
+                continue;
+            }
+
+            long deadline = (tick + 1) * tickDuration;
+            long sleep = deadline - now();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            transferPending();
+            expire((int) (tick & mask));
+            tick++;
+        }
+        logger.info("Timer thread stopped");
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadline / tickDuration, tick);
+            timeout.rounds = (ticks - tick) / buckets.length;
+
+            int index = (int) (ticks & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+            scheduled++;
+        }
+    }
+
+    private void expire(int index) {
+        Timeout previous = null;
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            boolean remove = timeout.cancelled;
+
+            if (!remove && timeout.rounds <= 0) {
+                remove = true;
+                run(timeout);
+                if (timeout.period > 0 && !timeout.cancelled) {
+                    timeout.deadline += timeout.period;
+                    pending.add(timeout);
+                }
+            } else if (!remove) {
+                timeout.rounds--;
+            }
+
+            if (remove) {
+                if (previous == null) {
+                    buckets[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                scheduled--;
+            } else {
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    private void run(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (Exception e) {
+            logger.error("Timer task failed", e);
+        }
+    }
+
+    /**
+     * A task scheduled on the timing wheel.
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long rounds;
+        private Timeout next;
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Cancels the task. A task that is currently running finishes, but is not run again.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package igoat.server;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records everything the server receives, so real games can be replayed against another build.
+ * <p>
+ * If {@code -Digoat.capture=<file>} is set, every TCP line and UDP packet is written to the file
+ * with the time it arrived. TCP connections and UDP senders are numbered separately in the order
+ * they appear, starting at 1. Recording copies the data into a buffer under a lock and writes it
+ * when the buffer is full, so it costs little while it is off and stays cheap while it is on.
+ * </p>
+ * <p>
+ * Format, numbers in big endian: a header of the int {@link #MAGIC}, the short
+ * {@link #VERSION} and the wall clock time of the start in ms as a long. Then one record per
+ * event: the type as a byte, the ns since the previous record and the number of the connection
+ * or sender as variable length integers, and for lines and packets the length as variable length
+ * integer followed by the bytes.
+ * </p>
+ */
+public final class TrafficCapture {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficCapture.class);
+
+    /**
+     * First bytes of a capture file, "IGCP"
+     */
+    public static final int MAGIC = 0x49474350;
+    /**
+     * Version of the file format
+     */
+    public static final short VERSION = 1;
+    /**
+     * A TCP connection was opened
+     */
+    public static final byte CONNECT = 1;
+    /**
+     * A TCP line was received
+     */
+    public static final byte LINE = 2;
+    /**
+     * A TCP connection was closed
+     */
+    public static final byte CLOSE = 3;
+    /**
+     * A UDP packet was received
+     */
+    public static final byte DATAGRAM = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // type, time, stream and length
+    private static final int MAX_HEADER = 1 + 10 + 5 + 5;
+
+    private static volatile TrafficCapture active;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long start = System.nanoTime();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final AtomicInteger nextSource = new AtomicInteger();
+    private final ConcurrentHashMap<SocketAddress, Integer> sources = new ConcurrentHashMap<>();
+    // guarded by this
+    private long last = 0;
+    private long records = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a capture file, replacing an existing one.
+     *
+     * @param file The file to write
+     * @throws IOException if the file could not be created
+     */
+    TrafficCapture(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Starts recording to the file set with {@code -Digoat.capture}, if any. Only the first call
+     * has an effect. The recording is completed when the server or the JVM stops.
+     */
+    static synchronized void startRecording() {
+        String file = System.getProperty("igoat.capture");
+        if (file == null || file.isBlank() || active != null) {
+            return;
+        }
+        try {
+            active = new TrafficCapture(Path.of(file));
+            Runtime.getRuntime().addShutdownHook(new Thread(TrafficCapture::stopRecording,
+                "Capture-Shutdown"));
+            logger.info("Recording traffic to {}", file);
+        } catch (IOException e) {
+            logger.error("Could not create capture file {}", file, e);
+        }
+    }
+
+    /**
+     * Writes the rest of the recording and closes the file.
+     */
+    static synchronized void stopRecording() {
+        TrafficCapture capture = active;
+        if (capture != null) {
+            active = null;
+            capture.close();
+        }
+    }
+
+    /**
+     * Records a new TCP connection.
+     *
+     * @return The number of the connection in the capture, 0 if nothing is recorded
+     */
+    static int connected() {
+        TrafficCapture capture = active;
+        if (capture == null) {
+            return 0;
+        }
+        int connection = capture.nextConnection.incrementAndGet();
+        capture.write(CONNECT, connection, null);
+        return connection;
+    }
+
+    /**
+     * Records a line received on a TCP connection.
+     *
+     * @param connection The number from {@link #connected()}
+     * @param line       The received line
+     */
+    static void line(int connection, String line) {
+        TrafficCapture capture = active;
+        if (capture != null && connection != 0) {
+            capture.write(LINE, connection, ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Records that a TCP connection was closed.
+     *
+     * @param connection The number from {@link #connected()}
+     */
+    static void closed(int connection) {
+        TrafficCapture capture = active;
+        if (capture != null && connection != 0) {
+            capture.write(CLOSE, connection, null);
+        }
+    }
+
+    /**
+     * Records a received UDP packet.
+     *
+     * @param source The address the packet was sent from
+     * @param packet The packet from its position to its limit, which are not changed
+     */
+    static void datagram(SocketAddress source, ByteBuffer packet) {
+        TrafficCapture capture = active;
+        if (capture == null) {
+            return;
+        }
+        Integer id = capture.sources.get(source);
+        if (id == null) {
+            id = capture.sources.computeIfAbsent(source,
+                address -> capture.nextSource.incrementAndGet());
+        }
+        capture.write(DATAGRAM, id, packet);
+    }
+
+    private synchronized void write(byte type, int stream, ByteBuffer payload) {
+        if (closed) {
+            return;
+        }
+        try {
+            int length = payload == null ? 0 : payload.remaining();
+            if (buffer.remaining() < MAX_HEADER + length) {
+                flush();
+            }
+            long now = System.nanoTime() - start;
+            buffer.put(type);
+            putVarLong(buffer, now - last);
+            putVarLong(buffer, stream);
+            last = now;
+            if (payload != null) {
+                putVarLong(buffer, length);
+                if (length <= buffer.remaining()) {
+                    buffer.put(buffer.position(), payload, payload.position(), length);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    // longer than the whole buffer, written directly
+                    flush();
+                    ByteBuffer rest = payload.slice();
+                    while (rest.hasRemaining()) {
+                        channel.write(rest);
+                    }
+                }
+            }
+            records++;
+        } catch (IOException e) {
+            logger.error("Could not write to capture file {}, recording stopped", file, e);
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            channel.close();
+            logger.info("Recorded {} events to {}", records, file);
+        } catch (IOException e) {
+            logger.error("Could not complete capture file {}", file, e);
+        }
+    }
+
+    private static void putVarLong(ByteBuffer target, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    /**
+     * An event of a capture
+     *
+     * @param type    {@link #CONNECT}, {@link #LINE}, {@link #CLOSE} or {@link #DATAGRAM}
+     * @param nanos   Time of the event since the start of the capture
+     * @param stream  Number of the TCP connection or UDP sender
+     * @param payload The line or packet, null for other events
+     */
+    public record Event(byte type, long nanos, int stream, byte[] payload) {
+
+    }
+
+    /**
+     * Reads the events of a capture file in order.
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final long startMillis;
+        private long nanos = 0;
+
+        /**
+         * Opens a capture file and reads its header.
+         *
+         * @param file The capture file
+         * @throws IOException if the file can't be read or is not a capture
+         */
+        public Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a capture file: " + file);
+                }
+                short version = in.readShort();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported capture version " + version);
+                }
+                startMillis = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Gets the time the capture was started.
+         *
+         * @return The wall clock time in ms
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * Reads the next event. A capture that ends in the middle of an event, because the
+         * server was killed, ends before that event.
+         *
+         * @return The event or null at the end of the capture
+         * @throws IOException if the file can't be read
+         */
+        public Event next() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                return null;
+            }
+            try {
+                nanos += readVarLong();
+                int stream = (int) readVarLong();
+                byte[] payload = null;
+                if (type == LINE || type == DATAGRAM) {
+                    payload = new byte[(int) readVarLong()];
+                    in.readFully(payload);
+                }
+                return new Event((byte) type, nanos, stream, payload);
+            } catch (EOFException e) {
+                logger.warn("Capture ends with an incomplete event");
+                return null;
+            }
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed capture file");
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
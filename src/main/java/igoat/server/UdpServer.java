@@ -0,0 +1,284 @@
+package igoat.server;
+
+import igoat.UpdatePacket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * UDP front end for the server.
+ * <p>
+ * A single receive thread reads datagrams from a {@link DatagramChannel} into pooled buffers and
+ * hands them to a fixed number of worker threads. Packets are partitioned by lobby code, so all
+ * packets of one lobby are handled by the same worker in the order they arrived, while different
+ * lobbies are handled in parallel. A busy lobby only delays the lobbies that share its worker.
+ * Packets are dropped if no buffer is free or the queue of their worker is full. Other work of a
+ * lobby, like its tick, can be queued on the same worker with {@link #execute}, so it never runs
+ * concurrently with the packets of that lobby. The snapshots of the lobby ticks are sent through
+ * the same channel with {@link #send}.
+ * </p>
+ */
+final class UdpServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpServer.class);
+
+    /**
+     * Default number of worker threads if none is configured
+     */
+    static final int DEFAULT_WORKERS = Math.max(1,
+        Runtime.getRuntime().availableProcessors() / 2);
+    private static final int BUFFER_SIZE = 512;
+    private static final int QUEUE_SIZE = 1024;
+
+    /**
+     * Handles a received packet on a worker thread.
+     */
+    @FunctionalInterface
+    interface PacketHandler {
+
+        /**
+         * @param packet The received data, from position 0 to the limit. Only valid during the
+         *               call, the buffer is reused afterwards.
+         * @param source The address the packet was sent from
+         */
+        void handle(ByteBuffer packet, SocketAddress source);
+    }
+
+    /**
+     * A pooled receive buffer together with the sender of the packet in it. Running it hands the
+     * packet to the handler and returns the buffer to the pool.
+     */
+    private final class Datagram implements Runnable {
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        SocketAddress source;
+
+        @Override
+        public void run() {
+            try {
+                handler.handle(data, source);
+            } catch (Exception e) {
+                logger.error("Error handling UDP packet", e);
+            } finally {
+                source = null;
+                pool.offer(this);
+            }
+        }
+    }
+
+    private final int port;
+    private final PacketHandler handler;
+    private final Worker[] workers;
+    private final BlockingQueue<Datagram> pool;
+    private final AtomicLong dropped = new AtomicLong();
+    private DatagramChannel channel;
+    private Thread receiver;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a new UDP server. The server is not started until {@link #start()} is called.
+     *
+     * @param port    The UDP port to listen on
+     * @param workers Number of worker threads handling the packets
+     * @param handler Called for every received packet
+     */
+    UdpServer(int port, int workers, PacketHandler handler) {
+        this.port = port;
+        this.handler = handler;
+        this.workers = new Worker[Math.max(1, workers)];
+        pool = new ArrayBlockingQueue<>(this.workers.length * QUEUE_SIZE);
+        for (int i = 0; i < this.workers.length * QUEUE_SIZE; i++) {
+            pool.add(new Datagram());
+        }
+    }
+
+    /**
+     * Binds the channel and starts the receive and worker threads.
+     *
+     * @throws IOException if the channel could not be opened or bound
+     */
+    void start() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+        receiver = ServerThreads.start("Server-UDP-Receiver", this::receive);
+        logger.info("UDP server started on port {} with {} workers", port, workers.length);
+    }
+
+    /**
+     * Closes the channel and stops all threads. Packets that are still queued are discarded.
+     */
+    void stop() {
+        running = false;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.error("Could not close UDP channel", e);
+        }
+        for (Worker worker : workers) {
+            if (worker != null) {
+                worker.thread.interrupt();
+            }
+        }
+        if (receiver != null) {
+            try {
+                receiver.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Sends a packet from the port the server receives on. Can be called by several threads at
+     * once.
+     *
+     * @param packet The packet, from its position to its limit
+     * @param target The address of the client
+     * @throws IOException if the packet could not be sent
+     */
+    void send(ByteBuffer packet, SocketAddress target) throws IOException {
+        channel.send(packet, target);
+    }
+
+    /**
+     * Queues a task on the worker that handles the packets of a lobby.
+     *
+     * @param lobbyCode The code of the lobby
+     * @param task      The task, run after the packets queued before it
+     * @return false if the queue of the worker is full and the task was not queued
+     */
+    boolean execute(int lobbyCode, Runnable task) {
+        return workerFor(lobbyCode).queue.offer(task);
+    }
+
+    private Worker workerFor(int partitionKey) {
+        return workers[Math.floorMod(partitionKey, workers.length)];
+    }
+
+    /**
+     * Gets the number of packets dropped because the server could not keep up.
+     *
+     * @return The number of dropped packets
+     */
+    long getDroppedPackets() {
+        return dropped.get();
+    }
+
+    private void receive() {
+        ByteBuffer discard = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (running) {
+            Datagram datagram = pool.poll();
+            ByteBuffer target = datagram == null ? discard : datagram.data;
+            target.clear();
+            SocketAddress source;
+            try {
+                source = channel.receive(target);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("UDP receive error", e);
+                }
+                if (datagram != null) {
+                    pool.offer(datagram);
+                }
+                continue;
+            }
+
+            Metrics.UDP_RECEIVED.increment();
+            target.flip();
+            TrafficCapture.datagram(source, target);
+            if (datagram == null) {
+                drop();
+                continue;
+            }
+            datagram.source = source;
+            if (!workerFor(partitionKey(target)).queue.offer(datagram)) {
+                datagram.source = null;
+                pool.offer(datagram);
+                drop();
+            }
+        }
+        logger.info("UDP receiver stopped");
+    }
+
+    private void drop() {
+        Metrics.UDP_DROPPED.increment();
+        long count = dropped.incrementAndGet();
+        if ((count & (count - 1)) == 0) {
+            // log at powers of two only, an overloaded server shouldn't also flood the log
+            logger.warn("Dropped {} UDP packets so far", count);
+        }
+    }
+
+    /**
+     * Gets the value packets are partitioned by: the lobby code for binary packets and legacy text
+     * positions, 0 for everything else.
+     *
+     * @param packet The received packet
+     * @return The partition key
+     */
+    static int partitionKey(ByteBuffer packet) {
+        int length = packet.limit();
+        if (length >= UpdatePacket.HEADER_SIZE && packet.get(0) == UpdatePacket.MAGIC) {
+            return UpdatePacket.getLobbyCode(packet);
+        }
+        // position:nickname:lobbyCode:x:y
+        if (length > 9 && packet.get(0) == 'p' && packet.get(8) == ':') {
+            int i = 9;
+            while (i < length && packet.get(i) != ':') {
+                i++;
+            }
+            int code = 0;
+            for (i++; i < length && packet.get(i) >= '0' && packet.get(i) <= '9'; i++) {
+                code = code * 10 + packet.get(i) - '0';
+            }
+            return code;
+        }
+        return 0;
+    }
+
+    /**
+     * A worker thread handling the packets and tasks of its partitions in order
+     */
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Thread thread;
+
+        Worker(int index) {
+            thread = ServerThreads.start("Server-UDP-Worker-" + index, this);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Error in UDP worker", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package igoat.client;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CollisionRasterTest {
+    @Test
+    public void testCollisionRasterMatchesWalls() {
+        Map map = new Map(true);
+        int[][] sizes = {{32, 32}, {20, 32}};
+        for (int round = 0; round < 2; round++) {
+            for (int[] size : sizes) {
+                for (boolean ignoreWindows : new boolean[]{false, true}) {
+                    // every other pixel, including positions just outside the map
+                    for (int y = -80; y < map.getHeight() + 16; y += 2) {
+                        for (int x = -40; x < map.getWidth() + 16; x += 2) {
+                            assertEquals(
+                                map.collides(x, y, size[0], size[1], ignoreWindows),
+                                map.collidesAt(x, y, size[0], size[1], ignoreWindows),
+                                "at " + x + "," + y + " size " + size[0] + "x" + size[1]);
+                        }
+                    }
+                }
+            }
+            map.openDoors();
+        }
+    }
+}
@@ -8,6 +8,9 @@ import java.io.BufferedReader;
 import java.io.StringReader;
 import java.net.DatagramPacket;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import igoat.UpdatePacket;
+import igoat.WorldSnapshot;
 
 public class ServerHandlerTest {
     static class TestServerHandler extends ServerHandler {
@@ -18,7 +21,6 @@ public class ServerHandlerTest {
         public void setUpdateSocket(UDPSocket socket) { this.updateSocket = socket; }
         public void setMsgReader(BufferedReader reader) { this.msgReader = reader; }
         public void setConnected(boolean c) { this.connected = c; }
-        public void setLastUpdate(String update) { this.lastUpdate = update; }
         public void setConfirmedNickname(String n) { this.confirmedNickname = n; }
     }
 
@@ -62,11 +64,53 @@ public class ServerHandlerTest {
     }
 
     @Test
-    public void testGetLastUpdateClearsAndReturns() {
-        TestServerHandler handler = new TestServerHandler("localhost", 12345, "testuser");
-        handler.setLastUpdate("update1");
-        assertEquals("update1", handler.getLastUpdate());
-        assertEquals("", handler.getLastUpdate());
+    public void testPositionsKeepNewestOfEachPlayer() throws Exception {
+        TestServerHandler handler = startGame();
+        handler.setUpdateSocket(new MockUDPSocket());
+
+        WorldSnapshot snapshot = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+        ByteBuffer packet = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+        for (int sequence = 1; sequence <= 3; sequence++) {
+            snapshot.reset(sequence);
+            UpdatePacket.writeSnapshotHeader(packet, 1000, snapshot, 0);
+            UpdatePacket.writeSnapshotEntry(packet, 4, 10 * sequence, -sequence, 0);
+            if (sequence == 2) {
+                UpdatePacket.writeSnapshotEntry(packet, 3, 7, 8, UpdatePacket.STATE_CORRECTED);
+            }
+            packet.flip();
+            handler.receiveSnapshot(packet);
+        }
+
+        java.util.List<PositionUpdate> received = new java.util.ArrayList<>();
+        assertEquals(2, handler.drainPositions(
+            (nickname, x, y) -> received.add(new PositionUpdate(nickname, x, y))));
+        assertEquals(java.util.List.of(new PositionUpdate("bob", 30, -3),
+            new PositionUpdate("alice", 7, 8)), received);
+        assertNull(handler.getPosition());
+
+        // a receiver that is faster than the game still ends at the newest position
+        Thread receiver = new Thread(() -> {
+            WorldSnapshot next = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+            ByteBuffer update = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+            for (int sequence = 4; sequence <= 2000; sequence++) {
+                next.reset(sequence);
+                UpdatePacket.writeSnapshotHeader(update, 1000, next, 0);
+                UpdatePacket.writeSnapshotEntry(update, 4, sequence, 0, 0);
+                update.flip();
+                handler.receiveSnapshot(update);
+            }
+        });
+        receiver.start();
+        int[] last = {0};
+        while (receiver.isAlive()) {
+            handler.drainPositions((nickname, x, y) -> {
+                assertTrue(x > last[0]);
+                last[0] = x;
+            });
+        }
+        receiver.join();
+        handler.drainPositions((nickname, x, y) -> last[0] = x);
+        assertEquals(2000, last[0]);
     }
 
     @Test
@@ -85,6 +129,41 @@ public class ServerHandlerTest {
         assertTrue(handler.messageBuffer.stream().anyMatch(s -> s.contains("normalmsg")));
     }
 
+    @Test
+    public void testReceiveMSGReadsOnOneThreadUntilClosed() throws Exception {
+        try (java.net.ServerSocket server = new java.net.ServerSocket(0)) {
+            TestServerHandler handler = new TestServerHandler("localhost", 12345, "testuser");
+            handler.msgSocket = new java.net.Socket("localhost", server.getLocalPort());
+            handler.setMsgReader(new BufferedReader(
+                new java.io.InputStreamReader(handler.msgSocket.getInputStream())));
+            handler.setMsgWriter(new PrintWriter(handler.msgSocket.getOutputStream(), true));
+            handler.setConnected(true);
+            try (java.net.Socket peer = server.accept()) {
+                int threads = Thread.activeCount();
+                handler.messageReceiver = new Thread(handler::receiveMSG);
+                handler.messageReceiver.start();
+                PrintWriter out = new PrintWriter(peer.getOutputStream(), true);
+                for (int i = 0; i < 1000; i++) {
+                    out.println("chat:" + i);
+                }
+                long deadline = System.currentTimeMillis() + 5000;
+                while (handler.messageBuffer.size() < 1000
+                    && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1000, handler.messageBuffer.size());
+                assertEquals("chat:0", handler.getMessage());
+                assertTrue(Thread.activeCount() <= threads + 1);
+
+                // the receiver is blocked waiting for the next message, close ends it
+                long start = System.currentTimeMillis();
+                handler.close();
+                assertFalse(handler.messageReceiver.isAlive());
+                assertTrue(System.currentTimeMillis() - start < 1000);
+            }
+        }
+    }
+
     @Test
     public void testSendUdpRegistrationPacketSendsCorrectData() throws Exception {
         MockUDPSocket mockSocket = new MockUDPSocket();
@@ -140,16 +219,26 @@ public class ServerHandlerTest {
     }
 
     @Test
-    public void testReceiveUpdateIgnoresUdpAck() throws Exception {
+    public void testReceiveUpdateQueuesTextMessages() throws Exception {
         TestServerHandler handler = new TestServerHandler("localhost", 12345, "testuser");
-        handler.setConnected(true);
-        handler.lastUpdate = "";
-        String udpAck = "udp_ack:foo";
-        String normalUpdate = "player_position:foo:1:2:3";
-        if (!udpAck.startsWith("udp_ack:")) handler.lastUpdate = udpAck;
-        assertEquals("", handler.lastUpdate);
-        if (!normalUpdate.startsWith("udp_ack:")) handler.lastUpdate = normalUpdate;
-        assertEquals(normalUpdate, handler.lastUpdate);
+        try (java.net.DatagramSocket socket = new java.net.DatagramSocket(0,
+            java.net.InetAddress.getLoopbackAddress());
+            java.net.DatagramSocket server = new java.net.DatagramSocket()) {
+            handler.setUpdateSocket(new RealUDPSocket(socket));
+            handler.setConnected(true);
+            Thread receiver = new Thread(handler::receiveUpdate);
+            receiver.start();
+            for (String msg : new String[]{"udp_ack:foo", "door", "door", "chat:hi"}) {
+                byte[] data = msg.getBytes();
+                server.send(new DatagramPacket(data, data.length, socket.getLocalSocketAddress()));
+            }
+            assertEquals("door", handler.messageBuffer.poll(2, java.util.concurrent.TimeUnit.SECONDS));
+            assertEquals("chat:hi", handler.messageBuffer.poll(2, java.util.concurrent.TimeUnit.SECONDS));
+            assertNull(handler.getMessage());
+            handler.setConnected(false);
+            receiver.join(1000);
+            assertFalse(receiver.isAlive());
+        }
     }
 
     @Test
@@ -171,4 +260,116 @@ public class ServerHandlerTest {
         handler.setConnected(true);
         handler.sendUpdate("test");
     }
+
+    @Test
+    public void testSendPositionSendsBinaryPacket() {
+        MockUDPSocket mockSocket = new MockUDPSocket();
+        TestServerHandler handler = new TestServerHandler("127.0.0.1", 12345, "testuser");
+        handler.setUpdateSocket(mockSocket);
+        handler.setConnected(true);
+        handler.sendPosition(1000, 12, 34);
+        assertEquals(0, mockSocket.sentPackets.size());
+
+        handler.playerId = 7;
+        handler.sendPosition(1000, 12, -34);
+        assertEquals(1, mockSocket.sentPackets.size());
+        DatagramPacket sent = mockSocket.sentPackets.get(0);
+        ByteBuffer packet = ByteBuffer.wrap(sent.getData(), 0, sent.getLength()).slice();
+        assertTrue(UpdatePacket.isValid(packet));
+        assertEquals(UpdatePacket.TYPE_POSITION, UpdatePacket.getType(packet));
+        assertEquals(1000, UpdatePacket.getLobbyCode(packet));
+        assertEquals(1, UpdatePacket.getCount(packet));
+        assertEquals(7, UpdatePacket.getPlayerId(packet, 0));
+        assertEquals(12, UpdatePacket.getX(packet, 0));
+        assertEquals(-34, UpdatePacket.getY(packet, 0));
+    }
+
+    @Test
+    public void testReceiveSnapshotResolvesPlayerIds() throws Exception {
+        TestServerHandler handler = startGame();
+        MockUDPSocket mockSocket = new MockUDPSocket();
+        handler.setUpdateSocket(mockSocket);
+
+        WorldSnapshot snapshot = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+        snapshot.reset(1);
+        ByteBuffer packet = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+        UpdatePacket.writeSnapshotHeader(packet, 1000, snapshot, 0);
+        UpdatePacket.writeSnapshotEntry(packet, 4, 100, 200, 0);
+        UpdatePacket.writeSnapshotEntry(packet, 9, 1, 1, 0);
+        UpdatePacket.writeSnapshotEntry(packet, 3, 70000, 5, UpdatePacket.STATE_CORRECTED);
+        packet.flip();
+        handler.receiveSnapshot(packet);
+
+        assertEquals(new PositionUpdate("bob", 100, 200), handler.getPosition());
+        assertEquals(new PositionUpdate("alice", Short.MAX_VALUE, 5), handler.getPosition());
+        assertNull(handler.getPosition());
+
+        assertEquals(1, mockSocket.sentPackets.size());
+        DatagramPacket sent = mockSocket.sentPackets.get(0);
+        ByteBuffer ack = ByteBuffer.wrap(sent.getData(), 0, sent.getLength()).slice();
+        assertTrue(UpdatePacket.isValid(ack));
+        assertEquals(UpdatePacket.TYPE_ACK, UpdatePacket.getType(ack));
+        assertEquals(1000, UpdatePacket.getLobbyCode(ack));
+        assertEquals(3, UpdatePacket.getAckPlayerId(ack));
+        assertEquals(1, UpdatePacket.getSequence(ack));
+    }
+
+    @Test
+    public void testSnapshotDeltaDeliversEventsOnce() throws Exception {
+        TestServerHandler handler = startGame();
+        handler.setUpdateSocket(new MockUDPSocket());
+
+        WorldSnapshot snapshot = new WorldSnapshot(UpdatePacket.MAX_ENTRIES);
+        snapshot.reset(1);
+        ByteBuffer packet = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+        UpdatePacket.writeSnapshotHeader(packet, 1000, snapshot, 0);
+        UpdatePacket.writeSnapshotEntry(packet, 4, 100, 200, 0);
+        packet.flip();
+        handler.receiveSnapshot(packet);
+        assertEquals(new PositionUpdate("bob", 100, 200), handler.getPosition());
+
+        // bob got caught without moving, terminal 1 and the doors opened
+        snapshot.reset(2);
+        snapshot.setWorld(true, 0b10, 0);
+        UpdatePacket.writeSnapshotHeader(packet, 1000, snapshot, 1);
+        UpdatePacket.writeSnapshotEntry(packet, 4, 100, 200, UpdatePacket.STATE_CAUGHT);
+        packet.flip();
+        handler.receiveSnapshot(packet);
+        // an older snapshot arriving late is ignored
+        snapshot.reset(1);
+        UpdatePacket.writeSnapshotHeader(packet, 1000, snapshot, 0);
+        packet.flip();
+        handler.receiveSnapshot(packet);
+
+        assertNull(handler.getPosition());
+        assertEquals("catch:bob", handler.getMessage());
+        assertEquals("terminal:1", handler.getMessage());
+        assertEquals("door", handler.getMessage());
+        assertNull(handler.getMessage());
+
+        // the same events arriving via TCP are not delivered again
+        handler.setMsgReader(new BufferedReader(
+            new StringReader("door\ncatch:bob\nterminal:1\nterminal:-1\nrevive:bob\n")));
+        handler.setConnected(true);
+        Thread t = new Thread(() -> handler.receiveMSG());
+        t.start();
+        t.join(200);
+        assertEquals("terminal:-1", handler.getMessage());
+        assertEquals("revive:bob", handler.getMessage());
+        assertNull(handler.getMessage());
+    }
+
+    private TestServerHandler startGame() throws Exception {
+        String input = "udp_id:3\nplayerids:alice=3,bob=4\n";
+        TestServerHandler handler = new TestServerHandler("localhost", 12345, "testuser");
+        handler.setMsgReader(new BufferedReader(new StringReader(input)));
+        handler.setMsgWriter(new PrintWriter(new StringWriter()));
+        handler.setConnected(true);
+        Thread t = new Thread(() -> handler.receiveMSG());
+        t.start();
+        t.join(200);
+        assertEquals(3, handler.playerId);
+        assertTrue(handler.messageBuffer.isEmpty());
+        return handler;
+    }
 }
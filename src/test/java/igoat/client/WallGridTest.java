@@ -0,0 +1,98 @@
+package igoat.client;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class WallGridTest {
+    @Test
+    public void testGridMatchesAllWallsOfTheMap() {
+        Map map = new Map(true);
+        // player sizes and a query spanning several cells
+        int[][] sizes = {{32, 32}, {20, 32}, {200, 150}};
+        List<Wall> found = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            List<Wall> walls = new ArrayList<>(map.getCollisionWalls());
+            List<Wall> windows = map.getWindowCollisions();
+            for (int[] size : sizes) {
+                // including positions outside the grid, which are clamped to its border cells
+                for (int y = -200; y < map.getHeight() + 200; y += 9) {
+                    for (int x = -200; x < map.getWidth() + 200; x += 9) {
+                        String at = "at " + x + "," + y + " size " + size[0] + "x" + size[1];
+                        List<Wall> wallsHit = overlapping(walls, x, y, size[0], size[1]);
+                        List<Wall> windowsHit = overlapping(windows, x, y, size[0], size[1]);
+                        assertEquals(!wallsHit.isEmpty(),
+                            map.collides(x, y, size[0], size[1], true), at);
+                        assertEquals(!wallsHit.isEmpty() || !windowsHit.isEmpty(),
+                            map.collides(x, y, size[0], size[1], false), at);
+
+                        found.clear();
+                        map.queryWalls(x, y, size[0], size[1], true, found);
+                        // every wall once, even if it spans several cells of the query
+                        assertEquals(found.size(), identitySet(found).size(), at);
+                        wallsHit.addAll(windowsHit);
+                        assertEquals(identitySet(wallsHit), identitySet(found), at);
+                    }
+                }
+            }
+            map.openDoors();
+        }
+    }
+
+    @Test
+    public void testWallsAreClampedAndRemoved() {
+        WallGrid grid = new WallGrid(0, 0, 100, 100, 10);
+        Wall large = new Wall(5, 5, 50, 30);
+        Wall outside = new Wall(-50, -50, 20, 20);
+        Wall right = new Wall(150, 20, 10, 10);
+        grid.add(large);
+        grid.add(outside);
+        grid.add(right);
+
+        assertTrue(grid.intersects(30, 20, 1, 1));
+        assertTrue(grid.intersects(-45, -45, 5, 5));
+        assertTrue(grid.intersects(155, 25, 1, 1));
+        assertFalse(grid.intersects(120, 25, 1, 1));
+        assertFalse(grid.intersects(60, 60, 30, 30));
+
+        List<Wall> found = new ArrayList<>();
+        grid.query(-100, -100, 300, 300, found);
+        assertEquals(3, found.size());
+        assertEquals(identitySet(List.of(large, outside, right)), identitySet(found));
+
+        // walls are removed by identity
+        grid.remove(new Wall(5, 5, 50, 30));
+        assertTrue(grid.intersects(30, 20, 1, 1));
+        grid.remove(large);
+        assertFalse(grid.intersects(30, 20, 1, 1));
+        found.clear();
+        grid.query(0, 0, 100, 100, found);
+        assertTrue(found.isEmpty());
+        assertTrue(grid.intersects(-45, -45, 5, 5));
+
+        grid.clear();
+        assertFalse(grid.intersects(-45, -45, 5, 5));
+        assertFalse(grid.intersects(155, 25, 1, 1));
+    }
+
+    private static List<Wall> overlapping(List<Wall> walls, double x, double y, double width,
+        double height) {
+        List<Wall> result = new ArrayList<>();
+        for (Wall wall : walls) {
+            if (Player.collidesWithWall(x, y, width, height, wall)) {
+                result.add(wall);
+            }
+        }
+        return result;
+    }
+
+    private static Set<Wall> identitySet(List<Wall> walls) {
+        Set<Wall> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(walls);
+        return set;
+    }
+}
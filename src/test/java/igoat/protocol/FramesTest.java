@@ -0,0 +1,40 @@
+package igoat.protocol;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FramesTest {
+    @Test
+    public void testFramesRoundTripThroughDecoder() {
+        List<String> lines = List.of("catch:alice", "door", "game_started:", "timer:1234:500",
+            "whisper:bob,hi: there", "not a command", "Chat:äöü");
+        ByteBuffer stream = ByteBuffer.allocate(1024);
+        for (String line : lines) {
+            stream.put(Frames.encode(line));
+        }
+        stream.flip();
+
+        // feed the frames in small chunks, like a slow connection would
+        FrameDecoder decoder = new FrameDecoder(8192);
+        ByteBuffer received = ByteBuffer.allocate(64);
+        List<String> decoded = new ArrayList<>();
+        while (stream.hasRemaining()) {
+            int chunk = Math.min(5, stream.remaining());
+            received.put(stream.slice(stream.position(), chunk));
+            stream.position(stream.position() + chunk);
+            received.flip();
+            while (decoder.next(received)) {
+                decoded.add(decoder.text());
+            }
+            received.compact();
+        }
+        assertEquals(List.of("catch:alice", "door", "game_started:", "timer:1234:500",
+            "whisper:bob,hi: there", "not a command", "chat:äöü"), decoded);
+
+        ByteBuffer invalid = ByteBuffer.wrap(new byte[]{0, 1, (byte) 200});
+        assertThrows(MalformedMessageException.class, () -> decoder.next(invalid));
+    }
+}
@@ -0,0 +1,14 @@
+package igoat.protocol;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageTest {
+    @Test
+    public void testParseSplitsOpcodeAndPayload() {
+        Message message = Message.parse("LeaveSpectate:x:42");
+        assertEquals(Opcode.LEAVE_SPECTATE, message.opcode());
+        assertEquals("x:42", message.payload());
+        assertFalse(Message.parse("door").hasPayload());
+    }
+}
@@ -2,11 +2,17 @@ package igoat.server;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import igoat.Role;
 import igoat.Timer;
+import igoat.UpdatePacket;
 import org.junit.jupiter.api.BeforeAll;
 import java.util.Locale;
 
@@ -185,7 +191,7 @@ public class ClientHandlerTest {
         @Override public void broadcastToAll(String msg) {}
         @Override public void broadcastToLobby(String msg) {}
         @Override public void broadcastChatToLobby(String msg) {}
-        @Override public igoat.client.Map getMap() { return null; }
+        @Override public LobbyMap getMap() { return null; }
         @Override public Timer getTimer() { return new Timer(); }
         @Override public void endGame() {}
     }
@@ -238,6 +244,35 @@ public class ClientHandlerTest {
         }
     }
 
+    @Test
+    public void testCatchPlayerOutOfRange() {
+        TestClientHandler handler = new TestClientHandler(null);
+        handler.player = new DummyPlayer(Role.GUARD);
+        handler.currentLobby = new DummyLobby(new DummyGameState());
+        TestClientHandler target = new TestClientHandler(null);
+        target.player = new DummyPlayer(Role.IGOAT);
+        target.player.setX(500);
+        handler.nickname = "handler";
+        target.nickname = "dummy";
+        ((DummyLobby)handler.currentLobby).getMembers().add(target);
+        ClientHandler.clientList.add(handler);
+        ClientHandler.clientList.add(target);
+        try {
+            handler.handleCommand("catch:dummy");
+            assertTrue(handler.errors.stream().anyMatch(msg -> msg.contains("range")));
+            assertFalse(target.player.isCaught());
+
+            handler.errors.clear();
+            target.player.setX(30);
+            handler.handleCommand("catch:dummy");
+            assertTrue(handler.errors.isEmpty());
+            assertTrue(target.player.isCaught());
+        } finally {
+            ClientHandler.clientList.remove(handler);
+            ClientHandler.clientList.remove(target);
+        }
+    }
+
     @Test
     public void testRevivePlayerNotFound() {
         TestClientHandler handler = new TestClientHandler(null);
@@ -374,6 +409,47 @@ public class ClientHandlerTest {
             ClientHandler.clientList.remove(handler);
         }
     }
-}
 
+    @Test
+    public void testUdpPositionUpdatesDoNotAllocate() throws Exception {
+        TestClientHandler handler = new TestClientHandler(null);
+        handler.nickname = "walker";
+        handler.player = new DummyPlayer(Role.GUARD);
+        handler.player.setPositionWasSet(true);
+        handler.currentLobby = new DummyLobby(new DummyGameState());
+        InetSocketAddress endpoint = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40000);
+        ClientHandler.clientList.add(handler);
+        ClientHandler.clientList.registerEndpoint(handler, endpoint);
+
+        ByteBuffer binary = ByteBuffer.allocateDirect(UpdatePacket.MAX_SIZE);
+        ByteBuffer text = ByteBuffer.allocateDirect(UpdatePacket.MAX_SIZE);
+        text.put("position:walker:1234:-7:31".getBytes(StandardCharsets.US_ASCII)).flip();
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try {
+            // warm up, so the measured loop runs compiled code
+            sendPositions(binary, text, handler, endpoint, 50_000);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            sendPositions(binary, text, handler, endpoint, 10_000);
+            long allocated = threads.getCurrentThreadAllocatedBytes() - before;
 
+            assertEquals(-7.0, handler.player.getX(), 0.0);
+            assertEquals(31.0, handler.player.getY(), 0.0);
+            // a single allocation per packet would already be 20000 * 16 bytes
+            assertTrue(allocated < 4096, "allocated " + allocated + " bytes");
+        } finally {
+            ClientHandler.clientList.remove(handler);
+        }
+    }
+
+    private static void sendPositions(ByteBuffer binary, ByteBuffer text, ClientHandler handler,
+        InetSocketAddress endpoint, int count) {
+        for (int i = 0; i < count; i++) {
+            UpdatePacket.writeHeader(binary, UpdatePacket.TYPE_POSITION, 1234);
+            UpdatePacket.writeEntry(binary, handler.getPlayerId(), i % 100, i % 50);
+            binary.flip();
+            ClientHandler.handleDatagram(binary, endpoint);
+            ClientHandler.handleDatagram(text, endpoint);
+        }
+    }
+}
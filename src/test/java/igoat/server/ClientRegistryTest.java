@@ -0,0 +1,98 @@
+package igoat.server;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+public class ClientRegistryTest {
+    @BeforeAll
+    public static void setupLanguageManager() {
+        igoat.client.LanguageManager.init("lang.text", Locale.ENGLISH);
+    }
+
+    private static ClientHandler client(String nickname) {
+        ClientHandler client = new ClientHandler(null);
+        client.nickname = nickname;
+        return client;
+    }
+
+    @Test
+    public void testRegisterAndUnregister() {
+        ClientRegistry clients = new ClientRegistry();
+        ClientHandler alice = client("alice");
+        ClientHandler bob = client("bob");
+        assertTrue(clients.add(alice));
+        assertTrue(clients.add(bob));
+        assertFalse(clients.add(alice));
+        assertEquals(2, clients.size());
+        assertSame(alice, clients.findByNickname("alice"));
+        assertSame(bob, clients.findById(bob.getPlayerId()));
+
+        alice.nickname = "alice2";
+        clients.rename(alice, "alice");
+        assertNull(clients.findByNickname("alice"));
+        assertSame(alice, clients.findByNickname("alice2"));
+
+        assertTrue(clients.remove(alice));
+        assertFalse(clients.remove(alice));
+        assertFalse(clients.contains(alice));
+        assertNull(clients.findByNickname("alice2"));
+        assertNull(clients.findById(alice.getPlayerId()));
+        assertSame(bob, clients.findByNickname("bob"));
+        assertEquals(1, clients.size());
+    }
+
+    @Test
+    public void testReregisteredEndpointReplacesTheOldOne() {
+        ClientRegistry clients = new ClientRegistry();
+        ClientHandler alice = client("alice");
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetSocketAddress first = new InetSocketAddress(loopback, 5000);
+        InetSocketAddress second = new InetSocketAddress(loopback, 5001);
+
+        // a client that is not registered gets the endpoint, but is not indexed by it
+        clients.registerEndpoint(alice, first);
+        assertEquals(first, alice.udpEndpoint);
+        assertNull(clients.findByEndpoint(first));
+
+        clients.add(alice);
+        assertSame(alice, clients.findByEndpoint(first));
+        clients.registerEndpoint(alice, second);
+        assertEquals(second, alice.udpEndpoint);
+        assertNull(clients.findByEndpoint(first));
+        assertSame(alice, clients.findByEndpoint(new InetSocketAddress(loopback, 5001)));
+
+        clients.remove(alice);
+        assertNull(clients.findByEndpoint(second));
+    }
+
+    @Test
+    public void testSnapshotStaysTheSameWhileClientsJoinAndLeave() {
+        ClientRegistry clients = new ClientRegistry();
+        ClientHandler alice = client("alice");
+        ClientHandler bob = client("bob");
+        ClientHandler carol = client("carol");
+        clients.add(alice);
+        clients.add(bob);
+        List<ClientHandler> before = clients.snapshot();
+        assertSame(before, clients.snapshot());
+
+        Iterator<ClientHandler> iterator = clients.iterator();
+        assertSame(alice, iterator.next());
+        clients.add(carol);
+        clients.remove(alice);
+        assertSame(bob, iterator.next());
+        assertFalse(iterator.hasNext());
+
+        assertEquals(List.of(alice, bob), before);
+        assertEquals(List.of(bob, carol), clients.snapshot());
+        // added again, so it comes last
+        clients.add(alice);
+        assertEquals(List.of(bob, carol, alice), clients.snapshot());
+    }
+}
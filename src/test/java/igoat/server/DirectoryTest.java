@@ -0,0 +1,55 @@
+package igoat.server;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class DirectoryTest {
+    @BeforeAll
+    public static void setupLanguageManager() {
+        igoat.client.LanguageManager.init("lang.text", Locale.ENGLISH);
+    }
+
+    static class RecordingClientHandler extends ClientHandler {
+        List<String> sent = new ArrayList<>();
+        RecordingClientHandler(String nickname) {
+            super(null);
+            this.nickname = nickname;
+        }
+        @Override
+        void sendMessage(String message) {
+            sent.add(message);
+        }
+    }
+
+    @Test
+    public void testDirectorySkipsClientsWithCurrentVersion() {
+        ClientRegistry clients = new ClientRegistry();
+        Directory directory = new Directory(clients, new LobbyRegistry());
+        RecordingClientHandler alice = new RecordingClientHandler("alice");
+        clients.add(alice);
+        directory.publish();
+        assertEquals(List.of("getlobbies:", "getplayers:alice"), alice.sent);
+
+        // nothing new, or the same list again
+        alice.sent.clear();
+        directory.publish();
+        directory.playersChanged();
+        directory.publish();
+        assertTrue(alice.sent.isEmpty());
+
+        RecordingClientHandler bob = new RecordingClientHandler("bob");
+        clients.add(bob);
+        directory.playersChanged();
+        directory.publish();
+        assertEquals(List.of("getplayers:alice,bob"), alice.sent);
+        assertEquals(List.of("getlobbies:", "getplayers:alice,bob"), bob.sent);
+
+        // explicit requests are always answered
+        directory.sendPlayers(alice);
+        assertEquals("getplayers:alice,bob", alice.sent.get(alice.sent.size() - 1));
+    }
+}
@@ -0,0 +1,40 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class GameLogTest {
+    @Test
+    public void testGameLogReadsPagesAcrossSegments() throws Exception {
+        Path directory = Files.createTempDirectory("games");
+        GameLog gameLog = new GameLog(directory, 4, 3);
+        gameLog.open();
+        for (int i = 0; i < 11; i++) {
+            gameLog.append("{\"game\":" + i + "}");
+        }
+        assertEquals(11, gameLog.size());
+        // the last 3 games are kept in memory
+        assertTrue(gameLog.isInMemory(8));
+        assertFalse(gameLog.isInMemory(7));
+        assertEquals(List.of("{\"game\":2}", "{\"game\":3}", "{\"game\":4}",
+            "{\"game\":5}"), gameLog.read(2, 4));
+        assertEquals(List.of("{\"game\":7}", "{\"game\":8}", "{\"game\":9}",
+            "{\"game\":10}"), gameLog.read(7, 100));
+        gameLog.close();
+
+        // an incomplete line from a crash is dropped when the log is opened again
+        Files.writeString(directory.resolve("finished_games-00002.log"), "{\"gam",
+            StandardOpenOption.APPEND);
+        GameLog reopened = new GameLog(directory, 4, 3);
+        reopened.open();
+        assertEquals(11, reopened.size());
+        assertEquals(gameLog.read(0, 11), reopened.read(0, 11));
+        reopened.append("{\"game\":11}");
+        assertEquals(List.of("{\"game\":10}", "{\"game\":11}"), reopened.read(10, 2));
+        reopened.close();
+    }
+}
@@ -0,0 +1,34 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LeaderboardTest {
+    @Test
+    public void testLeaderboardKeepsBestTimesAndCompactsJournal() throws Exception {
+        Path file = Files.createTempFile("highscores", ".txt");
+        Files.writeString(file,
+            "slow,9000,2024-01-01 10:00\nalice, bob,3000,2024-01-01 10:00\ninvalid\n");
+        Leaderboard leaderboard = new Leaderboard(file, 3, "none\n");
+        leaderboard.load();
+        assertTrue(leaderboard.getText().startsWith("1. alice, bob - Time: 0:03.00"));
+
+        for (int i = 0; i < 20; i++) {
+            Leaderboard.Entry entry = new Leaderboard.Entry("p" + i, 2000 - i, "2024-01-02 10:00");
+            long sequence = leaderboard.add(entry);
+            if (sequence != -1) {
+                leaderboard.append(entry, sequence);
+            }
+        }
+        assertEquals(-1, leaderboard.add(new Leaderboard.Entry("late", 5000, "-")));
+        assertTrue(Files.readAllLines(file).size() <= 12);
+
+        Leaderboard reloaded = new Leaderboard(file, 3, "none\n");
+        reloaded.load();
+        assertEquals(leaderboard.getText(), reloaded.getText());
+        assertTrue(reloaded.getText().startsWith("1. p19 - Time: 0:01.98"));
+        Files.deleteIfExists(file);
+    }
+}
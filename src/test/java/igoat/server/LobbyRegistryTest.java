@@ -0,0 +1,32 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+
+public class LobbyRegistryTest {
+    @Test
+    public void testLobbiesAreFoundByCodeUntilRemoved() {
+        LobbyRegistry lobbies = new LobbyRegistry();
+        Lobby first = new Lobby(1000);
+        Lobby second = new Lobby(1001);
+        assertTrue(lobbies.add(first));
+        assertTrue(lobbies.add(second));
+        assertFalse(lobbies.add(first));
+        assertSame(first, lobbies.findByCode(1000));
+        assertSame(second, lobbies.findByCode(1001));
+
+        List<Lobby> before = lobbies.snapshot();
+        assertTrue(lobbies.remove(first));
+        assertFalse(lobbies.remove(first));
+        assertNull(lobbies.findByCode(1000));
+        assertEquals(List.of(first, second), before);
+        assertEquals(List.of(second), lobbies.snapshot());
+
+        // removing an old lobby doesn't remove a newer one with the same code
+        Lobby replacement = new Lobby(1001);
+        lobbies.add(replacement);
+        lobbies.remove(second);
+        assertSame(replacement, lobbies.findByCode(1001));
+    }
+}
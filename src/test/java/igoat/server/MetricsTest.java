@@ -0,0 +1,42 @@
+package igoat.server;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Locale;
+
+public class MetricsTest {
+    @BeforeAll
+    public static void setupLanguageManager() {
+        igoat.client.LanguageManager.init("lang.text", Locale.ENGLISH);
+    }
+
+    @Test
+    public void testMetricsHistogramAndExposition() {
+        Metrics.Histogram histogram = Metrics.PING_RTT;
+        long before = histogram.count();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(before + 1000, histogram.count());
+        for (long value : new long[]{0, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = Metrics.Histogram.index(value);
+            assertTrue(value <= Metrics.Histogram.upperBound(index));
+            assertTrue(index == 0 || value > Metrics.Histogram.upperBound(index - 1));
+        }
+        if (before == 0) {
+            // within the precision of a bucket
+            assertEquals(500_000, histogram.quantile(0.5), 500_000 / 16.0);
+            assertEquals(990_000, histogram.quantile(0.99), 990_000 / 16.0);
+        }
+
+        long collisions = Metrics.COLLISIONS_PREVENTED.get();
+        Metrics.COLLISIONS_PREVENTED.increment();
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE igoat_collisions_prevented_total counter\n"
+            + "igoat_collisions_prevented_total " + (collisions + 1) + "\n"));
+        assertTrue(text.contains("igoat_ping_rtt_seconds{quantile=\"0.99\"} "));
+        assertTrue(text.contains("igoat_lobbies{state=\"open\"} "));
+        assertEquals(1, text.split("# TYPE igoat_lobbies ", -1).length - 1);
+    }
+}
@@ -0,0 +1,138 @@
+package igoat.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import igoat.protocol.Frames;
+
+public class NioServerTest {
+    @BeforeAll
+    public static void setupLanguageManager() {
+        igoat.client.LanguageManager.init("lang.text", Locale.ENGLISH);
+    }
+
+    private NioServer server;
+    private Thread acceptor;
+    private int port;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new NioServer(port, 1);
+        acceptor = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        server.stop();
+        acceptor.join(1000);
+    }
+
+    @Test
+    public void testLinesSplitAcrossReadsAreJoined() throws Exception {
+        try (Socket socket = connect()) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            // every part arrives in its own read on the server
+            send(socket, "conn");
+            send(socket, "ect:niosp");
+            send(socket, "lit\r");
+            send(socket, "\n");
+            assertEquals("confirm:niosplit", readUntil(in, "confirm:"));
+        }
+    }
+
+    @Test
+    public void testFramesSplitAcrossReadsAreDecoded() throws Exception {
+        try (Socket socket = connect()) {
+            InputStream in = socket.getInputStream();
+            byte[] frame = Frames.encode("connect:nioframes");
+            byte[] request = ("protocol:" + Frames.FRAMED_VERSION + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+            // the switch and the start of the first frame arrive in the same read
+            byte[] first = Arrays.copyOf(request, request.length + 3);
+            System.arraycopy(frame, 0, first, request.length, 3);
+            send(socket, first);
+            assertEquals("protocol:" + Frames.FRAMED_VERSION, readRawLine(in));
+
+            send(socket, Arrays.copyOfRange(frame, 3, 8));
+            send(socket, Arrays.copyOfRange(frame, 8, frame.length));
+            DataInputStream frames = new DataInputStream(in);
+            String message;
+            while ((message = Frames.read(frames)) != null && !message.startsWith("confirm:")) {
+                // udp_id and lists sent before the confirmation
+            }
+            assertEquals("confirm:nioframes", message);
+        }
+    }
+
+    private Socket connect() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Socket socket = new Socket("localhost", port);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(2000);
+                return socket;
+            } catch (IOException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static void send(Socket socket, String part) throws Exception {
+        send(socket, part.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(Socket socket, byte[] part) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(part);
+        out.flush();
+        Thread.sleep(20);
+    }
+
+    private static String readRawLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String readUntil(BufferedReader in, String prefix) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundQueueTest {
+    @Test
+    public void testOutboundQueueCollapsesListsAndLimitsSlowClients() {
+        OutboundQueue queue = new OutboundQueue(64, OutboundQueue.Policy.DISCONNECT);
+        assertTrue(queue.offer("getplayers:alice"));
+        assertTrue(queue.offer("chat:hi"));
+        assertTrue(queue.offer("getplayers:alice,bob"));
+        StringBuilder batch = new StringBuilder();
+        assertTrue(queue.drainTo(batch));
+        assertEquals("chat:hi\ngetplayers:alice,bob\n", batch.toString());
+        assertFalse(queue.drainTo(batch));
+
+        String line = "chat:" + "x".repeat(20);
+        assertTrue(queue.offer(line));
+        assertTrue(queue.offer(line));
+        assertFalse(queue.offer(line));
+
+        OutboundQueue dropping = new OutboundQueue(64, OutboundQueue.Policy.DROP);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(dropping.offer(line));
+        }
+        batch.setLength(0);
+        dropping.drainTo(batch);
+        assertEquals(2, batch.toString().split("\n").length);
+    }
+}
@@ -0,0 +1,39 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import igoat.Role;
+
+public class PersistenceStageTest {
+    @Test
+    public void testPersistenceStageSavesQueuedGamesOnShutdown() throws Exception {
+        Path directory = Files.createTempDirectory("games");
+        GameLog gameLog = new GameLog(directory, 4, 3);
+        gameLog.open();
+        PersistenceStage stage = new PersistenceStage(gameLog, 2,
+            PersistenceStage.SyncPolicy.parse("always"));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // no guard in the game, so no highscore files are written
+            GameResult result = new GameResult(LocalDateTime.of(2025, 1, 1, 12, i), 1000 + i,
+                true, 1000, List.of(new GameResult.PlayerResult("goat" + i, Role.GOAT)));
+            assertTrue(stage.enqueue(result));
+            expected.add(result.toJson());
+        }
+        stage.shutdown();
+        assertFalse(stage.enqueue(new GameResult(LocalDateTime.now(), 1, true, 0, List.of())));
+
+        assertEquals("{\"timestamp\":\"2025-01-01T12:00:00\",\"lobby\":1000,\"result\":true,"
+            + "\"players\":[{\"name\":\"goat0\",\"role\":\"GOAT\",\"outcome\":\"Lost\"}]}",
+            expected.getFirst());
+        GameLog reopened = new GameLog(directory, 4, 3);
+        reopened.open();
+        assertEquals(expected, reopened.read(0, 10));
+        reopened.close();
+    }
+}
@@ -0,0 +1,45 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelTest {
+    @Test
+    public void testTaskRunsAfterItsDelay() throws Exception {
+        // 8 buckets of 10 ms, so the delay needs more than one round of the wheel
+        TimingWheel wheel = new TimingWheel(10, 8);
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(ran::countDown, 150);
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 140, "ran after " + elapsed + " ms");
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        TimingWheel wheel = new TimingWheel(10, 8);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(cancelledRuns::incrementAndGet, 30);
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+
+        AtomicInteger periodicRuns = new AtomicInteger();
+        CountDownLatch threeRuns = new CountDownLatch(3);
+        TimingWheel.Timeout periodic = wheel.scheduleAtFixedRate(() -> {
+            periodicRuns.incrementAndGet();
+            threeRuns.countDown();
+        }, 0, 20);
+        assertTrue(threeRuns.await(2, TimeUnit.SECONDS));
+        periodic.cancel();
+        // a run that already started may still finish
+        Thread.sleep(30);
+        int runs = periodicRuns.get();
+        Thread.sleep(100);
+        assertEquals(runs, periodicRuns.get());
+        assertEquals(0, cancelledRuns.get());
+    }
+}
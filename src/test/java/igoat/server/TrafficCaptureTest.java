@@ -0,0 +1,61 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TrafficCaptureTest {
+    @Test
+    public void testTrafficCaptureRoundTrip() throws Exception {
+        Path file = Files.createTempFile("capture", ".bin");
+        file.toFile().deleteOnExit();
+        ByteBuffer packet = ByteBuffer.wrap(
+            "xxregister_udp:alice:5000".getBytes(StandardCharsets.UTF_8));
+        packet.position(2);
+        String longLine = "chat:" + "x".repeat(100_000); // longer than the buffer
+        System.setProperty("igoat.capture", file.toString());
+        try {
+            TrafficCapture.startRecording();
+            int connection = TrafficCapture.connected();
+            TrafficCapture.line(connection, "connect:alice");
+            InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                5000);
+            TrafficCapture.datagram(source, packet);
+            TrafficCapture.datagram(new InetSocketAddress(InetAddress.getLoopbackAddress(), 5001),
+                packet);
+            TrafficCapture.line(connection, longLine);
+            TrafficCapture.datagram(source, packet);
+            TrafficCapture.closed(connection);
+        } finally {
+            TrafficCapture.stopRecording();
+            System.clearProperty("igoat.capture");
+        }
+        assertEquals(2, packet.position());
+
+        try (TrafficCapture.Reader reader = new TrafficCapture.Reader(file)) {
+            byte[] types = {TrafficCapture.CONNECT, TrafficCapture.LINE, TrafficCapture.DATAGRAM,
+                TrafficCapture.DATAGRAM, TrafficCapture.LINE, TrafficCapture.DATAGRAM,
+                TrafficCapture.CLOSE};
+            int[] streams = {1, 1, 1, 2, 1, 1, 1};
+            String[] payloads = {null, "connect:alice", "register_udp:alice:5000",
+                "register_udp:alice:5000", longLine, "register_udp:alice:5000", null};
+            long previous = 0;
+            for (int i = 0; i < types.length; i++) {
+                TrafficCapture.Event event = reader.next();
+                assertNotNull(event);
+                assertEquals(types[i], event.type());
+                assertEquals(streams[i], event.stream());
+                assertEquals(payloads[i], event.payload() == null ? null
+                    : new String(event.payload(), StandardCharsets.UTF_8));
+                assertTrue(event.nanos() >= previous);
+                previous = event.nanos();
+            }
+            assertNull(reader.next());
+        }
+    }
+}
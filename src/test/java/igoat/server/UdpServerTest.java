@@ -0,0 +1,35 @@
+package igoat.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import igoat.UpdatePacket;
+
+public class UdpServerTest {
+    @Test
+    public void testPacketsOfOneLobbyHaveTheSameKey() {
+        ByteBuffer binary = ByteBuffer.allocate(UpdatePacket.MAX_SIZE);
+        UpdatePacket.writeHeader(binary, UpdatePacket.TYPE_POSITION,
+            UpdatePacket.toWireLobbyCode(1234));
+        UpdatePacket.writeEntry(binary, 7, 100, -20);
+        binary.flip();
+        ByteBuffer ack = ByteBuffer.allocate(UpdatePacket.ACK_SIZE);
+        UpdatePacket.writeAck(ack, 1234, 7, 42);
+        ack.flip();
+
+        assertEquals(1234, UdpServer.partitionKey(binary));
+        assertEquals(1234, UdpServer.partitionKey(ack));
+        assertEquals(1234, UdpServer.partitionKey(text("position:alice:1234:100:-20")));
+        assertEquals(1235, UdpServer.partitionKey(text("position:bob:1235:1:2")));
+
+        // everything else goes to the first partition
+        assertEquals(0, UdpServer.partitionKey(text("register_udp:alice:5000")));
+        assertEquals(0, UdpServer.partitionKey(text("position:")));
+        assertEquals(0, UdpServer.partitionKey(ByteBuffer.allocate(0)));
+    }
+
+    private static ByteBuffer text(String packet) {
+        return ByteBuffer.wrap(packet.getBytes(StandardCharsets.US_ASCII));
+    }
+}